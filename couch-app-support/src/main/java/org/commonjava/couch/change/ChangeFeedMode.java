@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.change;
+
+public enum ChangeFeedMode
+{
+
+    // one request per poll, answered immediately with whatever changes exist.
+    NORMAL( "normal", false ),
+    // the request is held open until at least one change arrives, then answered like a normal poll.
+    LONGPOLL( "longpoll", true ),
+    // the request stays open, and each change is written as its own line as it happens.
+    CONTINUOUS( "continuous", true );
+
+    private final String feedName;
+
+    private final boolean heartbeat;
+
+    private ChangeFeedMode( final String feedName, final boolean heartbeat )
+    {
+        this.feedName = feedName;
+        this.heartbeat = heartbeat;
+    }
+
+    public String feedName()
+    {
+        return feedName;
+    }
+
+    public boolean usesHeartbeat()
+    {
+        return heartbeat;
+    }
+
+    public static ChangeFeedMode forName( final String name )
+    {
+        for ( final ChangeFeedMode mode : values() )
+        {
+            if ( mode.feedName.equalsIgnoreCase( name ) )
+            {
+                return mode;
+            }
+        }
+
+        return null;
+    }
+
+}
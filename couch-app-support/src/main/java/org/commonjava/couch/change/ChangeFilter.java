@@ -0,0 +1,337 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.change;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+public final class ChangeFilter
+{
+
+    public enum Type
+    {
+        DOC_IDS, SELECTOR, DESIGN;
+    }
+
+    public static final String DOC_IDS_FILTER = "_doc_ids";
+
+    public static final String SELECTOR_FILTER = "_selector";
+
+    private static final String FILTER = "filter";
+
+    private static final String DOC_IDS = "doc_ids";
+
+    private static final String SELECTOR = "selector";
+
+    private static final String ID = "_id";
+
+    private static final String IN = "$in";
+
+    private static final String OR = "$or";
+
+    private final Type type;
+
+    private final Set<String> docIds;
+
+    private final String selector;
+
+    private final String filterName;
+
+    private final Map<String, String> parameters;
+
+    private ChangeFilter( final Type type, final Set<String> docIds, final String selector, final String filterName,
+                          final Map<String, String> parameters )
+    {
+        this.type = type;
+        this.docIds = docIds;
+        this.selector = selector;
+        this.filterName = filterName;
+        this.parameters = parameters;
+    }
+
+    public static ChangeFilter docIds( final String... ids )
+    {
+        return docIds( Arrays.asList( ids ) );
+    }
+
+    public static ChangeFilter docIds( final Collection<String> ids )
+    {
+        return new ChangeFilter( Type.DOC_IDS, new TreeSet<String>( ids ), null, DOC_IDS_FILTER, null );
+    }
+
+    // deleted documents carry only _id and _rev, so a selector on any other field never matches a deletion.
+    public static ChangeFilter selector( final String json )
+    {
+        final JsonElement parsed;
+        try
+        {
+            parsed = new JsonParser().parse( json );
+        }
+        catch ( final JsonParseException e )
+        {
+            throw new IllegalArgumentException( "Invalid change selector: " + json, e );
+        }
+
+        if ( !parsed.isJsonObject() )
+        {
+            throw new IllegalArgumentException( "Change selector must be a JSON object: " + json );
+        }
+
+        return new ChangeFilter( Type.SELECTOR, null, parsed.toString(), SELECTOR_FILTER, null );
+    }
+
+    public static ChangeFilter design( final String appName, final String filter )
+    {
+        return design( appName, filter, null );
+    }
+
+    public static ChangeFilter design( final String appName, final String filter, final Map<String, String> params )
+    {
+        final Map<String, String> parameters = new TreeMap<String, String>();
+        if ( params != null )
+        {
+            parameters.putAll( params );
+        }
+
+        return new ChangeFilter( Type.DESIGN, null, null, appName + "/" + filter, parameters );
+    }
+
+    // returns null when the filters cannot be expressed as one request; callers then take the whole feed.
+    public static ChangeFilter combine( final Collection<ChangeFilter> filters )
+    {
+        if ( filters == null || filters.isEmpty() )
+        {
+            return null;
+        }
+
+        final Set<String> ids = new TreeSet<String>();
+        final List<String> selectors = new ArrayList<String>();
+        ChangeFilter design = null;
+        for ( final ChangeFilter filter : filters )
+        {
+            if ( filter == null )
+            {
+                return null;
+            }
+
+            if ( filter.type == Type.DOC_IDS )
+            {
+                ids.addAll( filter.docIds );
+            }
+            else if ( filter.type == Type.SELECTOR )
+            {
+                if ( !selectors.contains( filter.selector ) )
+                {
+                    selectors.add( filter.selector );
+                }
+            }
+            else
+            {
+                // design filters are opaque functions; only identical ones can share a request.
+                if ( design != null && !design.equals( filter ) )
+                {
+                    return null;
+                }
+                design = filter;
+            }
+        }
+
+        if ( design != null )
+        {
+            return ids.isEmpty() && selectors.isEmpty() ? design : null;
+        }
+
+        if ( selectors.isEmpty() )
+        {
+            return docIds( ids );
+        }
+
+        if ( ids.isEmpty() && selectors.size() == 1 )
+        {
+            return selector( selectors.get( 0 ) );
+        }
+
+        final JsonParser parser = new JsonParser();
+        final JsonArray alternatives = new JsonArray();
+        for ( final String sel : selectors )
+        {
+            alternatives.add( parser.parse( sel ) );
+        }
+
+        if ( !ids.isEmpty() )
+        {
+            final JsonObject in = new JsonObject();
+            in.add( IN, toArray( ids ) );
+
+            final JsonObject byId = new JsonObject();
+            byId.add( ID, in );
+            alternatives.add( byId );
+        }
+
+        final JsonObject or = new JsonObject();
+        or.add( OR, alternatives );
+
+        return selector( or.toString() );
+    }
+
+    public Type getType()
+    {
+        return type;
+    }
+
+    public String getFilterName()
+    {
+        return filterName;
+    }
+
+    public Set<String> getDocIds()
+    {
+        return docIds == null ? null : Collections.unmodifiableSet( docIds );
+    }
+
+    public String getSelector()
+    {
+        return selector;
+    }
+
+    public Map<String, String> getParameters()
+    {
+        return parameters == null ? null : Collections.unmodifiableMap( parameters );
+    }
+
+    public Map<String, String> getUrlParameters()
+    {
+        final Map<String, String> params = new LinkedHashMap<String, String>();
+        params.put( FILTER, encode( filterName ) );
+        if ( parameters != null )
+        {
+            for ( final Map.Entry<String, String> entry : parameters.entrySet() )
+            {
+                params.put( encode( entry.getKey() ), encode( entry.getValue() ) );
+            }
+        }
+
+        return params;
+    }
+
+    // doc_ids and selectors go in a POST body, which keeps long id lists out of the URL.
+    public boolean hasRequestBody()
+    {
+        return type != Type.DESIGN;
+    }
+
+    public String getRequestBody()
+    {
+        final JsonObject body = new JsonObject();
+        if ( type == Type.DOC_IDS )
+        {
+            body.add( DOC_IDS, toArray( docIds ) );
+        }
+        else if ( type == Type.SELECTOR )
+        {
+            body.add( SELECTOR, new JsonParser().parse( selector ) );
+        }
+        else
+        {
+            return null;
+        }
+
+        return body.toString();
+    }
+
+    private static JsonArray toArray( final Set<String> values )
+    {
+        final JsonArray array = new JsonArray();
+        for ( final String value : values )
+        {
+            array.add( new JsonPrimitive( value ) );
+        }
+
+        return array;
+    }
+
+    private static String encode( final String value )
+    {
+        try
+        {
+            return URLEncoder.encode( value, "UTF-8" );
+        }
+        catch ( final UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( "UTF-8 is not supported.", e );
+        }
+    }
+
+    @Override
+    public int hashCode()
+    {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + type.hashCode();
+        result = prime * result + ( docIds == null ? 0 : docIds.hashCode() );
+        result = prime * result + ( selector == null ? 0 : selector.hashCode() );
+        result = prime * result + ( filterName == null ? 0 : filterName.hashCode() );
+        result = prime * result + ( parameters == null ? 0 : parameters.hashCode() );
+        return result;
+    }
+
+    @Override
+    public boolean equals( final Object obj )
+    {
+        if ( this == obj )
+        {
+            return true;
+        }
+        if ( obj == null || getClass() != obj.getClass() )
+        {
+            return false;
+        }
+
+        final ChangeFilter other = (ChangeFilter) obj;
+        return type == other.type && equal( docIds, other.docIds ) && equal( selector, other.selector )
+            && equal( filterName, other.filterName ) && equal( parameters, other.parameters );
+    }
+
+    private static boolean equal( final Object first, final Object second )
+    {
+        return first == null ? second == null : first.equals( second );
+    }
+
+    @Override
+    public String toString()
+    {
+        final Object detail = type == Type.DOC_IDS ? docIds : type == Type.SELECTOR ? selector : parameters;
+        return String.format( "ChangeFilter [%s: %s]", filterName, detail );
+    }
+
+}
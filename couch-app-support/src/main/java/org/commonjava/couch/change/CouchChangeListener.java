@@ -15,31 +15,44 @@
  ******************************************************************************/
 package org.commonjava.couch.change;
 
+import static org.apache.http.HttpStatus.SC_BAD_REQUEST;
+import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.apache.http.HttpStatus.SC_OK;
 import static org.commonjava.couch.util.UrlUtils.buildUrl;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
-import java.util.HashMap;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.Map;
 
 import javax.enterprise.inject.Alternative;
 import javax.inject.Named;
 
-import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.couch.change.dispatch.BoundedChangeDispatcher;
+import org.commonjava.couch.change.dispatch.ChangeFilterSource;
 import org.commonjava.couch.change.dispatch.CouchChangeDispatcher;
 import org.commonjava.couch.conf.CouchDBConfiguration;
 import org.commonjava.couch.db.CouchDBException;
 import org.commonjava.couch.db.CouchManager;
+import org.commonjava.couch.db.DocumentCache;
 import org.commonjava.couch.io.CouchHttpClient;
 import org.commonjava.couch.io.Serializer;
 import org.commonjava.couch.model.AbstractCouchDocument;
 import org.commonjava.couch.model.CouchDocRef;
 import org.commonjava.util.logging.Logger;
 
+import com.google.gson.JsonParseException;
 import com.google.gson.annotations.SerializedName;
 
 @Named( "dont-use-directly" )
@@ -48,10 +61,27 @@ public class CouchChangeListener
     implements Runnable
 {
 
-    private static final String CHANGE_LISTENER_DOCID = "change-listener-metadata";
+    // _local documents are never replicated and never show up in the feed they describe.
+    private static final String CHANGE_LISTENER_DOCID = "_local/change-listener-metadata";
+
+    private static final String LEGACY_LISTENER_DOCID = "change-listener-metadata";
 
     private static final String CHANGES_SERVICE = "_changes";
 
+    private static final String FEED = "feed";
+
+    private static final String HEARTBEAT = "heartbeat";
+
+    private static final String JSON_CONTENT_TYPE = "application/json";
+
+    private static final long POLL_INTERVAL_MILLIS = 2000;
+
+    private static final long DRAIN_LOG_MILLIS = 10000;
+
+    private static final long MIN_BACKOFF_MILLIS = 500;
+
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+
     private final Logger logger = new Logger( getClass() );
 
     private final CouchChangeDispatcher dispatcher;
@@ -66,8 +96,25 @@ public class CouchChangeListener
 
     private ChangeListenerMetadata metadata;
 
+    // the feed position read so far; the checkpoint in metadata trails it until queued changes have been processed.
+    private String readSequence;
+
+    private final LinkedList<Offer> inFlight = new LinkedList<Offer>();
+
+    private ChangeFilter changeFilter;
+
+    private volatile boolean filterRejected;
+
+    private int uncheckpointed;
+
+    private boolean positionChanged;
+
+    private long lastCheckpoint;
+
     private Thread listenerThread;
 
+    private volatile HttpRequestBase activeRequest;
+
     private boolean running = false;
 
     private final Object internalLock = new Object();
@@ -100,8 +147,22 @@ public class CouchChangeListener
         if ( metadata == null )
         {
             metadata = new ChangeListenerMetadata();
+
+            // pick up where the replicated metadata document used by earlier versions left off.
+            final ChangeListenerMetadata legacy =
+                couch.getDocument( new CouchDocRef( LEGACY_LISTENER_DOCID ), ChangeListenerMetadata.class );
+            if ( legacy != null )
+            {
+                metadata.setLastSequence( legacy.getLastSequence() );
+            }
         }
 
+        readSequence = metadata.getLastSequence();
+        inFlight.clear();
+        uncheckpointed = 0;
+        positionChanged = false;
+        lastCheckpoint = System.currentTimeMillis();
+
         logger.info( "starting change-listener thread..." );
         listenerThread = new Thread( this );
         listenerThread.setDaemon( true );
@@ -137,6 +198,13 @@ public class CouchChangeListener
         {
             listenerThread.interrupt();
 
+            // a continuous feed blocks in a socket read, which interrupt() alone does not end.
+            final HttpRequestBase request = activeRequest;
+            if ( request != null )
+            {
+                request.abort();
+            }
+
             while ( listenerThread.isAlive() )
             {
                 logger.info( "Waiting for change-listener shutdown..." );
@@ -156,10 +224,13 @@ public class CouchChangeListener
 
         if ( metadata != null )
         {
-            if ( metadata.getLastProcessedSequenceId() > 0 )
-            {
-                couch.store( metadata, false );
-            }
+            confirmCompleted();
+        }
+
+        if ( metadata != null && positionChanged )
+        {
+            couch.store( metadata, false );
+            positionChanged = false;
         }
 
         running = false;
@@ -175,19 +246,42 @@ public class CouchChangeListener
         return running;
     }
 
+    // takes effect on the next connection; without one, a filter declared by the dispatcher is used.
+    public void setChangeFilter( final ChangeFilter changeFilter )
+    {
+        this.changeFilter = changeFilter;
+        this.filterRejected = false;
+    }
+
+    public ChangeFilter getChangeFilter()
+    {
+        return changeFilter;
+    }
+
     @Override
     public void run()
     {
-        final CouchDocChangeDeserializer docDeserializer = new CouchDocChangeDeserializer();
+        ChangeFeedMode mode = ChangeFeedMode.forName( config.getChangeFeed() );
+        if ( mode == null )
+        {
+            logger.warn( "Unknown change feed: '%s'. Using: %s", config.getChangeFeed(),
+                         ChangeFeedMode.CONTINUOUS.feedName() );
+            mode = ChangeFeedMode.CONTINUOUS;
+        }
 
-        all: while ( !Thread.interrupted() )
+        int failures = 0;
+        while ( !Thread.currentThread()
+                       .isInterrupted() )
         {
-            HttpGet get;
+            final ChangeFilter filter = resolveChangeFilter();
+
+            HttpRequestBase get;
             try
             {
-                final String url = buildUrl( config.getDatabaseUrl(), metadata.getUrlParameters(), CHANGES_SERVICE );
+                final String url =
+                    buildUrl( config.getDatabaseUrl(), getFeedParameters( mode, filter ), CHANGES_SERVICE );
 
-                get = new HttpGet( url );
+                get = newFeedRequest( url, filter );
             }
             catch ( final MalformedURLException e )
             {
@@ -196,32 +290,43 @@ public class CouchChangeListener
                 break;
             }
 
-            String encoding = null;
+            activeRequest = get;
+            boolean failed = false;
+            boolean refused = false;
+            boolean rejected = false;
             try
             {
-                // logger.info( "requesting changes..." );
-
                 final HttpResponse response = http.executeHttpWithResponse( get, "Failed to open changes stream." );
+                final HttpEntity entity = response.getEntity();
+                final int status = response.getStatusLine()
+                                           .getStatusCode();
 
-                if ( response.getEntity() == null )
+                if ( filter != null && ( status == SC_BAD_REQUEST || status == SC_NOT_FOUND ) )
+                {
+                    // usually a design document from before the filter was added; every change beats none.
+                    logger.warn( "Changes filter %s was rejected by db: %s (%s). Reading unfiltered changes instead.",
+                                 filter, config.getDatabaseUrl(), response.getStatusLine() );
+                    filterRejected = true;
+                    rejected = true;
+                }
+                else if ( status != SC_OK )
+                {
+                    logger.error( "Failed to open changes stream for db: %s. Response: %s", config.getDatabaseUrl(),
+                                  response.getStatusLine() );
+                    failed = true;
+                }
+                else if ( entity == null )
                 {
                     logger.error( "Changes stream did not return a response body." );
+                    failed = true;
                 }
                 else
                 {
-                    final Header encodingHeader = response.getEntity()
-                                                          .getContentEncoding();
-                    if ( encodingHeader == null )
+                    String encoding = EntityUtils.getContentCharSet( entity );
+                    if ( encoding == null )
                     {
                         encoding = "UTF-8";
                     }
-                    else
-                    {
-                        encoding = encodingHeader.getValue();
-                    }
-
-                    final InputStream stream = response.getEntity()
-                                                       .getContent();
 
                     running = true;
                     synchronized ( internalLock )
@@ -229,51 +334,129 @@ public class CouchChangeListener
                         internalLock.notifyAll();
                     }
 
-                    final CouchDocChangeList changes =
-                        serializer.fromJson( stream, encoding, CouchDocChangeList.class, docDeserializer );
+                    // dispatch each change as soon as it is read, rather than after the whole response arrives.
+                    final CouchChangeStream changes =
+                        new CouchChangeStream( new InputStreamReader( entity.getContent(), encoding ), mode );
 
-                    for ( final CouchDocChange change : changes )
+                    changes.setHeartbeatCallback( new Runnable()
                     {
-                        logger.info( "Processing change: %s", change.getId() );
+                        @Override
+                        public void run()
+                        {
+                            checkpointIfDue();
+                        }
+                    } );
 
-                        if ( !change.getId()
-                                    .equals( CHANGE_LISTENER_DOCID ) )
+                    CouchDocChange change;
+                    while ( ( change = changes.next() ) != null )
+                    {
+                        if ( !process( change ) )
                         {
-                            metadata.setLastProcessedSequenceId( change.getSequence() );
-                            dispatcher.documentChanged( change );
+                            refused = true;
+                            break;
                         }
+
+                        failures = 0;
+                    }
+
+                    // after a refused change, reading resumes from the last accepted one once the queue drains.
+                    if ( !refused )
+                    {
+                        if ( changes.getLastSequence() != null )
+                        {
+                            readSequence = changes.getLastSequence();
+                        }
+
+                        checkpointIfDue();
                     }
+
+                    failures = 0;
                 }
             }
             catch ( final CouchDBException e )
             {
+                failed = true;
                 logger.error( "Failed to read changes stream for db: %s. Reason: %s", e, config.getDatabaseUrl(),
                               e.getMessage() );
-                break;
             }
-            catch ( final UnsupportedEncodingException e )
+            catch ( final IOException e )
             {
-                logger.error( "Invalid content encoding for changes response: %s. Reason: %s", e, encoding,
-                              e.getMessage() );
-                break;
+                failed = true;
+                if ( !Thread.currentThread()
+                            .isInterrupted() )
+                {
+                    logger.error( "Error reading changes response content. Reason: %s", e, e.getMessage() );
+                }
             }
-            catch ( final IOException e )
+            catch ( final JsonParseException e )
             {
-                logger.error( "Error reading changes response content. Reason: %s", e, e.getMessage() );
-                break;
+                failed = true;
+                logger.error( "Invalid changes response content. Reason: %s", e, e.getMessage() );
             }
             finally
             {
-                http.cleanup( get );
+                activeRequest = null;
+
+                // a refused change leaves the rest of the response unread; don't drain it into the connection pool.
+                if ( failed || refused )
+                {
+                    http.abort( get );
+                }
+                else
+                {
+                    http.cleanup( get );
+                }
             }
 
-            try
+            if ( Thread.currentThread()
+                       .isInterrupted() )
+            {
+                break;
+            }
+
+            if ( rejected )
+            {
+                continue;
+            }
+
+            if ( refused )
+            {
+                try
+                {
+                    awaitDrain( (BoundedChangeDispatcher) dispatcher );
+                }
+                catch ( final InterruptedException e )
+                {
+                    break;
+                }
+
+                checkpoint();
+                continue;
+            }
+
+            final long delay;
+            if ( failed )
+            {
+                failures++;
+                delay = backoffMillis( failures );
+                logger.info( "Reconnecting to changes feed in %s ms (attempt %s)", delay, failures );
+            }
+            else
             {
-                Thread.sleep( 2000 );
+                // longpoll and continuous responses only end after a timeout or change, so reconnect right away.
+                delay = mode == ChangeFeedMode.NORMAL ? POLL_INTERVAL_MILLIS : 0;
             }
-            catch ( final InterruptedException e )
+
+            if ( delay > 0 )
             {
-                break all;
+                try
+                {
+                    Thread.sleep( delay );
+                }
+                catch ( final InterruptedException e )
+                {
+                    break;
+                }
             }
         }
 
@@ -283,38 +466,250 @@ public class CouchChangeListener
         }
     }
 
-    static final class ChangeListenerMetadata
-        extends AbstractCouchDocument
+    private void awaitDrain( final BoundedChangeDispatcher bounded )
+        throws InterruptedException
     {
+        logger.info( "Change dispatch queue is full. Pausing changes feed at: %s", readSequence );
+        while ( !bounded.awaitDrain( DRAIN_LOG_MILLIS ) )
+        {
+            logger.info( "Waiting for change dispatch queue to drain..." );
+        }
 
-        @SerializedName( "last_seq" )
-        private int lastProcessedSequenceId;
+        logger.info( "Change dispatch queue drained. Resuming changes feed from: %s", readSequence );
+    }
 
-        ChangeListenerMetadata()
+    // false when the dispatcher refused the change, which is then neither recorded nor checkpointed.
+    private boolean process( final CouchDocChange change )
+    {
+        logger.info( "Processing change: %s", change.getId() );
+
+        final DocumentCache cache = couch.getDocumentCache();
+        if ( cache != null )
         {
-            setCouchDocId( CHANGE_LISTENER_DOCID );
+            cache.invalidate( change.getId() );
         }
 
-        public Map<String, String> getUrlParameters()
+        if ( !change.getId()
+                    .equals( LEGACY_LISTENER_DOCID ) )
         {
-            final Map<String, String> params = new HashMap<String, String>();
-            // params.put( "feed", "continuous" );
-            if ( lastProcessedSequenceId > 0 )
+            if ( dispatcher instanceof BoundedChangeDispatcher )
+            {
+                final long ticket = ( (BoundedChangeDispatcher) dispatcher ).offerChange( change );
+                if ( ticket == BoundedChangeDispatcher.REFUSED )
+                {
+                    return false;
+                }
+
+                inFlight.add( new Offer( ticket, change.getSequenceId() ) );
+            }
+            else
             {
-                params.put( "since", Integer.toString( lastProcessedSequenceId ) );
+                dispatcher.documentChanged( change );
             }
+        }
+
+        readSequence = change.getSequenceId();
+        uncheckpointed++;
+
+        checkpointIfDue();
+        return true;
+    }
+
+    // moves the checkpoint up to the last change before the oldest one still queued, so a crash replays changes
+    // rather than losing them.
+    private void confirmCompleted()
+    {
+        String confirmed = readSequence;
+        if ( !inFlight.isEmpty() )
+        {
+            final long completed = ( (BoundedChangeDispatcher) dispatcher ).getCompletedTicket();
+
+            Offer last = null;
+            while ( !inFlight.isEmpty() && inFlight.getFirst().ticket <= completed )
+            {
+                last = inFlight.removeFirst();
+            }
+
+            if ( !inFlight.isEmpty() )
+            {
+                if ( last == null )
+                {
+                    return;
+                }
+
+                confirmed = last.sequence;
+            }
+        }
+
+        if ( confirmed != null && !confirmed.equals( metadata.getLastSequence() ) )
+        {
+            metadata.setLastSequence( confirmed );
+            positionChanged = true;
+        }
+    }
+
+    private void checkpointIfDue()
+    {
+        confirmCompleted();
+        if ( !positionChanged )
+        {
+            return;
+        }
+
+        if ( uncheckpointed < config.getChangeCheckpointInterval()
+            && System.currentTimeMillis() - lastCheckpoint < config.getChangeCheckpointMillis() )
+        {
+            return;
+        }
+
+        checkpoint();
+    }
+
+    private void checkpoint()
+    {
+        confirmCompleted();
+        if ( !positionChanged )
+        {
+            return;
+        }
+
+        try
+        {
+            couch.store( metadata, false );
+            positionChanged = false;
+            uncheckpointed = 0;
+        }
+        catch ( final CouchDBException e )
+        {
+            logger.warn( "Failed to checkpoint change-feed position: %s. Reason: %s", e, metadata.getLastSequence(),
+                         e.getMessage() );
+        }
+
+        lastCheckpoint = System.currentTimeMillis();
+    }
+
+    private ChangeFilter resolveChangeFilter()
+    {
+        ChangeFilter filter = changeFilter;
+        if ( filter == null && dispatcher instanceof ChangeFilterSource )
+        {
+            filter = ( (ChangeFilterSource) dispatcher ).getChangeFilter();
+        }
+
+        if ( filterRejected )
+        {
+            return null;
+        }
+
+        // cached documents are invalidated from this feed, so it has to carry every change.
+        if ( filter != null && couch.getDocumentCache() != null )
+        {
+            logger.debug( "Document cache is enabled; requesting unfiltered changes instead of: %s", filter );
+            return null;
+        }
 
-            return params;
+        return filter;
+    }
+
+    private Map<String, String> getFeedParameters( final ChangeFeedMode mode, final ChangeFilter filter )
+    {
+        final Map<String, String> params = sinceParameters( readSequence );
+        params.put( FEED, mode.feedName() );
+        if ( mode.usesHeartbeat() )
+        {
+            params.put( HEARTBEAT, Long.toString( config.getChangeHeartbeatMillis() ) );
+        }
+
+        if ( filter != null )
+        {
+            params.putAll( filter.getUrlParameters() );
+        }
+
+        return params;
+    }
+
+    static HttpRequestBase newFeedRequest( final String url, final ChangeFilter filter )
+    {
+        if ( filter == null || !filter.hasRequestBody() )
+        {
+            return new HttpGet( url );
+        }
+
+        final HttpPost post = new HttpPost( url );
+        try
+        {
+            final StringEntity body = new StringEntity( filter.getRequestBody(), "UTF-8" );
+            body.setContentType( JSON_CONTENT_TYPE );
+            post.setEntity( body );
+        }
+        catch ( final UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( "UTF-8 is not supported.", e );
+        }
+
+        return post;
+    }
+
+    // exponential, capped, with jitter so that many listeners do not reconnect in lockstep after an outage.
+    static long backoffMillis( final int failures )
+    {
+        final int exponent = Math.min( Math.max( failures - 1, 0 ), 16 );
+        final long ceiling = Math.min( MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << exponent );
+
+        return ceiling / 2 + (long) ( Math.random() * ( ceiling / 2 ) );
+    }
+
+    private static Map<String, String> sinceParameters( final String since )
+    {
+        final Map<String, String> params = new LinkedHashMap<String, String>();
+        if ( since != null )
+        {
+            try
+            {
+                params.put( "since", URLEncoder.encode( since, "UTF-8" ) );
+            }
+            catch ( final UnsupportedEncodingException e )
+            {
+                throw new IllegalStateException( "UTF-8 is not supported.", e );
+            }
+        }
+
+        return params;
+    }
+
+    private static final class Offer
+    {
+        private final long ticket;
+
+        private final String sequence;
+
+        Offer( final long ticket, final String sequence )
+        {
+            this.ticket = ticket;
+            this.sequence = sequence;
+        }
+    }
+
+    static final class ChangeListenerMetadata
+        extends AbstractCouchDocument
+    {
+
+        @SerializedName( "last_seq" )
+        private String lastSequence;
+
+        ChangeListenerMetadata()
+        {
+            setCouchDocId( CHANGE_LISTENER_DOCID );
         }
 
-        int getLastProcessedSequenceId()
+        String getLastSequence()
         {
-            return lastProcessedSequenceId;
+            return lastSequence;
         }
 
-        void setLastProcessedSequenceId( final int lastProcessedSequenceId )
+        void setLastSequence( final String lastSequence )
         {
-            this.lastProcessedSequenceId = lastProcessedSequenceId;
+            this.lastSequence = lastSequence;
         }
 
     }
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.change;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+public class CouchChangeStream
+{
+
+    private static final String RESULTS = "results";
+
+    private static final String LAST_SEQ = "last_seq";
+
+    private static final String ID = "id";
+
+    private final ChangeFeedMode mode;
+
+    private final CouchDocChangeDeserializer deserializer = new CouchDocChangeDeserializer();
+
+    private final JsonParser parser = new JsonParser();
+
+    private BufferedReader lines;
+
+    private JsonReader reader;
+
+    private boolean inResults;
+
+    private boolean finished;
+
+    private String lastSequence;
+
+    private Runnable heartbeatCallback;
+
+    public CouchChangeStream( final Reader in, final ChangeFeedMode mode )
+    {
+        this.mode = mode;
+        if ( mode == ChangeFeedMode.CONTINUOUS )
+        {
+            lines = new BufferedReader( in );
+        }
+        else
+        {
+            reader = new JsonReader( in );
+        }
+    }
+
+    // blocks until the next change arrives; null once the server ends the response.
+    public CouchDocChange next()
+        throws IOException
+    {
+        if ( finished )
+        {
+            return null;
+        }
+
+        final CouchDocChange change = mode == ChangeFeedMode.CONTINUOUS ? nextLine() : nextResult();
+        if ( change == null )
+        {
+            finished = true;
+        }
+
+        return change;
+    }
+
+    public String getLastSequence()
+    {
+        return lastSequence;
+    }
+
+    // called from next() whenever a continuous feed sends a heartbeat, so idle-time work can happen between changes.
+    public void setHeartbeatCallback( final Runnable heartbeatCallback )
+    {
+        this.heartbeatCallback = heartbeatCallback;
+    }
+
+    private CouchDocChange nextLine()
+        throws IOException
+    {
+        String line;
+        while ( ( line = lines.readLine() ) != null )
+        {
+            // heartbeats are bare newlines.
+            if ( line.trim()
+                     .length() < 1 )
+            {
+                if ( heartbeatCallback != null )
+                {
+                    heartbeatCallback.run();
+                }
+
+                continue;
+            }
+
+            final JsonObject record = parser.parse( line )
+                                            .getAsJsonObject();
+            if ( record.has( ID ) )
+            {
+                return toChange( record );
+            }
+
+            if ( record.has( LAST_SEQ ) )
+            {
+                lastSequence = CouchDocChangeDeserializer.sequenceOf( record.get( LAST_SEQ ) );
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    private CouchDocChange nextResult()
+        throws IOException
+    {
+        if ( !inResults )
+        {
+            if ( reader.peek() == JsonToken.BEGIN_OBJECT )
+            {
+                reader.beginObject();
+            }
+
+            if ( !seek( RESULTS ) )
+            {
+                return null;
+            }
+
+            reader.beginArray();
+            inResults = true;
+        }
+
+        if ( reader.hasNext() )
+        {
+            return toChange( parser.parse( reader )
+                                   .getAsJsonObject() );
+        }
+
+        reader.endArray();
+        if ( seek( LAST_SEQ ) )
+        {
+            lastSequence = CouchDocChangeDeserializer.sequenceOf( parser.parse( reader ) );
+        }
+
+        return null;
+    }
+
+    private boolean seek( final String field )
+        throws IOException
+    {
+        while ( reader.hasNext() )
+        {
+            if ( field.equals( reader.nextName() ) && reader.peek() != JsonToken.NULL )
+            {
+                return true;
+            }
+
+            reader.skipValue();
+        }
+
+        return false;
+    }
+
+    private CouchDocChange toChange( final JsonObject record )
+    {
+        return deserializer.deserialize( record, CouchDocChange.class, null );
+    }
+
+}
@@ -22,6 +22,8 @@ public class CouchDocChange
 
     private final int sequence;
 
+    private final String sequenceId;
+
     private final String id;
 
     private final List<String> revisions;
@@ -31,7 +33,15 @@ public class CouchDocChange
     public CouchDocChange( final int sequence, final String id, final List<String> revisions,
                            final boolean deleted )
     {
-        this.sequence = sequence;
+        this( Integer.toString( sequence ), id, revisions, deleted );
+    }
+
+    // CouchDB 2.x and BigCouch sequences are opaque strings; only their leading number is meaningful locally.
+    public CouchDocChange( final String sequenceId, final String id, final List<String> revisions,
+                           final boolean deleted )
+    {
+        this.sequenceId = sequenceId;
+        this.sequence = sequenceNumber( sequenceId );
         this.id = id;
         this.revisions = revisions;
         this.deleted = deleted;
@@ -42,6 +52,40 @@ public class CouchDocChange
         return sequence;
     }
 
+    public String getSequenceId()
+    {
+        return sequenceId;
+    }
+
+    public static int sequenceNumber( final String sequenceId )
+    {
+        if ( sequenceId == null )
+        {
+            return 0;
+        }
+
+        int i = 0;
+        while ( i < sequenceId.length() && !Character.isDigit( sequenceId.charAt( i ) ) )
+        {
+            i++;
+        }
+
+        int end = i;
+        while ( end < sequenceId.length() && Character.isDigit( sequenceId.charAt( end ) ) )
+        {
+            end++;
+        }
+
+        try
+        {
+            return end > i ? Integer.parseInt( sequenceId.substring( i, end ) ) : 0;
+        }
+        catch ( final NumberFormatException e )
+        {
+            return Integer.MAX_VALUE;
+        }
+    }
+
     public String getId()
     {
         return id;
@@ -61,7 +105,7 @@ public class CouchDocChange
     public String toString()
     {
         return String.format( "CouchDocChange [sequence=%s, id=%s, revisions=%s, deleted=%s]",
-                              sequence, id, revisions, deleted );
+                              sequenceId, id, revisions, deleted );
     }
 
 }
@@ -49,8 +49,7 @@ public class CouchDocChangeDeserializer
         throws JsonParseException
     {
         final JsonObject record = json.getAsJsonObject();
-        final int seq = record.get( SEQ )
-                              .getAsInt();
+        final String seq = sequenceOf( record.get( SEQ ) );
         final String id = record.get( ID )
                                 .getAsString();
 
@@ -69,10 +68,32 @@ public class CouchDocChangeDeserializer
         return new CouchDocChange( seq, id, revs, deleted );
     }
 
+    static String sequenceOf( final JsonElement element )
+    {
+        if ( element == null || element.isJsonNull() )
+        {
+            return null;
+        }
+
+        return element.isJsonPrimitive() ? element.getAsString() : element.toString();
+    }
+
     @Override
     public void register( final GsonBuilder gsonBuilder )
     {
         gsonBuilder.registerTypeAdapter( CouchDocChange.class, this );
     }
 
+    @Override
+    public int hashCode()
+    {
+        return getClass().hashCode();
+    }
+
+    @Override
+    public boolean equals( final Object obj )
+    {
+        return obj != null && getClass() == obj.getClass();
+    }
+
 }
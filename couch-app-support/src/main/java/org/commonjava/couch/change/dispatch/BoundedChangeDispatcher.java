@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.change.dispatch;
+
+import org.commonjava.couch.change.CouchDocChange;
+
+public interface BoundedChangeDispatcher
+    extends CouchChangeDispatcher
+{
+
+    long REFUSED = -1;
+
+    // a ticket for tracking the change through getCompletedTicket(), or REFUSED when it was not queued and has
+    // to be read from the feed again later.
+    long offerChange( CouchDocChange change );
+
+    // every change offered with this ticket or an earlier one has been processed, or superseded by a later change.
+    long getCompletedTicket();
+
+    boolean awaitDrain( long timeoutMillis )
+        throws InterruptedException;
+
+}
@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.change.dispatch;
+
+public enum OverflowPolicy
+{
+
+    // the feed reader waits until a slot frees up.
+    BLOCK,
+    // a change to a document that is already waiting replaces it; other documents wait as with BLOCK.
+    COALESCE,
+    // the change is refused, and the feed is re-read from the last checkpoint once the queue drains.
+    SPILL;
+
+}
@@ -15,77 +15,508 @@
  ******************************************************************************/
 package org.commonjava.couch.change.dispatch;
 
-import java.util.LinkedHashSet;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
+import org.commonjava.couch.change.ChangeFilter;
 import org.commonjava.couch.change.CouchDocChange;
+import org.commonjava.util.logging.Logger;
 
 public class ThreadedChangeDispatcher
-    implements CouchChangeDispatcher
+    implements BoundedChangeDispatcher, ChangeFilterSource
 {
 
+    public static final int DEFAULT_LANE_COUNT = 16;
+
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    // a lane gives up its thread after this many changes, so one busy document cannot starve the others.
+    private static final int DRAIN_BATCH = 32;
+
+    private final Logger logger = new Logger( getClass() );
+
     private final Executor executor;
 
     private final List<? extends ThreadableListener> listeners;
 
-    private final Set<ListenerRunnable> pendingDispatches = new LinkedHashSet<ListenerRunnable>();
+    private final Lane[] lanes;
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final int capacity;
+
+    private final OverflowPolicy policy;
+
+    // only tracked under COALESCE: the most recent dispatch per document that no lane has started yet.
+    private final ConcurrentMap<String, Dispatch> waiting;
+
+    private final Queue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong spilled = new AtomicLong();
+
+    private final AtomicLong issued = new AtomicLong();
+
+    // tickets of queued changes; a lane removes one when it finishes, without taking a lock.
+    private final ConcurrentSkipListSet<Long> outstanding = new ConcurrentSkipListSet<Long>();
+
+    private final Object ticketLock = new Object();
 
     public ThreadedChangeDispatcher( final List<? extends ThreadableListener> listeners,
                                         final Executor executor )
     {
+        this( listeners, executor, DEFAULT_LANE_COUNT );
+    }
+
+    public ThreadedChangeDispatcher( final List<? extends ThreadableListener> listeners, final Executor executor,
+                                     final int laneCount )
+    {
+        this( listeners, executor, laneCount, DEFAULT_CAPACITY, OverflowPolicy.BLOCK );
+    }
+
+    public ThreadedChangeDispatcher( final List<? extends ThreadableListener> listeners, final Executor executor,
+                                     final int laneCount, final int capacity, final OverflowPolicy policy )
+    {
+        if ( laneCount < 1 )
+        {
+            throw new IllegalArgumentException( "Lane count must be at least 1, was: " + laneCount );
+        }
+
+        if ( capacity < 1 )
+        {
+            throw new IllegalArgumentException( "Capacity must be at least 1, was: " + capacity );
+        }
+
         this.listeners = listeners;
         this.executor = executor;
+        this.capacity = capacity;
+        this.policy = policy == null ? OverflowPolicy.BLOCK : policy;
+        this.waiting = this.policy == OverflowPolicy.COALESCE ? new ConcurrentHashMap<String, Dispatch>() : null;
+        this.lanes = new Lane[laneCount];
+        for ( int i = 0; i < laneCount; i++ )
+        {
+            lanes[i] = new Lane();
+        }
     }
 
+    // every change to a document lands in the same lane, and each lane has at most one consumer running,
+    // so changes to one document reach the listeners in feed order while other documents proceed in parallel.
     @Override
     public void documentChanged( final CouchDocChange change )
     {
+        // callers of this method cannot replay a refused change, so SPILL falls back to blocking here.
+        enqueue( change, false );
+    }
+
+    @Override
+    public long offerChange( final CouchDocChange change )
+    {
+        return enqueue( change, true );
+    }
+
+    @Override
+    public long getCompletedTicket()
+    {
+        synchronized ( ticketLock )
+        {
+            final Long oldest = outstanding.ceiling( 0L );
+            return oldest == null ? issued.get() : oldest - 1;
+        }
+    }
+
+    // waits for the queue to fall to half its capacity, so the feed does not flap at the limit.
+    @Override
+    public boolean awaitDrain( final long timeoutMillis )
+        throws InterruptedException
+    {
+        return awaitPending( capacity / 2, timeoutMillis );
+    }
+
+    private long enqueue( final CouchDocChange change, final boolean mayRefuse )
+    {
+        List<ThreadableListener> targets = null;
         for ( ThreadableListener listener : listeners )
         {
             if ( listener.canProcess( change.getId(), change.isDeleted() ) )
             {
-                ListenerRunnable run = new ListenerRunnable( listener, change );
-                synchronized ( this )
+                if ( targets == null )
                 {
-                    pendingDispatches.add( run );
+                    targets = new ArrayList<ThreadableListener>();
                 }
 
-                executor.execute( run );
+                targets.add( listener );
             }
         }
+
+        final long ticket;
+        synchronized ( ticketLock )
+        {
+            ticket = issued.incrementAndGet();
+            if ( targets == null )
+            {
+                return ticket;
+            }
+
+            outstanding.add( ticket );
+        }
+
+        final Work work = new Work( change, targets, ticket );
+        if ( pending.get() >= capacity )
+        {
+            if ( policy == OverflowPolicy.COALESCE && coalesce( change.getId(), work ) )
+            {
+                return ticket;
+            }
+
+            if ( policy == OverflowPolicy.SPILL && mayRefuse )
+            {
+                outstanding.remove( ticket );
+                spilled.incrementAndGet();
+                return REFUSED;
+            }
+
+            try
+            {
+                awaitPending( capacity - 1, -1 );
+            }
+            catch ( final InterruptedException e )
+            {
+                outstanding.remove( ticket );
+                Thread.currentThread()
+                      .interrupt();
+                return REFUSED;
+            }
+        }
+
+        final Dispatch dispatch = new Dispatch( change.getId(), work );
+        if ( waiting != null && change.getId() != null )
+        {
+            waiting.put( change.getId(), dispatch );
+        }
+
+        pending.incrementAndGet();
+        lanes[laneIndex( change.getId(), lanes.length )].add( dispatch );
+
+        return ticket;
+    }
+
+    private boolean coalesce( final String id, final Work work )
+    {
+        final Dispatch queued = id == null ? null : waiting.get( id );
+        if ( queued == null )
+        {
+            return false;
+        }
+
+        // fails if a lane claimed the queued work in the meantime; the change is then queued on its own.
+        final Work current = queued.work.get();
+        if ( current != null && queued.work.compareAndSet( current, work ) )
+        {
+            outstanding.remove( current.ticket );
+            coalesced.incrementAndGet();
+            return true;
+        }
+
+        return false;
+    }
+
+    // completions never take a lock; they only unpark threads that registered here.
+    private boolean awaitPending( final int limit, final long timeoutMillis )
+        throws InterruptedException
+    {
+        if ( pending.get() <= limit )
+        {
+            return true;
+        }
+
+        final Thread current = Thread.currentThread();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( timeoutMillis );
+        waiters.add( current );
+        try
+        {
+            while ( pending.get() > limit )
+            {
+                if ( Thread.interrupted() )
+                {
+                    throw new InterruptedException();
+                }
+
+                if ( timeoutMillis < 0 )
+                {
+                    LockSupport.park( this );
+                }
+                else
+                {
+                    final long remaining = deadline - System.nanoTime();
+                    if ( remaining <= 0 )
+                    {
+                        return false;
+                    }
+
+                    LockSupport.parkNanos( this, remaining );
+                }
+            }
+
+            return true;
+        }
+        finally
+        {
+            waiters.remove( current );
+        }
+    }
+
+    private void completed()
+    {
+        pending.decrementAndGet();
+        for ( final Thread waiter : waiters )
+        {
+            LockSupport.unpark( waiter );
+        }
+    }
+
+    static int laneIndex( final String id, final int laneCount )
+    {
+        int hash = id == null ? 0 : id.hashCode();
+        hash ^= hash >>> 16;
+
+        return ( hash & Integer.MAX_VALUE ) % laneCount;
+    }
+
+    // the feed can only be narrowed when every listener declares what it wants.
+    @Override
+    public ChangeFilter getChangeFilter()
+    {
+        final List<ChangeFilter> filters = new ArrayList<ChangeFilter>();
+        for ( ThreadableListener listener : listeners )
+        {
+            if ( !( listener instanceof ChangeFilterSource ) )
+            {
+                return null;
+            }
+
+            filters.add( ( (ChangeFilterSource) listener ).getChangeFilter() );
+        }
+
+        return ChangeFilter.combine( filters );
     }
 
     public int getPendingCount()
     {
-        return pendingDispatches.size();
+        return pending.get();
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy()
+    {
+        return policy;
+    }
+
+    public long getCoalescedCount()
+    {
+        return coalesced.get();
+    }
+
+    public long getSpilledCount()
+    {
+        return spilled.get();
     }
 
-    private final class ListenerRunnable
+    public int getLaneCount()
+    {
+        return lanes.length;
+    }
+
+    public int[] getLaneDepths()
+    {
+        final int[] depths = new int[lanes.length];
+        for ( int i = 0; i < lanes.length; i++ )
+        {
+            depths[i] = lanes[i].depth.get();
+        }
+
+        return depths;
+    }
+
+    public long[] getLaneTotals()
+    {
+        final long[] totals = new long[lanes.length];
+        for ( int i = 0; i < lanes.length; i++ )
+        {
+            totals[i] = lanes[i].total.get();
+        }
+
+        return totals;
+    }
+
+    // busiest lane's share of completed changes relative to an even split: 1.0 is balanced, the lane count means
+    // a single document (or hash collision) is carrying all the traffic.
+    public double getLaneSkew()
+    {
+        long sum = 0;
+        long max = 0;
+        for ( final long total : getLaneTotals() )
+        {
+            sum += total;
+            max = Math.max( max, total );
+        }
+
+        return sum == 0 ? 0 : (double) max * lanes.length / sum;
+    }
+
+    private final class Lane
         implements Runnable
     {
-        private final ThreadableListener listener;
+        private final Queue<Dispatch> queue = new ConcurrentLinkedQueue<Dispatch>();
 
-        private final CouchDocChange change;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private final AtomicInteger depth = new AtomicInteger();
 
-        ListenerRunnable( final ThreadableListener listener, final CouchDocChange change )
+        private final AtomicLong total = new AtomicLong();
+
+        void add( final Dispatch dispatch )
         {
-            this.listener = listener;
-            this.change = change;
+            depth.incrementAndGet();
+            queue.add( dispatch );
+            schedule();
+        }
+
+        private void schedule()
+        {
+            if ( scheduled.compareAndSet( false, true ) )
+            {
+                try
+                {
+                    executor.execute( this );
+                }
+                catch ( final RejectedExecutionException e )
+                {
+                    scheduled.set( false );
+                    throw e;
+                }
+            }
         }
 
         @Override
         public void run()
         {
-            listener.documentChanged( change );
-            synchronized ( ThreadedChangeDispatcher.this )
+            try
+            {
+                Dispatch dispatch;
+                int drained = 0;
+                while ( drained < DRAIN_BATCH && ( dispatch = queue.poll() ) != null )
+                {
+                    drained++;
+                    try
+                    {
+                        dispatch.run();
+                    }
+                    finally
+                    {
+                        total.incrementAndGet();
+                        depth.decrementAndGet();
+                        completed();
+                    }
+                }
+            }
+            finally
+            {
+                // runs even when a listener throws an Error, which then propagates; otherwise the lane stays busy.
+                scheduled.set( false );
+
+                // an add() that raced with the flag reset, or a batch cut short, still needs a consumer.
+                if ( !queue.isEmpty() )
+                {
+                    schedule();
+                }
+            }
+        }
+    }
+
+    private final class Dispatch
+    {
+        private final String id;
+
+        private final AtomicReference<Work> work;
+
+        Dispatch( final String id, final Work work )
+        {
+            this.id = id;
+            this.work = new AtomicReference<Work>( work );
+        }
+
+        void run()
+        {
+            // claiming the work closes it to coalescing before any listener sees it.
+            final Work claimed = work.getAndSet( null );
+            if ( waiting != null && id != null )
             {
-                pendingDispatches.remove( this );
-                ThreadedChangeDispatcher.this.notifyAll();
+                waiting.remove( id, this );
             }
+
+            if ( claimed != null )
+            {
+                try
+                {
+                    claimed.run();
+                }
+                finally
+                {
+                    outstanding.remove( claimed.ticket );
+                }
+            }
+        }
+    }
+
+    private final class Work
+    {
+        private final CouchDocChange change;
+
+        private final List<ThreadableListener> targets;
+
+        private final long ticket;
+
+        Work( final CouchDocChange change, final List<ThreadableListener> targets, final long ticket )
+        {
+            this.change = change;
+            this.targets = targets;
+            this.ticket = ticket;
         }
 
+        void run()
+        {
+            for ( final ThreadableListener listener : targets )
+            {
+                try
+                {
+                    listener.documentChanged( change );
+                }
+                catch ( final RuntimeException e )
+                {
+                    // a failing listener must not stall the lane behind it.
+                    logger.error( "Listener: %s failed to process change: %s. Reason: %s", e, listener,
+                                  change.getId(), e.getMessage() );
+                }
+            }
+        }
     }
 
 }
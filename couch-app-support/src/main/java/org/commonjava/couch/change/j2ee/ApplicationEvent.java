@@ -22,7 +22,7 @@ public class ApplicationEvent
 
     public enum Type
     {
-        INSTALL;
+        INSTALL, UPGRADE;
     }
 
     private final Type type;
@@ -34,4 +34,36 @@ public interface CouchDBConfiguration
 
     int getMaxConnections();
 
+    int getMaxConnectionsPerRoute();
+
+    String getConnectionReleaseMode();
+
+    int getBulkBatchSize();
+
+    long getBulkBatchBytes();
+
+    int getBulkConcurrency();
+
+    long getDocumentCacheBytes();
+
+    long getDocumentCacheTtlMillis();
+
+    long getViewCacheBytes();
+
+    boolean isReadCoalescing();
+
+    int getReadBatchSize();
+
+    long getReadBatchWindowMicros();
+
+    int getMultiGetChunkSize();
+
+    String getChangeFeed();
+
+    long getChangeHeartbeatMillis();
+
+    int getChangeCheckpointInterval();
+
+    long getChangeCheckpointMillis();
+
 }
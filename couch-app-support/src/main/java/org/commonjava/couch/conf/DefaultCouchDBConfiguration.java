@@ -33,10 +33,62 @@ public class DefaultCouchDBConfiguration
 
     private static final int DEFAULT_MAX_CONNECTIONS = 20;
 
+    private static final String DEFAULT_CONNECTION_RELEASE_MODE = "consume";
+
+    private static final int DEFAULT_BULK_BATCH_SIZE = 1000;
+
+    private static final int DEFAULT_BULK_CONCURRENCY = 4;
+
+    private static final int DEFAULT_DOCUMENT_CACHE_TTL_SECONDS = 30;
+
+    private static final long DEFAULT_READ_BATCH_WINDOW_MICROS = 1000;
+
+    private static final int DEFAULT_MULTI_GET_CHUNK_SIZE = 500;
+
+    private static final String DEFAULT_CHANGE_FEED = "continuous";
+
+    private static final long DEFAULT_CHANGE_HEARTBEAT_MILLIS = 10000;
+
+    private static final int DEFAULT_CHANGE_CHECKPOINT_INTERVAL = 100;
+
+    private static final long DEFAULT_CHANGE_CHECKPOINT_MILLIS = 5000;
+
     private UrlInfo urlInfo;
 
     private int maxConnections = -1;
 
+    private int maxConnectionsPerRoute = -1;
+
+    private String connectionReleaseMode;
+
+    private int bulkBatchSize = -1;
+
+    private long bulkBatchBytes = -1;
+
+    private int bulkConcurrency = -1;
+
+    private long documentCacheBytes = -1;
+
+    private int documentCacheTtlSeconds = -1;
+
+    private long viewCacheBytes = -1;
+
+    private boolean readCoalescing;
+
+    private int readBatchSize = -1;
+
+    private long readBatchWindowMicros = -1;
+
+    private int multiGetChunkSize = -1;
+
+    private String changeFeed;
+
+    private long changeHeartbeatMillis = -1;
+
+    private int changeCheckpointInterval = -1;
+
+    private long changeCheckpointMillis = -1;
+
     public DefaultCouchDBConfiguration( final String dbUrl, final int maxConnections )
     {
         this.urlInfo = UrlUtils.parseUrlInfo( dbUrl );
@@ -51,18 +103,39 @@ public class DefaultCouchDBConfiguration
 
     public DefaultCouchDBConfiguration( final CouchDBConfiguration srcConfig, final String dbName )
     {
+        this( srcConfig );
         final String url = UrlUtils.siblingDatabaseUrl( srcConfig.getDatabaseUrlInfo()
                                                                  .getRawUrl(), dbName );
         this.urlInfo = UrlUtils.parseUrlInfo( url );
+    }
+
+    public DefaultCouchDBConfiguration( final CouchDBConfiguration srcConfig )
+    {
+        this.urlInfo = UrlUtils.parseUrlInfo( srcConfig.getDatabaseUrlInfo()
+                                                       .getRawUrl() );
         this.maxConnections = srcConfig.getMaxConnections();
+        this.maxConnectionsPerRoute = srcConfig.getMaxConnectionsPerRoute();
+        this.connectionReleaseMode = srcConfig.getConnectionReleaseMode();
+        this.bulkBatchSize = srcConfig.getBulkBatchSize();
+        this.bulkBatchBytes = srcConfig.getBulkBatchBytes();
+        this.bulkConcurrency = srcConfig.getBulkConcurrency();
+        this.documentCacheBytes = srcConfig.getDocumentCacheBytes();
+        this.documentCacheTtlSeconds = (int) ( srcConfig.getDocumentCacheTtlMillis() / 1000 );
+        this.viewCacheBytes = srcConfig.getViewCacheBytes();
+        this.readCoalescing = srcConfig.isReadCoalescing();
+        this.readBatchSize = srcConfig.getReadBatchSize();
+        this.readBatchWindowMicros = srcConfig.getReadBatchWindowMicros();
+        this.multiGetChunkSize = srcConfig.getMultiGetChunkSize();
+        this.changeFeed = srcConfig.getChangeFeed();
+        this.changeHeartbeatMillis = srcConfig.getChangeHeartbeatMillis();
+        this.changeCheckpointInterval = srcConfig.getChangeCheckpointInterval();
+        this.changeCheckpointMillis = srcConfig.getChangeCheckpointMillis();
     }
 
     public DefaultCouchDBConfiguration( final CouchDBConfiguration srcConfig, final String dbName,
                                         final int maxConnections )
     {
-        final String url = UrlUtils.siblingDatabaseUrl( srcConfig.getDatabaseUrlInfo()
-                                                                 .getRawUrl(), dbName );
-        this.urlInfo = UrlUtils.parseUrlInfo( url );
+        this( srcConfig, dbName );
         this.maxConnections = maxConnections;
     }
 
@@ -82,6 +155,102 @@ public class DefaultCouchDBConfiguration
         this.maxConnections = maxConnections;
     }
 
+    @ConfigName( "db.connections.max-per-route" )
+    public void setMaxConnectionsPerRoute( final int maxConnectionsPerRoute )
+    {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    @ConfigName( "db.connections.release-mode" )
+    public void setConnectionReleaseMode( final String connectionReleaseMode )
+    {
+        this.connectionReleaseMode = connectionReleaseMode;
+    }
+
+    @ConfigName( "db.bulk.batch-size" )
+    public void setBulkBatchSize( final int bulkBatchSize )
+    {
+        this.bulkBatchSize = bulkBatchSize;
+    }
+
+    @ConfigName( "db.bulk.batch-bytes" )
+    public void setBulkBatchBytes( final long bulkBatchBytes )
+    {
+        this.bulkBatchBytes = bulkBatchBytes;
+    }
+
+    @ConfigName( "db.bulk.concurrency" )
+    public void setBulkConcurrency( final int bulkConcurrency )
+    {
+        this.bulkConcurrency = bulkConcurrency;
+    }
+
+    @ConfigName( "db.cache.documents.max-bytes" )
+    public void setDocumentCacheBytes( final long documentCacheBytes )
+    {
+        this.documentCacheBytes = documentCacheBytes;
+    }
+
+    @ConfigName( "db.cache.documents.ttl-seconds" )
+    public void setDocumentCacheTtlSeconds( final int documentCacheTtlSeconds )
+    {
+        this.documentCacheTtlSeconds = documentCacheTtlSeconds;
+    }
+
+    @ConfigName( "db.cache.views.max-bytes" )
+    public void setViewCacheBytes( final long viewCacheBytes )
+    {
+        this.viewCacheBytes = viewCacheBytes;
+    }
+
+    @ConfigName( "db.reads.coalesce" )
+    public void setReadCoalescing( final boolean readCoalescing )
+    {
+        this.readCoalescing = readCoalescing;
+    }
+
+    @ConfigName( "db.reads.batch-size" )
+    public void setReadBatchSize( final int readBatchSize )
+    {
+        this.readBatchSize = readBatchSize;
+    }
+
+    @ConfigName( "db.reads.batch-window-micros" )
+    public void setReadBatchWindowMicros( final long readBatchWindowMicros )
+    {
+        this.readBatchWindowMicros = readBatchWindowMicros;
+    }
+
+    @ConfigName( "db.reads.multi-get-chunk" )
+    public void setMultiGetChunkSize( final int multiGetChunkSize )
+    {
+        this.multiGetChunkSize = multiGetChunkSize;
+    }
+
+    @ConfigName( "db.changes.feed" )
+    public void setChangeFeed( final String changeFeed )
+    {
+        this.changeFeed = changeFeed;
+    }
+
+    @ConfigName( "db.changes.heartbeat-millis" )
+    public void setChangeHeartbeatMillis( final long changeHeartbeatMillis )
+    {
+        this.changeHeartbeatMillis = changeHeartbeatMillis;
+    }
+
+    @ConfigName( "db.changes.checkpoint-changes" )
+    public void setChangeCheckpointInterval( final int changeCheckpointInterval )
+    {
+        this.changeCheckpointInterval = changeCheckpointInterval;
+    }
+
+    @ConfigName( "db.changes.checkpoint-millis" )
+    public void setChangeCheckpointMillis( final long changeCheckpointMillis )
+    {
+        this.changeCheckpointMillis = changeCheckpointMillis;
+    }
+
     @Override
     public String getDatabaseUrl()
     {
@@ -118,6 +287,108 @@ public class DefaultCouchDBConfiguration
         return maxConnections < 1 ? DEFAULT_MAX_CONNECTIONS : maxConnections;
     }
 
+    @Override
+    public int getMaxConnectionsPerRoute()
+    {
+        // every CouchDB database behind a config shares one host, so by default a single route may use the whole pool.
+        return maxConnectionsPerRoute < 1 ? getMaxConnections() : maxConnectionsPerRoute;
+    }
+
+    @Override
+    public String getConnectionReleaseMode()
+    {
+        return connectionReleaseMode == null ? DEFAULT_CONNECTION_RELEASE_MODE : connectionReleaseMode;
+    }
+
+    @Override
+    public int getBulkBatchSize()
+    {
+        return bulkBatchSize < 1 ? DEFAULT_BULK_BATCH_SIZE : bulkBatchSize;
+    }
+
+    @Override
+    public long getBulkBatchBytes()
+    {
+        // sizing each document costs an extra serialization pass, so the byte limit is off unless configured.
+        return bulkBatchBytes < 1 ? 0 : bulkBatchBytes;
+    }
+
+    @Override
+    public int getBulkConcurrency()
+    {
+        return bulkConcurrency < 1 ? Math.min( DEFAULT_BULK_CONCURRENCY, getMaxConnectionsPerRoute() )
+                        : bulkConcurrency;
+    }
+
+    @Override
+    public long getDocumentCacheBytes()
+    {
+        // the document cache is opt-in.
+        return documentCacheBytes < 1 ? 0 : documentCacheBytes;
+    }
+
+    @Override
+    public long getDocumentCacheTtlMillis()
+    {
+        final int seconds = documentCacheTtlSeconds < 0 ? DEFAULT_DOCUMENT_CACHE_TTL_SECONDS : documentCacheTtlSeconds;
+        return seconds * 1000L;
+    }
+
+    @Override
+    public long getViewCacheBytes()
+    {
+        return viewCacheBytes < 1 ? 0 : viewCacheBytes;
+    }
+
+    @Override
+    public boolean isReadCoalescing()
+    {
+        return readCoalescing;
+    }
+
+    @Override
+    public int getReadBatchSize()
+    {
+        // batching single-document gets is opt-in.
+        return readBatchSize < 1 ? 0 : readBatchSize;
+    }
+
+    @Override
+    public long getReadBatchWindowMicros()
+    {
+        return readBatchWindowMicros < 1 ? DEFAULT_READ_BATCH_WINDOW_MICROS : readBatchWindowMicros;
+    }
+
+    @Override
+    public int getMultiGetChunkSize()
+    {
+        return multiGetChunkSize < 1 ? DEFAULT_MULTI_GET_CHUNK_SIZE : multiGetChunkSize;
+    }
+
+    @Override
+    public String getChangeFeed()
+    {
+        return changeFeed == null ? DEFAULT_CHANGE_FEED : changeFeed;
+    }
+
+    @Override
+    public long getChangeHeartbeatMillis()
+    {
+        return changeHeartbeatMillis < 1 ? DEFAULT_CHANGE_HEARTBEAT_MILLIS : changeHeartbeatMillis;
+    }
+
+    @Override
+    public int getChangeCheckpointInterval()
+    {
+        return changeCheckpointInterval < 1 ? DEFAULT_CHANGE_CHECKPOINT_INTERVAL : changeCheckpointInterval;
+    }
+
+    @Override
+    public long getChangeCheckpointMillis()
+    {
+        return changeCheckpointMillis < 1 ? DEFAULT_CHANGE_CHECKPOINT_MILLIS : changeCheckpointMillis;
+    }
+
     @Override
     public UrlInfo getDatabaseUrlInfo()
     {
@@ -0,0 +1,406 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.commonjava.couch.db.model.BulkResult;
+import org.commonjava.couch.db.model.BulkResult.DocumentResult;
+import org.commonjava.couch.model.CouchDocument;
+import org.commonjava.util.logging.Logger;
+
+public class BufferedCouchWriter
+    implements Runnable
+{
+
+    public static final int DEFAULT_MAX_BATCH = 500;
+
+    public static final long DEFAULT_FLUSH_MILLIS = 250;
+
+    public static final int DEFAULT_CAPACITY = 5000;
+
+    private final Logger logger = new Logger( getClass() );
+
+    private final CouchManager manager;
+
+    private final int maxBatch;
+
+    private final long flushMillis;
+
+    private final int capacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notFull = lock.newCondition();
+
+    private final Condition flushWanted = lock.newCondition();
+
+    private final Object flushMonitor = new Object();
+
+    private Map<String, PendingWrite> buffer = new LinkedHashMap<String, PendingWrite>();
+
+    private long windowStart;
+
+    private boolean closed;
+
+    private Thread flusher;
+
+    public BufferedCouchWriter( final CouchManager manager )
+    {
+        this( manager, DEFAULT_MAX_BATCH, DEFAULT_FLUSH_MILLIS, DEFAULT_CAPACITY );
+    }
+
+    public BufferedCouchWriter( final CouchManager manager, final int maxBatch, final long flushMillis,
+                                final int capacity )
+    {
+        this.manager = manager;
+        this.maxBatch = maxBatch < 1 ? DEFAULT_MAX_BATCH : maxBatch;
+        this.flushMillis = flushMillis < 1 ? DEFAULT_FLUSH_MILLIS : flushMillis;
+        this.capacity = Math.max( this.maxBatch, capacity );
+    }
+
+    public Future<DocumentResult> write( final CouchDocument doc )
+        throws CouchDBException
+    {
+        final String id = doc.getCouchDocId();
+        if ( id == null )
+        {
+            throw new CouchDBException( "Cannot buffer a document without an id: %s", doc );
+        }
+
+        lock.lock();
+        try
+        {
+            while ( true )
+            {
+                if ( closed )
+                {
+                    throw new CouchDBException( "Writer is closed. Cannot store: %s", id );
+                }
+
+                // a later write to the same id replaces the buffered one; both callers see the same result.
+                PendingWrite pending = buffer.get( id );
+                if ( pending != null )
+                {
+                    pending.replace( doc );
+                    return pending;
+                }
+
+                if ( buffer.size() < capacity )
+                {
+                    break;
+                }
+
+                try
+                {
+                    flushWanted.signal();
+                    notFull.await();
+                }
+                catch ( final InterruptedException e )
+                {
+                    Thread.currentThread()
+                          .interrupt();
+                    throw new CouchDBException( "Interrupted while waiting for buffer space to store: %s", id );
+                }
+            }
+
+            ensureRunning();
+
+            final PendingWrite pending = new PendingWrite( doc );
+            if ( buffer.isEmpty() )
+            {
+                windowStart = System.currentTimeMillis();
+            }
+
+            buffer.put( id, pending );
+            if ( buffer.size() >= maxBatch )
+            {
+                flushWanted.signal();
+            }
+
+            return pending;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public void flush()
+    {
+        synchronized ( flushMonitor )
+        {
+            Map<String, PendingWrite> batch;
+            lock.lock();
+            try
+            {
+                batch = buffer;
+                buffer = new LinkedHashMap<String, PendingWrite>();
+                notFull.signalAll();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+
+            submit( batch );
+        }
+    }
+
+    public void close()
+    {
+        lock.lock();
+        try
+        {
+            closed = true;
+            flushWanted.signalAll();
+            notFull.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        flush();
+    }
+
+    public int getBufferedCount()
+    {
+        lock.lock();
+        try
+        {
+            return buffer.size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        while ( true )
+        {
+            lock.lock();
+            try
+            {
+                while ( !closed && !isFlushDue() )
+                {
+                    if ( buffer.isEmpty() )
+                    {
+                        flushWanted.await();
+                    }
+                    else
+                    {
+                        final long wait = windowStart + flushMillis - System.currentTimeMillis();
+                        flushWanted.await( Math.max( 1, wait ), TimeUnit.MILLISECONDS );
+                    }
+                }
+
+                if ( closed && buffer.isEmpty() )
+                {
+                    return;
+                }
+            }
+            catch ( final InterruptedException e )
+            {
+                return;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+
+            flush();
+        }
+    }
+
+    private boolean isFlushDue()
+    {
+        return buffer.size() >= maxBatch
+            || ( !buffer.isEmpty() && System.currentTimeMillis() - windowStart >= flushMillis );
+    }
+
+    private void ensureRunning()
+    {
+        if ( flusher == null || !flusher.isAlive() )
+        {
+            flusher = new Thread( this, "couch-write-behind" );
+            flusher.setDaemon( true );
+            flusher.start();
+        }
+    }
+
+    private void submit( final Map<String, PendingWrite> batch )
+    {
+        if ( batch.isEmpty() )
+        {
+            return;
+        }
+
+        final List<CouchDocument> docs = new ArrayList<CouchDocument>( batch.size() );
+        for ( final PendingWrite pending : batch.values() )
+        {
+            docs.add( pending.document );
+        }
+
+        try
+        {
+            final BulkResult result = manager.store( docs, false, false );
+            for ( final DocumentResult dr : result )
+            {
+                final PendingWrite pending = dr.getId() == null ? null : batch.remove( dr.getId() );
+                if ( pending != null )
+                {
+                    pending.complete( dr );
+                }
+            }
+
+            for ( final Map.Entry<String, PendingWrite> entry : batch.entrySet() )
+            {
+                entry.getValue()
+                     .complete( new DocumentResult( entry.getKey(), null, "unknown",
+                                                    "No result returned from bulk update." ) );
+            }
+        }
+        catch ( final CouchDBException e )
+        {
+            failAll( batch, e );
+        }
+        catch ( final RuntimeException e )
+        {
+            failAll( batch, e );
+        }
+    }
+
+    private void failAll( final Map<String, PendingWrite> batch, final Exception e )
+    {
+        logger.error( "Failed to flush %d buffered documents: %s", e, batch.size(), e.getMessage() );
+        for ( final PendingWrite pending : batch.values() )
+        {
+            pending.fail( e );
+        }
+    }
+
+    private static final class PendingWrite
+        implements Future<DocumentResult>
+    {
+        private final CountDownLatch done = new CountDownLatch( 1 );
+
+        private final List<CouchDocument> superseded = new ArrayList<CouchDocument>();
+
+        private CouchDocument document;
+
+        private DocumentResult result;
+
+        private Throwable error;
+
+        PendingWrite( final CouchDocument document )
+        {
+            this.document = document;
+        }
+
+        void replace( final CouchDocument doc )
+        {
+            if ( doc != document )
+            {
+                superseded.add( document );
+                document = doc;
+            }
+        }
+
+        void complete( final DocumentResult dr )
+        {
+            result = dr;
+            if ( dr.isSuccess() )
+            {
+                for ( final CouchDocument doc : superseded )
+                {
+                    doc.setCouchDocRev( dr.getRev() );
+                }
+            }
+
+            done.countDown();
+        }
+
+        void fail( final Throwable e )
+        {
+            error = e;
+            done.countDown();
+        }
+
+        @Override
+        public boolean cancel( final boolean mayInterruptIfRunning )
+        {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean isDone()
+        {
+            return done.getCount() == 0;
+        }
+
+        @Override
+        public DocumentResult get()
+            throws InterruptedException, ExecutionException
+        {
+            done.await();
+            return getResult();
+        }
+
+        @Override
+        public DocumentResult get( final long timeout, final TimeUnit unit )
+            throws InterruptedException, ExecutionException, TimeoutException
+        {
+            if ( !done.await( timeout, unit ) )
+            {
+                throw new TimeoutException();
+            }
+
+            return getResult();
+        }
+
+        private DocumentResult getResult()
+            throws ExecutionException
+        {
+            if ( error != null )
+            {
+                throw new ExecutionException( error );
+            }
+
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.commonjava.couch.db.action.CouchDocumentAction;
+import org.commonjava.couch.io.Serializer;
+
+import com.google.gson.stream.JsonWriter;
+
+final class BulkBatcher
+{
+
+    private static final String CHARSET = "UTF-8";
+
+    private final Serializer serializer;
+
+    private final int maxDocuments;
+
+    private final long maxBytes;
+
+    BulkBatcher( final Serializer serializer, final int maxDocuments, final long maxBytes )
+    {
+        this.serializer = serializer;
+        this.maxDocuments = maxDocuments;
+        this.maxBytes = maxBytes;
+    }
+
+    List<List<CouchDocumentAction>> partition( final Collection<? extends CouchDocumentAction> actions )
+        throws CouchDBException
+    {
+        final List<List<CouchDocumentAction>> batches = new ArrayList<List<CouchDocumentAction>>();
+        if ( maxBytes < 1 && ( maxDocuments < 1 || actions.size() <= maxDocuments ) )
+        {
+            batches.add( new ArrayList<CouchDocumentAction>( actions ) );
+            return batches;
+        }
+
+        List<CouchDocumentAction> current = new ArrayList<CouchDocumentAction>();
+        long currentBytes = 0;
+        for ( final CouchDocumentAction action : actions )
+        {
+            final long size = maxBytes > 0 ? sizeOf( action ) : 0;
+
+            // an oversized document still goes out, alone in its own batch.
+            final boolean full =
+                ( maxDocuments > 0 && current.size() >= maxDocuments )
+                    || ( maxBytes > 0 && currentBytes + size > maxBytes );
+
+            if ( full && !current.isEmpty() )
+            {
+                batches.add( current );
+                current = new ArrayList<CouchDocumentAction>();
+                currentBytes = 0;
+            }
+
+            current.add( action );
+            currentBytes += size;
+        }
+
+        if ( !current.isEmpty() )
+        {
+            batches.add( current );
+        }
+
+        return batches;
+    }
+
+    private long sizeOf( final CouchDocumentAction action )
+        throws CouchDBException
+    {
+        final Object doc = action.getDocument();
+        final CountingOutputStream counter = new CountingOutputStream( new NullOutputStream() );
+        try
+        {
+            final JsonWriter writer = new JsonWriter( new OutputStreamWriter( counter, CHARSET ) );
+            serializer.writeJson( doc, writer );
+            writer.flush();
+        }
+        catch ( final IOException e )
+        {
+            throw new CouchDBException( "Failed to measure bulk document: %s. Reason: %s", e,
+                                        action.getDocument()
+                                              .getCouchDocId(), e.getMessage() );
+        }
+
+        // allow for the separating comma in the docs array.
+        return counter.getByteCount() + 1;
+    }
+
+}
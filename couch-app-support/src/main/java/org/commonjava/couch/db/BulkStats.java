@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BulkStats
+{
+
+    private final AtomicLong operations = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private final AtomicLong documents = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong elapsedMillis = new AtomicLong();
+
+    void recordOperation( final int batchCount, final int documentCount, final int failureCount, final long millis )
+    {
+        operations.incrementAndGet();
+        batches.addAndGet( batchCount );
+        documents.addAndGet( documentCount );
+        failures.addAndGet( failureCount );
+        elapsedMillis.addAndGet( millis );
+    }
+
+    public long getOperationCount()
+    {
+        return operations.get();
+    }
+
+    public long getBatchCount()
+    {
+        return batches.get();
+    }
+
+    public long getDocumentCount()
+    {
+        return documents.get();
+    }
+
+    public long getFailureCount()
+    {
+        return failures.get();
+    }
+
+    public long getElapsedMillis()
+    {
+        return elapsedMillis.get();
+    }
+
+    public double getDocumentsPerSecond()
+    {
+        final long millis = elapsedMillis.get();
+        return millis < 1 ? 0 : documents.get() * 1000D / millis;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "BulkStats [operations=%s, batches=%s, documents=%s, failures=%s, docsPerSecond=%.1f]",
+                              getOperationCount(), getBatchCount(), getDocumentCount(), getFailureCount(),
+                              getDocumentsPerSecond() );
+    }
+
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CacheStats
+{
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong revalidations = new AtomicLong();
+
+    private final AtomicLong notModified = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong rejections = new AtomicLong();
+
+    void recordHit()
+    {
+        hits.incrementAndGet();
+    }
+
+    void recordMiss()
+    {
+        misses.incrementAndGet();
+    }
+
+    void recordRevalidation( final boolean unchanged )
+    {
+        revalidations.incrementAndGet();
+        if ( unchanged )
+        {
+            notModified.incrementAndGet();
+        }
+    }
+
+    void recordEviction()
+    {
+        evictions.incrementAndGet();
+    }
+
+    void recordRejection()
+    {
+        rejections.incrementAndGet();
+    }
+
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    public long getRevalidationCount()
+    {
+        return revalidations.get();
+    }
+
+    public long getNotModifiedCount()
+    {
+        return notModified.get();
+    }
+
+    public long getEvictionCount()
+    {
+        return evictions.get();
+    }
+
+    public long getRejectionCount()
+    {
+        return rejections.get();
+    }
+
+    public double getHitRatio()
+    {
+        final long total = hits.get() + misses.get() + revalidations.get();
+        return total < 1 ? 0 : (double) hits.get() / total;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "CacheStats [hits=%s, misses=%s, revalidations=%s, notModified=%s, evictions=%s, "
+            + "rejections=%s, hitRatio=%.3f]", getHitCount(), getMissCount(), getRevalidationCount(),
+                              getNotModifiedCount(), getEvictionCount(), getRejectionCount(), getHitRatio() );
+    }
+
+}
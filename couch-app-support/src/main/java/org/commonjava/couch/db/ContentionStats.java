@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ContentionStats
+{
+
+    private final AtomicLong updates = new AtomicLong();
+
+    private final AtomicLong conflicts = new AtomicLong();
+
+    private final AtomicLong exhausted = new AtomicLong();
+
+    void recordUpdate()
+    {
+        updates.incrementAndGet();
+    }
+
+    void recordConflict()
+    {
+        conflicts.incrementAndGet();
+    }
+
+    void recordExhausted()
+    {
+        exhausted.incrementAndGet();
+    }
+
+    public long getUpdateCount()
+    {
+        return updates.get();
+    }
+
+    public long getConflictCount()
+    {
+        return conflicts.get();
+    }
+
+    public long getExhaustedCount()
+    {
+        return exhausted.get();
+    }
+
+    public double getConflictRatio()
+    {
+        final long total = updates.get();
+        return total < 1 ? 0 : (double) conflicts.get() / total;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "ContentionStats [updates=%s, conflicts=%s, exhausted=%s, conflictRatio=%.3f]",
+                              getUpdateCount(), getConflictCount(), getExhaustedCount(), getConflictRatio() );
+    }
+
+}
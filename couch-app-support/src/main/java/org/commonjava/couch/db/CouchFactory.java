@@ -16,7 +16,9 @@
 package org.commonjava.couch.db;
 
 import java.lang.annotation.Annotation;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import javax.enterprise.event.Event;
@@ -36,6 +38,7 @@ import org.commonjava.couch.change.j2ee.DatabaseEvent;
 import org.commonjava.couch.conf.CouchDBConfiguration;
 import org.commonjava.couch.io.CouchAppReader;
 import org.commonjava.couch.io.CouchHttpClient;
+import org.commonjava.couch.io.CouchHttpClientRegistry;
 import org.commonjava.couch.io.Serializer;
 
 @Singleton
@@ -63,6 +66,17 @@ public class CouchFactory
     @Inject
     private CouchChangeDispatcher dispatcher;
 
+    @Inject
+    private CouchHttpClientRegistry clientRegistry;
+
+    private final Map<String, DocumentCache> documentCaches = new HashMap<String, DocumentCache>();
+
+    private final Map<String, ViewCache> viewCaches = new HashMap<String, ViewCache>();
+
+    private final Map<String, ReadCoalescer> readCoalescers = new HashMap<String, ReadCoalescer>();
+
+    private final Map<String, DocumentBatcher> documentBatchers = new HashMap<String, DocumentBatcher>();
+
     public CouchChangeListener getChangeListener( final InjectionPoint injection )
     {
         return getChangeListener( getAnnotatedConfig( injection ) );
@@ -86,13 +100,104 @@ public class CouchFactory
 
     public CouchHttpClient getHttpClient( final CouchDBConfiguration configuration )
     {
-        return new CouchHttpClient( configuration, serializer );
+        return clientRegistry.getClient( configuration );
     }
 
     public CouchManager getCouchManager( final CouchDBConfiguration configuration )
     {
-        return new CouchManager( configuration, getHttpClient( configuration ), serializer,
-                                 appReader, dbEvent, appEvent );
+        final CouchManager manager =
+            new CouchManager( configuration, getHttpClient( configuration ), serializer, appReader, dbEvent, appEvent );
+
+        manager.setDocumentCache( getDocumentCache( configuration ) );
+        manager.setViewCache( getViewCache( configuration ) );
+        manager.setReadCoalescer( getReadCoalescer( configuration ) );
+        manager.setDocumentBatcher( getDocumentBatcher( configuration, manager ) );
+        return manager;
+    }
+
+    // managers for the same database share one cache, so change-listener invalidations reach all of them.
+    private synchronized DocumentCache getDocumentCache( final CouchDBConfiguration configuration )
+    {
+        if ( configuration.getDocumentCacheBytes() < 1 )
+        {
+            return null;
+        }
+
+        final String url = cacheKey( configuration );
+        DocumentCache cache = documentCaches.get( url );
+        if ( cache == null )
+        {
+            cache =
+                new DocumentCache( configuration.getDocumentCacheBytes(), configuration.getDocumentCacheTtlMillis() );
+            documentCaches.put( url, cache );
+        }
+
+        return cache;
+    }
+
+    private synchronized ViewCache getViewCache( final CouchDBConfiguration configuration )
+    {
+        if ( configuration.getViewCacheBytes() < 1 )
+        {
+            return null;
+        }
+
+        final String url = cacheKey( configuration );
+        ViewCache cache = viewCaches.get( url );
+        if ( cache == null )
+        {
+            cache = new ViewCache( configuration.getViewCacheBytes() );
+            viewCaches.put( url, cache );
+        }
+
+        return cache;
+    }
+
+    private synchronized ReadCoalescer getReadCoalescer( final CouchDBConfiguration configuration )
+    {
+        if ( !configuration.isReadCoalescing() )
+        {
+            return null;
+        }
+
+        final String url = cacheKey( configuration );
+        ReadCoalescer coalescer = readCoalescers.get( url );
+        if ( coalescer == null )
+        {
+            coalescer = new ReadCoalescer();
+            readCoalescers.put( url, coalescer );
+        }
+
+        return coalescer;
+    }
+
+    // the first manager for a database runs the shared batches; they only need its client and configuration.
+    private synchronized DocumentBatcher getDocumentBatcher( final CouchDBConfiguration configuration,
+                                                             final CouchManager manager )
+    {
+        if ( configuration.getReadBatchSize() < 1 )
+        {
+            return null;
+        }
+
+        final String url = cacheKey( configuration );
+        DocumentBatcher batcher = documentBatchers.get( url );
+        if ( batcher == null )
+        {
+            batcher =
+                new DocumentBatcher( manager, configuration.getReadBatchSize(),
+                                     configuration.getReadBatchWindowMicros() );
+            documentBatchers.put( url, batcher );
+        }
+
+        return batcher;
+    }
+
+    // getDatabaseUrl() has the credentials stripped; managers for different users must not share what they read.
+    private static String cacheKey( final CouchDBConfiguration configuration )
+    {
+        return String.format( "%s|%s|%s", configuration.getDatabaseUrl(), configuration.getDatabaseUser(),
+                              configuration.getDatabasePassword() );
     }
 
     @SuppressWarnings( "serial" )
@@ -15,35 +15,45 @@
  ******************************************************************************/
 package org.commonjava.couch.db;
 
-import static org.apache.commons.io.IOUtils.closeQuietly;
 import static org.apache.commons.io.IOUtils.copy;
 import static org.apache.http.HttpStatus.SC_CREATED;
 import static org.apache.http.HttpStatus.SC_NOT_FOUND;
 import static org.apache.http.HttpStatus.SC_OK;
 import static org.commonjava.couch.util.UrlUtils.buildUrl;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.enterprise.event.Event;
 import javax.enterprise.inject.Alternative;
 import javax.inject.Named;
 
-import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
@@ -63,25 +73,46 @@ import org.commonjava.couch.db.action.BulkActionHolder;
 import org.commonjava.couch.db.action.CouchDocumentAction;
 import org.commonjava.couch.db.action.DeleteAction;
 import org.commonjava.couch.db.action.StoreAction;
-import org.commonjava.couch.db.handler.SerializedGetHandler;
+import org.commonjava.couch.db.handler.BulkGetHandler;
+import org.commonjava.couch.db.handler.BulkResultHandler;
+import org.commonjava.couch.db.handler.ConditionalDocumentHandler;
+import org.commonjava.couch.db.handler.CouchObjectListHandler;
+import org.commonjava.couch.db.handler.DocumentGetHandler;
+import org.commonjava.couch.db.handler.DocumentWriteHandler;
+import org.commonjava.couch.db.handler.GroupedViewHandler;
+import org.commonjava.couch.db.handler.ReducedViewHandler;
+import org.commonjava.couch.db.handler.RevisionMapHandler;
+import org.commonjava.couch.db.handler.ViewPageHandler;
+import org.commonjava.couch.db.handler.ViewResultHandler;
 import org.commonjava.couch.db.model.AppDescription;
 import org.commonjava.couch.db.model.AttachmentDownload;
+import org.commonjava.couch.db.model.BulkGetRequest;
+import org.commonjava.couch.db.model.BulkResult;
+import org.commonjava.couch.db.model.BulkResult.DocumentResult;
+import org.commonjava.couch.db.model.BulkResult.FailurePolicy;
 import org.commonjava.couch.db.model.CouchDocRefSet;
 import org.commonjava.couch.db.model.CouchObjectList;
+import org.commonjava.couch.db.model.ViewKeys;
+import org.commonjava.couch.db.model.ViewPage;
 import org.commonjava.couch.db.model.ViewRequest;
 import org.commonjava.couch.io.CouchAppReader;
 import org.commonjava.couch.io.CouchHttpClient;
+import org.commonjava.couch.io.JsonEntity;
 import org.commonjava.couch.io.Serializer;
-import org.commonjava.couch.io.json.CouchObjectListDeserializer;
+import org.commonjava.couch.io.json.CouchObjectListReader;
 import org.commonjava.couch.model.Attachment;
 import org.commonjava.couch.model.CouchApp;
 import org.commonjava.couch.model.CouchDocRef;
 import org.commonjava.couch.model.CouchDocument;
 import org.commonjava.couch.model.CouchError;
 import org.commonjava.couch.model.DenormalizedCouchDoc;
+import org.commonjava.couch.util.JoinString;
 import org.commonjava.couch.util.ToString;
 
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 
 @Named( "dont-use-directly" )
 @Alternative
@@ -100,7 +131,39 @@ public class CouchManager
 
     private static final String ALL_DOCS = "_all_docs";
 
-    private ExecutorService exec;
+    private static final String BULK_GET = "_bulk_get";
+
+    private static final String LOCAL_PREFIX = "_local/";
+
+    private static final int REVISION_LOOKUP_CHUNK = 500;
+
+    private static final int DEFAULT_MAX_UPDATE_ATTEMPTS = 10;
+
+    private static final long UPDATE_BACKOFF_MILLIS = 10;
+
+    private static final long MAX_UPDATE_BACKOFF_MILLIS = 1000;
+
+    private static final long BULK_THREAD_IDLE_SECONDS = 30;
+
+    private final ContentionStats contention = new ContentionStats();
+
+    private final Random random = new Random();
+
+    private int maxUpdateAttempts = DEFAULT_MAX_UPDATE_ATTEMPTS;
+
+    private final BulkStats bulkStats = new BulkStats();
+
+    private ExecutorService bulkExecutor;
+
+    private DocumentCache documentCache;
+
+    private ViewCache viewCache;
+
+    private ReadCoalescer readCoalescer;
+
+    private DocumentBatcher documentBatcher;
+
+    private volatile Boolean bulkGetSupported;
 
     private final CouchAppReader appReader;
 
@@ -170,25 +233,29 @@ public class CouchManager
         {
             installApplication( app );
         }
-        else
+        else if ( !upgradeApplication( app ) )
         {
             LOGGER.info( "App: " + app.getCouchDocId() + " already exists in db: " + config.getDatabaseUrl() );
         }
     }
 
-    public void store( final Collection<? extends CouchDocument> documents, final boolean skipIfExists,
-                       final boolean allOrNothing )
+    public BulkResult store( final Collection<? extends CouchDocument> documents, final boolean skipIfExists,
+                             final boolean allOrNothing )
+        throws CouchDBException
+    {
+        return store( documents, skipIfExists, allOrNothing, FailurePolicy.IGNORE );
+    }
+
+    public BulkResult store( final Collection<? extends CouchDocument> documents, final boolean skipIfExists,
+                             final boolean allOrNothing, final FailurePolicy policy )
         throws CouchDBException
     {
+        final Set<String> existing = resolveRevisions( documents );
+
         final Set<StoreAction> toStore = new HashSet<StoreAction>();
         for ( final CouchDocument doc : documents )
         {
-            if ( doc instanceof DenormalizedCouchDoc )
-            {
-                ( (DenormalizedCouchDoc) doc ).calculateDenormalizedFields();
-            }
-
-            final boolean revExists = documentRevisionExists( doc );
+            final boolean revExists = existing.contains( doc.getCouchDocId() );
             if ( skipIfExists && revExists )
             {
                 continue;
@@ -197,22 +264,25 @@ public class CouchManager
             toStore.add( new StoreAction( doc, skipIfExists ) );
         }
 
-        modify( toStore, allOrNothing );
-        // threadedExecute( toStore, dbUrl );
+        return modify( toStore, allOrNothing, policy );
+    }
+
+    public BulkResult delete( final Collection<? extends CouchDocument> documents, final boolean allOrNothing )
+        throws CouchDBException
+    {
+        return delete( documents, allOrNothing, FailurePolicy.IGNORE );
     }
 
-    public void delete( final Collection<? extends CouchDocument> documents, final boolean allOrNothing )
+    public BulkResult delete( final Collection<? extends CouchDocument> documents, final boolean allOrNothing,
+                              final FailurePolicy policy )
         throws CouchDBException
     {
+        final Set<String> existing = resolveRevisions( documents );
+
         final Set<DeleteAction> toDelete = new HashSet<DeleteAction>();
         for ( final CouchDocument doc : documents )
         {
-            if ( doc instanceof DenormalizedCouchDoc )
-            {
-                ( (DenormalizedCouchDoc) doc ).calculateDenormalizedFields();
-            }
-
-            if ( !documentRevisionExists( doc ) )
+            if ( !existing.contains( doc.getCouchDocId() ) )
             {
                 continue;
             }
@@ -220,13 +290,24 @@ public class CouchManager
             toDelete.add( new DeleteAction( doc ) );
         }
 
-        modify( toDelete, allOrNothing );
-        // threadedExecute( toDelete, dbUrl );
+        return modify( toDelete, allOrNothing, policy );
+    }
+
+    public BulkResult modify( final Collection<? extends CouchDocumentAction> actions, final boolean allOrNothing )
+        throws CouchDBException
+    {
+        return modify( actions, allOrNothing, FailurePolicy.IGNORE );
     }
 
-    public void modify( final Collection<? extends CouchDocumentAction> actions, final boolean allOrNothing )
+    public BulkResult modify( final Collection<? extends CouchDocumentAction> actions, final boolean allOrNothing,
+                              final FailurePolicy policy )
         throws CouchDBException
     {
+        if ( actions.isEmpty() )
+        {
+            return new BulkResult();
+        }
+
         for ( final CouchDocumentAction action : actions )
         {
             final CouchDocument doc = action.getDocument();
@@ -236,8 +317,43 @@ public class CouchManager
             }
         }
 
+        final long start = System.currentTimeMillis();
+
+        // all_or_nothing has to commit in a single request, so only non-atomic updates are split up.
+        final BulkBatcher batcher =
+            allOrNothing ? new BulkBatcher( serializer, 0, 0 ) : new BulkBatcher( serializer, config.getBulkBatchSize(),
+                                                                                   config.getBulkBatchBytes() );
+
+        final List<List<CouchDocumentAction>> batches = batcher.partition( actions );
+
+        final BulkResult result =
+            batches.size() == 1 ? executeBulk( batches.get( 0 ), allOrNothing ) : executeBatches( batches );
+
+        bulkStats.recordOperation( batches.size(), actions.size(), result.getFailures()
+                                                                         .size(), System.currentTimeMillis() - start );
+
+        if ( policy == FailurePolicy.THROW && result.hasFailures() )
+        {
+            throw new CouchDBException( "Bulk operation failed for %s of %s documents:\n  %s",
+                                        result.getFailures()
+                                              .size(), result.size(), new JoinString( "\n  ",
+                                                                                      result.getFailures() ) );
+        }
+
+        return result;
+    }
+
+    public BulkStats getBulkStats()
+    {
+        return bulkStats;
+    }
+
+    private BulkResult executeBulk( final List<CouchDocumentAction> actions, final boolean allOrNothing )
+        throws CouchDBException
+    {
+        invalidateAll( actions );
+
         final BulkActionHolder bulk = new BulkActionHolder( actions, allOrNothing );
-        final String body = serializer.toString( bulk );
 
         String url;
         try
@@ -250,56 +366,138 @@ public class CouchManager
         }
 
         final HttpPost request = new HttpPost( url );
+        request.setEntity( new JsonEntity( serializer, bulk ) );
+
+        final BulkResult result;
         try
         {
-            request.setEntity( new StringEntity( body, "application/json", "UTF-8" ) );
+            result = client.executeHttpAndReturn( request, new BulkResultHandler(), "Bulk update failed" );
         }
-        catch ( final UnsupportedEncodingException e )
+        finally
         {
-            throw new CouchDBException( "Failed to encode POST entity for bulk update: %s", e, e.getMessage() );
+            invalidateAll( actions );
         }
 
-        try
+        applyRevisions( bulk.getActions(), result );
+
+        return result;
+    }
+
+    private BulkResult executeBatches( final List<List<CouchDocumentAction>> batches )
+        throws CouchDBException
+    {
+        final ExecutorService exec = getBulkExecutor();
+
+        final List<Future<BulkResult>> futures = new ArrayList<Future<BulkResult>>( batches.size() );
+        for ( final List<CouchDocumentAction> batch : batches )
         {
-            final HttpResponse response = client.executeHttpWithResponse( request, "Bulk update failed" );
-            final StatusLine statusLine = response.getStatusLine();
-            final int code = statusLine.getStatusCode();
-            if ( code != SC_OK && code != SC_CREATED )
+            futures.add( exec.submit( new Callable<BulkResult>()
             {
-                String content = null;
-                final HttpEntity entity = response.getEntity();
-                if ( entity != null )
+                @Override
+                public BulkResult call()
+                    throws CouchDBException
                 {
-                    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    InputStream in = null;
-                    try
-                    {
-                        in = entity.getContent();
-                        copy( in, baos );
-                    }
-                    catch ( final IOException e )
-                    {
-                        throw new CouchDBException( "Error reading response content for error: %s\nError was: %s", e,
-                                                    statusLine, e.getMessage() );
-                    }
-                    finally
-                    {
-                        closeQuietly( in );
-                    }
+                    return executeBulk( batch, false );
+                }
+            } ) );
+        }
 
-                    content = new String( baos.toByteArray() );
+        final BulkResult result = new BulkResult();
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        for ( final Future<BulkResult> future : futures )
+        {
+            try
+            {
+                result.addAll( future.get() );
+            }
+            catch ( final InterruptedException e )
+            {
+                for ( final Future<BulkResult> f : futures )
+                {
+                    f.cancel( true );
                 }
 
-                throw new CouchDBException( "Bulk operation failed. Status line: %s\nContent:\n----------\n\n%s",
-                                            statusLine, content );
+                Thread.currentThread()
+                      .interrupt();
+                throw new CouchDBException( "Interrupted while waiting for %d bulk batches to complete.",
+                                            batches.size() );
+            }
+            catch ( final ExecutionException e )
+            {
+                errors.add( e.getCause() );
             }
         }
-        finally
+
+        if ( !errors.isEmpty() )
         {
-            client.cleanup( request );
+            throw new CouchDBException( "Failed to execute %d of %d bulk batches.", errors.size(),
+                                        batches.size() ).withNestedErrors( errors );
         }
 
-        // threadedExecute( new HashSet<CouchDocumentAction>( actions ), dbUrl );
+        return result;
+    }
+
+    private synchronized ExecutorService getBulkExecutor()
+    {
+        if ( bulkExecutor == null )
+        {
+            // the in-flight limit keeps bulk traffic from starving the connection pool shared with other callers.
+            final int threads = Math.max( 1, config.getBulkConcurrency() );
+            final ThreadPoolExecutor exec =
+                new ThreadPoolExecutor( threads, threads, BULK_THREAD_IDLE_SECONDS, TimeUnit.SECONDS,
+                                        new LinkedBlockingQueue<Runnable>(), new BulkThreadFactory() );
+            exec.allowCoreThreadTimeOut( true );
+
+            bulkExecutor = exec;
+        }
+
+        return bulkExecutor;
+    }
+
+    private void applyRevisions( final CouchDocumentAction[] actions, final BulkResult result )
+    {
+        // results come back in request order; fall back to matching by id if the server reorders them.
+        final List<DocumentResult> results = result.getResults();
+        final boolean ordered = results.size() == actions.length;
+
+        Map<String, CouchDocumentAction> byId = null;
+        for ( int i = 0; i < results.size(); i++ )
+        {
+            final DocumentResult dr = results.get( i );
+
+            CouchDocumentAction action = null;
+            if ( ordered && dr.getId() != null && dr.getId()
+                                                    .equals( actions[i].getDocument()
+                                                                       .getCouchDocId() ) )
+            {
+                action = actions[i];
+            }
+            else if ( dr.getId() != null )
+            {
+                if ( byId == null )
+                {
+                    byId = new HashMap<String, CouchDocumentAction>();
+                    for ( final CouchDocumentAction a : actions )
+                    {
+                        byId.put( a.getDocument()
+                                   .getCouchDocId(), a );
+                    }
+                }
+
+                action = byId.get( dr.getId() );
+            }
+
+            if ( action == null )
+            {
+                continue;
+            }
+
+            dr.setDocument( action.getDocument() );
+            if ( dr.isSuccess() )
+            {
+                action.updateRevision( dr.getRev() );
+            }
+        }
     }
 
     public <T> List<T> getViewListing( final ViewRequest req, final Class<T> itemType )
@@ -317,28 +515,249 @@ public class CouchManager
             LOGGER.debug( "Retrieving view listing from: " + url );
         }
 
+        // the keys travel in the body, so the URL alone cannot identify the result for caching or coalescing.
+        if ( req.getKeys() != null )
+        {
+            return loadViewListingForKeys( req, url, itemType );
+        }
+
+        final ReadCoalescer coalescer = readCoalescer;
+        if ( coalescer == null )
+        {
+            return loadViewListing( req, url, itemType );
+        }
+
+        // the caller that loads the rows keeps them; callers that joined it bind their own from a snapshot.
+        final AtomicReference<List<T>> own = new AtomicReference<List<T>>();
+        final List<JsonElement> rows =
+            coalescer.execute( url + "#" + itemType.getName(), new Callable<List<JsonElement>>()
+            {
+                @Override
+                public List<JsonElement> call()
+                    throws CouchDBException
+                {
+                    final List<T> items = loadViewListing( req, url, itemType );
+                    own.set( items );
+
+                    final List<JsonElement> snapshot = new ArrayList<JsonElement>( items.size() );
+                    for ( final T item : items )
+                    {
+                        snapshot.add( snapshot( item ) );
+                    }
+
+                    return snapshot;
+                }
+            } );
+
+        if ( own.get() != null )
+        {
+            return own.get();
+        }
+
+        final CouchObjectList<T> copies = new CouchObjectListReader<T>( serializer, itemType, false ).bind( rows );
+        denormalize( copies );
+        return copies.getItems();
+    }
+
+    private <T> List<T> loadViewListing( final ViewRequest req, final String url, final Class<T> itemType )
+        throws CouchDBException
+    {
         final HttpGet request = new HttpGet( url );
 
-        final TypeToken<CouchObjectList<T>> tt = new TypeToken<CouchObjectList<T>>()
+        final ViewCache cache = viewCache;
+        final String key = url + "#" + itemType.getName();
+        final ViewCache.Entry cached = cache == null ? null : cache.get( key );
+        if ( cached != null )
         {
-        };
+            request.setHeader( HttpHeaders.IF_NONE_MATCH, cached.getEtag() );
+        }
+
+        final CouchObjectListReader<T> reader = new CouchObjectListReader<T>( serializer, itemType, false );
+        final ViewResultHandler<T> handler =
+            new ViewResultHandler<T>( serializer, reader, cache == null ? -1 : cache.getMaxWeight() );
 
-        final CouchObjectListDeserializer<T> deser = new CouchObjectListDeserializer<T>( tt, itemType, false );
+        final CouchObjectList<T> listing =
+            client.executeHttpAndReturn( request, handler,
+                                         new ToString( "Failed to retrieve contents for view request: %s", req ) );
 
-        final CouchObjectList<T> listing = client.executeHttpAndReturn( request, new TypeToken<CouchObjectList<T>>()
+        if ( cache == null )
         {
-        }.getType(), new ToString( "Failed to retrieve contents for view request: %s", req ), deser );
+            denormalize( listing );
+            return listing.getItems();
+        }
 
-        for ( final T t : listing )
+        if ( handler.isNotModified() && cached != null )
         {
-            if ( t instanceof DenormalizedCouchDoc )
+            cache.getStats()
+                 .recordRevalidation( true );
+
+            final CouchObjectList<T> rows = reader.bind( cached.getRows() );
+            denormalize( rows );
+            return rows.getItems();
+        }
+
+        if ( cached == null )
+        {
+            cache.getStats()
+                 .recordMiss();
+        }
+        else
+        {
+            cache.getStats()
+                 .recordRevalidation( false );
+        }
+
+        denormalize( listing );
+
+        // null once the body passed the cache's size limit, since such an entry would be rejected anyway.
+        final byte[] body = handler.getBody();
+        if ( handler.getEtag() != null && body != null )
+        {
+            cache.put( key, new ViewCache.Entry( handler.getEtag(), readCachedRows( reader, body,
+                                                                                    handler.getCharset() ),
+                                                 body.length ) );
+        }
+
+        return listing.getItems();
+    }
+
+    // one extra parse when an entry is filled, so that 304 hits only bind the cached trees.
+    private <T> List<JsonElement> readCachedRows( final CouchObjectListReader<T> reader, final byte[] body,
+                                                  final String charset )
+        throws CouchDBException
+    {
+        try
+        {
+            return reader.readElements( new InputStreamReader( new ByteArrayInputStream( body ), charset ) );
+        }
+        catch ( final IOException e )
+        {
+            throw new CouchDBException( "Failed to read view rows for caching. Reason: %s", e, e.getMessage() );
+        }
+    }
+
+    private <T> List<T> loadViewListingForKeys( final ViewRequest req, final String url, final Class<T> itemType )
+        throws CouchDBException
+    {
+        final Set<T> items = new LinkedHashSet<T>();
+        for ( final List<Object> chunk : keyChunks( req.getKeys() ) )
+        {
+            final CouchObjectListReader<T> reader = new CouchObjectListReader<T>( serializer, itemType, false );
+            final CouchObjectListHandler<T> handler = new CouchObjectListHandler<T>( serializer, reader );
+
+            final CouchObjectList<T> listing =
+                client.executeHttpAndReturn( viewKeysRequest( url, chunk ), handler,
+                                             new ToString( "Failed to retrieve contents for view request: %s", req ) );
+
+            items.addAll( listing.getItems() );
+        }
+
+        denormalize( items );
+        return new ArrayList<T>( items );
+    }
+
+    public <K, T> Map<K, List<T>> getViewListingByKey( final ViewRequest req, final Class<K> keyType,
+                                                       final Class<T> itemType )
+        throws CouchDBException
+    {
+        if ( CouchDocument.class.isAssignableFrom( itemType ) )
+        {
+            req.setParameter( ViewRequest.INCLUDE_DOCS, true );
+        }
+
+        final String url = buildViewUrl( req );
+        final Map<K, List<T>> groups = new LinkedHashMap<K, List<T>>();
+        final GroupedViewHandler<K, T> handler = new GroupedViewHandler<K, T>( serializer, keyType, itemType, groups );
+        final ToString failure = new ToString( "Failed to retrieve contents for view request: %s", req );
+
+        if ( req.getKeys() == null )
+        {
+            client.executeHttpAndReturn( new HttpGet( url ), handler, failure );
+        }
+        else
+        {
+            for ( final List<Object> chunk : keyChunks( req.getKeys() ) )
             {
-                ( (DenormalizedCouchDoc) t ).calculateDenormalizedFields();
+                client.executeHttpAndReturn( viewKeysRequest( url, chunk ), handler, failure );
             }
+        }
 
+        for ( final List<T> items : groups.values() )
+        {
+            denormalize( items );
         }
 
-        return listing.getItems();
+        return groups;
+    }
+
+    public <K, V> Map<K, V> getReducedView( final ViewRequest req, final Class<K> keyType, final Class<V> valueType )
+        throws CouchDBException
+    {
+        // reduced rows carry no documents, and CouchDB rejects include_docs on a reduce.
+        req.getRequestParameters()
+           .remove( ViewRequest.INCLUDE_DOCS );
+        req.setReduce( true );
+
+        final String url = buildViewUrl( req );
+        final Map<K, V> values = new LinkedHashMap<K, V>();
+        final ReducedViewHandler<K, V> handler = new ReducedViewHandler<K, V>( serializer, keyType, valueType, values );
+        final ToString failure = new ToString( "Failed to retrieve reduced view for request: %s", req );
+
+        if ( req.getKeys() == null )
+        {
+            client.executeHttpAndReturn( new HttpGet( url ), handler, failure );
+        }
+        else
+        {
+            for ( final List<Object> chunk : keyChunks( req.getKeys() ) )
+            {
+                client.executeHttpAndReturn( viewKeysRequest( url, chunk ), handler, failure );
+            }
+        }
+
+        return values;
+    }
+
+    private List<List<Object>> keyChunks( final List<Object> keys )
+    {
+        final int chunkSize = Math.max( 1, config.getMultiGetChunkSize() );
+
+        final List<List<Object>> chunks = new ArrayList<List<Object>>();
+        for ( int i = 0; i < keys.size(); i += chunkSize )
+        {
+            chunks.add( keys.subList( i, Math.min( i + chunkSize, keys.size() ) ) );
+        }
+
+        return chunks;
+    }
+
+    private HttpPost viewKeysRequest( final String url, final List<Object> keys )
+    {
+        final HttpPost request = new HttpPost( url );
+        request.setEntity( new JsonEntity( serializer, new ViewKeys( keys ) ) );
+
+        return request;
+    }
+
+    public ViewCache getViewCache()
+    {
+        return viewCache;
+    }
+
+    public void setViewCache( final ViewCache viewCache )
+    {
+        this.viewCache = viewCache;
+    }
+
+    private <T> void denormalize( final Iterable<T> items )
+    {
+        for ( final T t : items )
+        {
+            if ( t instanceof DenormalizedCouchDoc )
+            {
+                ( (DenormalizedCouchDoc) t ).calculateDenormalizedFields();
+            }
+        }
     }
 
     public <V> V getView( final ViewRequest req, final Class<V> type )
@@ -350,6 +769,53 @@ public class CouchManager
                                             new ToString( "Failed to retrieve contents for view request: %s", req ) );
     }
 
+    public <T> ViewCursor<T> openViewCursor( final ViewRequest req, final Class<T> itemType, final int pageSize )
+    {
+        if ( CouchDocument.class.isAssignableFrom( itemType ) )
+        {
+            req.setParameter( ViewRequest.INCLUDE_DOCS, true );
+        }
+
+        return new ViewCursor<T>( this, getBulkExecutor(), itemType, pageSize, req.getRequestParameters(), APP_BASE,
+                                  req.getApplication(), VIEW_BASE, req.getView() );
+    }
+
+    public <T extends CouchDocument> ViewCursor<T> openAllDocsCursor( final Class<T> docType, final int pageSize )
+    {
+        final Map<String, String> params =
+            Collections.singletonMap( ViewRequest.INCLUDE_DOCS, Boolean.toString( true ) );
+
+        return new ViewCursor<T>( this, getBulkExecutor(), docType, pageSize, params, ALL_DOCS );
+    }
+
+    <T> ViewPage<T> getViewPage( final Map<String, String> params, final Class<T> itemType, final int pageSize,
+                                 final String... path )
+        throws CouchDBException
+    {
+        String url;
+        try
+        {
+            url = buildUrl( config.getDatabaseUrl(), params, path );
+        }
+        catch ( final MalformedURLException e )
+        {
+            throw new CouchDBException( "Failed to format view page URL for: %s.\nReason: %s", e,
+                                        Arrays.asList( path ), e.getMessage() );
+        }
+
+        if ( LOGGER.isDebugEnabled() )
+        {
+            LOGGER.debug( "Retrieving view page from: " + url );
+        }
+
+        final ViewPage<T> page =
+            client.executeHttpAndReturn( new HttpGet( url ), new ViewPageHandler<T>( serializer, itemType, pageSize ),
+                                         new ToString( "Failed to retrieve view page: %s", url ) );
+
+        denormalize( page.getItems() );
+        return page;
+    }
+
     public <T extends CouchDocument> List<T> getDocuments( final Class<T> docType, final Set<CouchDocRef> refs )
         throws CouchDBException
     {
@@ -382,113 +848,583 @@ public class CouchManager
         return getDocuments( docType, refSet, false );
     }
 
-    public <T extends CouchDocument> List<T> getDocuments( final Class<T> docType, final CouchDocRefSet refSet,
-                                                           final boolean allowMissing )
-        throws CouchDBException
+    public <T extends CouchDocument> List<T> getDocuments( final Class<T> docType, final CouchDocRefSet refSet,
+                                                           final boolean allowMissing )
+        throws CouchDBException
+    {
+        final List<T> result = new ArrayList<T>( refSet.getKeys().length );
+        getDocuments( docType, refSet, allowMissing, new DocumentVisitor<T>()
+        {
+            @Override
+            public void visit( final T document )
+            {
+                result.add( document );
+            }
+        } );
+
+        return result;
+    }
+
+    public <T extends CouchDocument> void getDocuments( final Class<T> docType, final CouchDocRefSet refSet,
+                                                        final boolean allowMissing,
+                                                        final DocumentVisitor<? super T> visitor )
+        throws CouchDBException
+    {
+        final String[] keys = refSet.getKeys();
+        if ( keys.length < 1 )
+        {
+            return;
+        }
+
+        final int chunkSize = Math.max( 1, config.getMultiGetChunkSize() );
+        if ( keys.length <= chunkSize )
+        {
+            visitAll( getDocumentChunk( docType, keys, allowMissing ), visitor );
+            return;
+        }
+
+        final List<String[]> chunks = new ArrayList<String[]>();
+        for ( int i = 0; i < keys.length; i += chunkSize )
+        {
+            final String[] chunk = new String[Math.min( chunkSize, keys.length - i )];
+            System.arraycopy( keys, i, chunk, 0, chunk.length );
+            chunks.add( chunk );
+        }
+
+        // keep only a few chunks in flight, and hand each one over in key order as soon as it is ready.
+        final int window = Math.max( 1, config.getBulkConcurrency() );
+        final ExecutorService exec = getBulkExecutor();
+        final LinkedList<Future<List<T>>> inFlight = new LinkedList<Future<List<T>>>();
+
+        int next = 0;
+        try
+        {
+            while ( next < chunks.size() || !inFlight.isEmpty() )
+            {
+                while ( next < chunks.size() && inFlight.size() < window )
+                {
+                    final String[] chunk = chunks.get( next++ );
+                    inFlight.add( exec.submit( new Callable<List<T>>()
+                    {
+                        @Override
+                        public List<T> call()
+                            throws CouchDBException
+                        {
+                            return getDocumentChunk( docType, chunk, allowMissing );
+                        }
+                    } ) );
+                }
+
+                visitAll( awaitChunk( inFlight.removeFirst() ), visitor );
+            }
+        }
+        finally
+        {
+            for ( final Future<List<T>> future : inFlight )
+            {
+                future.cancel( true );
+            }
+        }
+    }
+
+    private <T> List<T> awaitChunk( final Future<List<T>> future )
+        throws CouchDBException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread()
+                  .interrupt();
+            throw new CouchDBException( "Interrupted while waiting for documents.", e );
+        }
+        catch ( final ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            if ( cause instanceof CouchDBException )
+            {
+                throw (CouchDBException) cause;
+            }
+
+            throw new CouchDBException( "Failed to retrieve documents: %s", cause, cause.getMessage() );
+        }
+    }
+
+    private <T extends CouchDocument> void visitAll( final List<T> docs, final DocumentVisitor<? super T> visitor )
+        throws CouchDBException
+    {
+        for ( final T doc : docs )
+        {
+            visitor.visit( doc );
+        }
+    }
+
+    private <T extends CouchDocument> List<T> getDocumentChunk( final Class<T> docType, final String[] keys,
+                                                                final boolean allowMissing )
+        throws CouchDBException
+    {
+        CouchObjectList<T> listing = null;
+        if ( bulkGetSupported != Boolean.FALSE )
+        {
+            listing = bulkGet( docType, keys, allowMissing );
+        }
+
+        if ( listing == null )
+        {
+            listing = allDocs( docType, CouchDocRefSet.forIds( Arrays.asList( keys ) ), allowMissing );
+        }
+
+        for ( final T t : listing )
+        {
+            if ( t instanceof DenormalizedCouchDoc )
+            {
+                ( (DenormalizedCouchDoc) t ).calculateDenormalizedFields();
+            }
+        }
+
+        return listing.getItems();
+    }
+
+    private <T extends CouchDocument> CouchObjectList<T> bulkGet( final Class<T> docType, final String[] keys,
+                                                                  final boolean allowMissing )
+        throws CouchDBException
+    {
+        String url;
+        try
+        {
+            url = buildUrl( config.getDatabaseUrl(), (Map<String, String>) null, BULK_GET );
+        }
+        catch ( final MalformedURLException e )
+        {
+            throw new CouchDBException( "Failed to format _bulk_get URL: %s", e, e.getMessage() );
+        }
+
+        final BulkGetRequest body = new BulkGetRequest( keys );
+        final HttpPost request = new HttpPost( url );
+        request.setEntity( new JsonEntity( serializer, body ) );
+
+        final BulkGetHandler<T> handler = new BulkGetHandler<T>( serializer, docType, allowMissing );
+        final CouchObjectList<T> listing =
+            client.executeHttpAndReturn( request, handler,
+                                         new ToString( "Failed to retrieve documents for: %s", body ) );
+
+        if ( handler.isUnsupported() )
+        {
+            LOGGER.info( "_bulk_get is not supported by: " + config.getDatabaseUrl() + ". Using _all_docs instead." );
+            bulkGetSupported = Boolean.FALSE;
+            return null;
+        }
+
+        bulkGetSupported = Boolean.TRUE;
+        return listing;
+    }
+
+    private <T extends CouchDocument> CouchObjectList<T> allDocs( final Class<T> docType, final CouchDocRefSet refSet,
+                                                                  final boolean allowMissing )
+        throws CouchDBException
+    {
+        String url;
+        try
+        {
+            url =
+                buildUrl( config.getDatabaseUrl(), Collections.singletonMap( ViewRequest.INCLUDE_DOCS, "true" ),
+                          ALL_DOCS );
+        }
+        catch ( final MalformedURLException e )
+        {
+            throw new CouchDBException( "Failed to format multi-doc URL: %s", e, e.getMessage() );
+        }
+
+        if ( LOGGER.isDebugEnabled() )
+        {
+            LOGGER.debug( "Selecting multiple documents from: " + url );
+        }
+
+        final HttpPost request = new HttpPost( url );
+        request.setEntity( new JsonEntity( serializer, refSet ) );
+
+        final CouchObjectListHandler<T> handler =
+            new CouchObjectListHandler<T>( serializer, new CouchObjectListReader<T>( serializer, docType,
+                                                                                      allowMissing ) );
+
+        final CouchObjectList<T> listing =
+            client.executeHttpAndReturn( request, handler, new ToString( "Failed to retrieve documents for: %s", refSet ) );
+
+        return listing;
+    }
+
+    public <T extends CouchDocument> T getDocument( final CouchDocRef ref, final Class<T> docType )
+        throws CouchDBException
+    {
+        final ReadCoalescer coalescer = readCoalescer;
+        if ( coalescer == null )
+        {
+            return readDocument( ref, docType, true );
+        }
+
+        // concurrent identical reads share one exchange; each caller still gets its own document to change.
+        final CouchDocRef shared = new CouchDocRef( ref.getCouchDocId(), ref.getCouchDocRev() );
+        final AtomicReference<T> own = new AtomicReference<T>();
+        final JsonElement doc =
+            coalescer.execute( buildDocUrl( ref, true ) + "#" + docType.getName(), new Callable<JsonElement>()
+            {
+                @Override
+                public JsonElement call()
+                    throws CouchDBException
+                {
+                    final T result = readDocument( shared, docType, true );
+                    own.set( result );
+                    return snapshot( result );
+                }
+            } );
+
+        final T result = own.get() != null ? own.get() : copyOf( doc, docType );
+
+        if ( result != null )
+        {
+            ref.setCouchDocRev( result.getCouchDocRev() );
+        }
+
+        return result;
+    }
+
+    // taken before the reader that loaded a value returns it, so later changes to that value can't leak.
+    JsonElement snapshot( final Object value )
+    {
+        return value == null ? null : serializer.toJsonTree( value );
+    }
+
+    <T> T copyOf( final JsonElement snapshot, final Class<T> type )
+    {
+        if ( snapshot == null )
+        {
+            return null;
+        }
+
+        final T copy = serializer.fromJson( snapshot, type );
+        if ( copy instanceof DenormalizedCouchDoc )
+        {
+            ( (DenormalizedCouchDoc) copy ).calculateDenormalizedFields();
+        }
+
+        return copy;
+    }
+
+    public ReadCoalescer getReadCoalescer()
+    {
+        return readCoalescer;
+    }
+
+    public void setReadCoalescer( final ReadCoalescer readCoalescer )
+    {
+        this.readCoalescer = readCoalescer;
+    }
+
+    // shared reads may wait out a batching window; update() passes false to read the head revision straight away.
+    private <T extends CouchDocument> T readDocument( final CouchDocRef ref, final Class<T> docType,
+                                                      final boolean shared )
+        throws CouchDBException
+    {
+        final DocumentCache cache = documentCache;
+        final DocumentBatcher batcher = documentBatcher;
+
+        T result;
+        if ( ref.getCouchDocId()
+                .startsWith( LOCAL_PREFIX ) )
+        {
+            // _local documents never appear in _changes or _all_docs, so neither the cache nor batching can see them.
+            result = fetchDocument( ref, docType );
+        }
+        else if ( cache != null )
+        {
+            result = getCachedDocument( cache, ref, docType );
+        }
+        else if ( shared && batcher != null && ref.getCouchDocRev() == null )
+        {
+            result = batcher.get( ref, docType );
+        }
+        else
+        {
+            result = fetchDocument( ref, docType );
+        }
+
+        if ( result instanceof DenormalizedCouchDoc )
+        {
+            ( (DenormalizedCouchDoc) result ).calculateDenormalizedFields();
+        }
+
+        return result;
+    }
+
+    public DocumentBatcher getDocumentBatcher()
+    {
+        return documentBatcher;
+    }
+
+    public void setDocumentBatcher( final DocumentBatcher documentBatcher )
+    {
+        this.documentBatcher = documentBatcher;
+    }
+
+    public DocumentCache getDocumentCache()
+    {
+        return documentCache;
+    }
+
+    public void setDocumentCache( final DocumentCache documentCache )
+    {
+        this.documentCache = documentCache;
+    }
+
+    private <T extends CouchDocument> T fetchDocument( final CouchDocRef ref, final Class<T> docType )
+        throws CouchDBException
+    {
+        final String url = buildDocUrl( ref, true );
+        final HttpGet get = new HttpGet( url );
+
+        final DocumentGetHandler<T> handler = new DocumentGetHandler<T>( serializer, docType, ref );
+        return client.executeHttpAndReturn( get, handler, new ToString( "Failed to retrieve document: %s", ref ) );
+    }
+
+    private <T extends CouchDocument> T getCachedDocument( final DocumentCache cache, final CouchDocRef ref,
+                                                           final Class<T> docType )
+        throws CouchDBException
+    {
+        final String id = ref.getCouchDocId();
+        final String rev = ref.getCouchDocRev();
+
+        final DocumentCache.Entry cached = cache.get( id );
+        if ( cached != null && ( rev == null ? cache.isFresh( cached ) : rev.equals( cached.getRevision() ) ) )
+        {
+            cache.getStats()
+                 .recordHit();
+            return fromCache( cached, ref, docType );
+        }
+
+        if ( rev != null )
+        {
+            // an explicit, older revision is fetched as-is and never replaces the cached head.
+            cache.getStats()
+                 .recordMiss();
+            return fetchDocument( ref, docType );
+        }
+
+        final long stamp = cache.stamp( id );
+        final HttpGet get = new HttpGet( buildDocUrl( ref, false ) );
+        if ( cached != null )
+        {
+            get.setHeader( HttpHeaders.IF_NONE_MATCH, "\"" + cached.getRevision() + "\"" );
+        }
+
+        final ConditionalDocumentHandler handler = new ConditionalDocumentHandler( serializer, id, cached );
+        final DocumentCache.Entry current =
+            client.executeHttpAndReturn( get, handler, new ToString( "Failed to retrieve document: %s", ref ) );
+
+        if ( cached == null )
+        {
+            cache.getStats()
+                 .recordMiss();
+        }
+        else
+        {
+            cache.getStats()
+                 .recordRevalidation( handler.isNotModified() );
+        }
+
+        if ( current == null )
+        {
+            cache.invalidate( id );
+            return null;
+        }
+
+        if ( handler.isNotModified() )
+        {
+            cache.revalidated( current );
+        }
+        else if ( current.getRevision() != null )
+        {
+            cache.put( current, stamp );
+        }
+
+        return fromCache( current, ref, docType );
+    }
+
+    private <T extends CouchDocument> T fromCache( final DocumentCache.Entry entry, final CouchDocRef ref,
+                                                   final Class<T> docType )
     {
-        String url;
-        try
+        // every caller gets its own copy, since documents are mutable.
+        final T result = serializer.fromJson( entry.getJson(), docType );
+        if ( result.getCouchDocRev() == null )
         {
-            url =
-                buildUrl( config.getDatabaseUrl(), Collections.singletonMap( ViewRequest.INCLUDE_DOCS, "true" ),
-                          ALL_DOCS );
+            result.setCouchDocRev( entry.getRevision() );
         }
-        catch ( final MalformedURLException e )
+
+        ref.setCouchDocRev( result.getCouchDocRev() );
+        return result;
+    }
+
+    private void invalidateAll( final List<CouchDocumentAction> actions )
+    {
+        for ( final CouchDocumentAction action : actions )
         {
-            throw new CouchDBException( "Failed to format multi-doc URL: %s", e, e.getMessage() );
+            invalidate( action.getDocument()
+                              .getCouchDocId() );
         }
+    }
 
-        if ( LOGGER.isDebugEnabled() )
+    // writers call this before and after the request: a read racing the write can re-cache the old revision.
+    private void invalidate( final String id )
+    {
+        final DocumentCache cache = documentCache;
+        if ( cache != null && id != null )
         {
-            LOGGER.debug( "Selecting multiple documents from: " + url );
+            cache.invalidate( id );
         }
+    }
 
-        final HttpPost request = new HttpPost( url );
-        try
+    public boolean store( final CouchDocument doc, final boolean skipIfExists )
+        throws CouchDBException
+    {
+        if ( doc instanceof DenormalizedCouchDoc )
         {
-            final String body = serializer.toString( refSet );
-            request.setEntity( new StringEntity( body, "application/json", "UTF-8" ) );
+            ( (DenormalizedCouchDoc) doc ).calculateDenormalizedFields();
         }
-        catch ( final UnsupportedEncodingException e )
+
+        final boolean hadRevision = doc.getCouchDocRev() != null;
+        if ( skipIfExists || !hadRevision )
         {
-            throw new CouchDBException( "Failed to encode POST entity for multi-document selection: %s", e,
-                                        e.getMessage() );
+            // without a revision the HEAD also picks up the current one, so an overwrite usually takes one PUT.
+            final boolean exists = documentRevisionExists( doc );
+            if ( skipIfExists && exists )
+            {
+                return false;
+            }
         }
 
-        final TypeToken<CouchObjectList<T>> tt = new TypeToken<CouchObjectList<T>>()
+        for ( int attempt = 1;; attempt++ )
         {
-        };
+            final DocumentResult result = put( doc );
+            if ( result.isSuccess() )
+            {
+                doc.setCouchDocRev( result.getRev() );
+                return true;
+            }
 
-        final CouchObjectListDeserializer<T> deser = new CouchObjectListDeserializer<T>( tt, docType, allowMissing );
+            if ( skipIfExists )
+            {
+                // created by someone else since the HEAD.
+                return false;
+            }
 
-        final CouchObjectList<T> listing = client.executeHttpAndReturn( request, new TypeToken<CouchObjectList<T>>()
-        {
-        }.getType(), new ToString( "Failed to retrieve documents for: %s", refSet ), deser );
+            if ( hadRevision )
+            {
+                contention.recordConflict();
+                throw new CouchDBException( "Failed to store document: %s. Reason: %s", doc, result );
+            }
 
-        for ( final T t : listing )
-        {
-            if ( t instanceof DenormalizedCouchDoc )
+            if ( attempt >= maxUpdateAttempts )
             {
-                ( (DenormalizedCouchDoc) t ).calculateDenormalizedFields();
+                throw new CouchDBException( "Failed to store document: %s. Reason: %s", doc, result );
             }
 
+            // stored without a revision means last writer wins; pick up the current revision and try again.
+            doc.setCouchDocRev( null );
+            documentRevisionExists( doc );
         }
-
-        return listing.getItems();
     }
 
-    public <T extends CouchDocument> T getDocument( final CouchDocRef ref, final Class<T> docType )
+    public <T extends CouchDocument> T update( final CouchDocRef ref, final Class<T> docType,
+                                               final DocumentUpdater<T> updater )
         throws CouchDBException
     {
-        if ( !documentRevisionExists( ref ) )
+        contention.recordUpdate();
+        for ( int attempt = 1;; attempt++ )
         {
-            return null;
-        }
+            // never coalesced or batched: each attempt reads the current revision directly.
+            final T current = readDocument( new CouchDocRef( ref.getCouchDocId() ), docType, false );
+            final T updated = updater.update( current );
+            if ( updated == null )
+            {
+                return current;
+            }
 
-        final String url = buildDocUrl( ref, true );
-        final HttpGet get = new HttpGet( url );
+            if ( updated instanceof DenormalizedCouchDoc )
+            {
+                ( (DenormalizedCouchDoc) updated ).calculateDenormalizedFields();
+            }
 
-        final T result =
-            client.executeHttpAndReturn( get, new SerializedGetHandler<T>( serializer, docType ),
-                                         new ToString( "Failed to retrieve document: %s", ref ) );
+            updated.setCouchDocRev( current == null ? null : current.getCouchDocRev() );
 
-        if ( result instanceof DenormalizedCouchDoc )
-        {
-            ( (DenormalizedCouchDoc) result ).calculateDenormalizedFields();
+            final DocumentResult result = put( updated );
+            if ( result.isSuccess() )
+            {
+                updated.setCouchDocRev( result.getRev() );
+                ref.setCouchDocRev( result.getRev() );
+                return updated;
+            }
+
+            contention.recordConflict();
+            if ( attempt >= maxUpdateAttempts )
+            {
+                contention.recordExhausted();
+                throw new CouchDBException( "Failed to update document: %s after %d attempts. Reason: %s",
+                                            ref.getCouchDocId(), attempt, result );
+            }
+
+            backoff( attempt );
         }
+    }
 
-        return result;
+    public ContentionStats getContentionStats()
+    {
+        return contention;
     }
 
-    public boolean store( final CouchDocument doc, final boolean skipIfExists )
+    public int getMaxUpdateAttempts()
+    {
+        return maxUpdateAttempts;
+    }
+
+    public void setMaxUpdateAttempts( final int maxUpdateAttempts )
+    {
+        this.maxUpdateAttempts = maxUpdateAttempts;
+    }
+
+    private DocumentResult put( final CouchDocument doc )
         throws CouchDBException
     {
-        if ( doc instanceof DenormalizedCouchDoc )
+        invalidate( doc.getCouchDocId() );
+
+        final HttpPut request = new HttpPut( buildDocUrl( doc, false ) );
+        request.setEntity( new JsonEntity( serializer, doc ) );
+
+        try
         {
-            ( (DenormalizedCouchDoc) doc ).calculateDenormalizedFields();
+            return client.executeHttpAndReturn( request, new DocumentWriteHandler( doc.getCouchDocId() ),
+                                                new ToString( "Failed to store document: %s", doc ) );
         }
-
-        final boolean revExists = documentRevisionExists( doc );
-        if ( skipIfExists && revExists )
+        finally
         {
-            return false;
+            invalidate( doc.getCouchDocId() );
         }
+    }
 
-        final HttpPost request = new HttpPost( config.getDatabaseUrl() );
+    private void backoff( final int attempt )
+        throws CouchDBException
+    {
+        final long ceiling = Math.min( MAX_UPDATE_BACKOFF_MILLIS, UPDATE_BACKOFF_MILLIS << Math.min( attempt, 10 ) );
         try
         {
-            request.setHeader( "Referer", config.getDatabaseUrl() );
-            final String src = serializer.toString( doc );
-            request.setEntity( new StringEntity( src, "application/json", "UTF-8" ) );
-
-            client.executeHttp( request, SC_CREATED, "Failed to store document" );
+            Thread.sleep( (long) ( random.nextDouble() * ceiling ) );
         }
-        catch ( final UnsupportedEncodingException e )
+        catch ( final InterruptedException e )
         {
-            throw new CouchDBException( "Failed to store document: %s.\nReason: %s", e, doc, e.getMessage() );
+            Thread.currentThread()
+                  .interrupt();
+            throw new CouchDBException( "Interrupted while waiting to retry conflicted update.", e );
         }
-
-        return true;
     }
 
     public void delete( final CouchDocument doc )
@@ -504,9 +1440,18 @@ public class CouchManager
             return;
         }
 
+        invalidate( doc.getCouchDocId() );
+
         final String url = buildDocUrl( doc, true );
         final HttpDelete request = new HttpDelete( url );
-        client.executeHttp( request, SC_OK, "Failed to delete document" );
+        try
+        {
+            client.executeHttp( request, SC_OK, "Failed to delete document" );
+        }
+        finally
+        {
+            invalidate( doc.getCouchDocId() );
+        }
     }
 
     public void attach( final CouchDocument doc, final Attachment attachment )
@@ -532,6 +1477,8 @@ public class CouchManager
 
         LOGGER.info( "Attaching " + attachment.getName() + " to document: " + doc.getCouchDocId() + "\nURL: " + url );
 
+        invalidate( doc.getCouchDocId() );
+
         final HttpPut request = new HttpPut( url );
         request.setHeader( HttpHeaders.CONTENT_TYPE, attachment.getContentType() );
 
@@ -545,7 +1492,14 @@ public class CouchManager
                                         e.getMessage() );
         }
 
-        client.executeHttp( request, SC_CREATED, "Failed to attach to document" );
+        try
+        {
+            client.executeHttp( request, SC_CREATED, "Failed to attach to document" );
+        }
+        finally
+        {
+            invalidate( doc.getCouchDocId() );
+        }
     }
 
     public void deleteAttachment( final CouchDocument doc, final String attachmentName )
@@ -571,8 +1525,17 @@ public class CouchManager
                                         attachmentName, doc.getCouchDocId(), e.getMessage() );
         }
 
+        invalidate( doc.getCouchDocId() );
+
         final HttpDelete request = new HttpDelete( url );
-        client.executeHttp( request, SC_OK, "Failed to delete attachment" );
+        try
+        {
+            client.executeHttp( request, SC_OK, "Failed to delete attachment" );
+        }
+        finally
+        {
+            invalidate( doc.getCouchDocId() );
+        }
     }
 
     public Attachment getAttachment( final CouchDocument doc, final String attachmentName )
@@ -595,11 +1558,13 @@ public class CouchManager
         if ( response.getStatusLine()
                      .getStatusCode() == SC_NOT_FOUND )
         {
+            client.cleanup( request );
             return null;
         }
         else if ( response.getStatusLine()
                           .getStatusCode() != SC_OK )
         {
+            client.cleanup( request );
             throw new CouchDBException( "Failed to retrieve attachment: %s from: %s. Reason: %s", attachmentName,
                                         doc.getCouchDocId(), response.getStatusLine() );
         }
@@ -645,6 +1610,74 @@ public class CouchManager
         }
     }
 
+    public Map<String, String> revisionsOf( final Collection<String> ids )
+        throws CouchDBException
+    {
+        final Map<String, String> revisions = new HashMap<String, String>();
+        if ( ids == null || ids.isEmpty() )
+        {
+            return revisions;
+        }
+
+        String url;
+        try
+        {
+            url = buildUrl( config.getDatabaseUrl(), (Map<String, String>) null, ALL_DOCS );
+        }
+        catch ( final MalformedURLException e )
+        {
+            throw new CouchDBException( "Failed to format revision-lookup URL: %s", e, e.getMessage() );
+        }
+
+        final List<String> idList = new ArrayList<String>( new LinkedHashSet<String>( ids ) );
+        for ( int i = 0; i < idList.size(); i += REVISION_LOOKUP_CHUNK )
+        {
+            final List<String> chunk = idList.subList( i, Math.min( i + REVISION_LOOKUP_CHUNK, idList.size() ) );
+            final CouchDocRefSet refSet = CouchDocRefSet.forIds( chunk );
+
+            final HttpPost request = new HttpPost( url );
+            request.setEntity( new JsonEntity( serializer, refSet ) );
+
+            client.executeHttpAndReturn( request, new RevisionMapHandler( serializer, revisions ),
+                                         new ToString( "Failed to retrieve revisions for: %s", refSet ) );
+        }
+
+        return revisions;
+    }
+
+    public Set<String> existsMany( final Collection<String> ids )
+        throws CouchDBException
+    {
+        return revisionsOf( ids ).keySet();
+    }
+
+    private Set<String> resolveRevisions( final Collection<? extends CouchDocument> documents )
+        throws CouchDBException
+    {
+        final List<String> ids = new ArrayList<String>( documents.size() );
+        for ( final CouchDocument doc : documents )
+        {
+            if ( doc instanceof DenormalizedCouchDoc )
+            {
+                ( (DenormalizedCouchDoc) doc ).calculateDenormalizedFields();
+            }
+
+            ids.add( doc.getCouchDocId() );
+        }
+
+        final Map<String, String> revisions = revisionsOf( ids );
+        for ( final CouchDocument doc : documents )
+        {
+            final String rev = revisions.get( doc.getCouchDocId() );
+            if ( rev != null && doc.getCouchDocRev() == null )
+            {
+                doc.setCouchDocRev( rev );
+            }
+        }
+
+        return revisions.keySet();
+    }
+
     public boolean documentRevisionExists( final CouchDocument doc )
         throws CouchDBException
     {
@@ -688,19 +1721,7 @@ public class CouchManager
 
             if ( exists )
             {
-                final Header etag = response.getFirstHeader( "Etag" );
-                String rev = etag.getValue();
-                if ( rev.startsWith( "\"" ) || rev.startsWith( "'" ) )
-                {
-                    rev = rev.substring( 1 );
-                }
-
-                if ( rev.endsWith( "\"" ) || rev.endsWith( "'" ) )
-                {
-                    rev = rev.substring( 0, rev.length() - 1 );
-                }
-
-                doc.setCouchDocRev( rev );
+                doc.setCouchDocRev( DocumentGetHandler.getRevision( response ) );
             }
         }
         finally
@@ -792,6 +1813,17 @@ public class CouchManager
 
         final HttpDelete request = new HttpDelete( config.getDatabaseUrl() );
         client.executeHttp( request, SC_OK, "Failed to drop database" );
+
+        if ( documentCache != null )
+        {
+            documentCache.clear();
+        }
+
+        if ( viewCache != null )
+        {
+            viewCache.clear();
+        }
+
         fireDBEvent( DatabaseEvent.Type.DROP, config.getDatabaseUrl() );
     }
 
@@ -826,6 +1858,80 @@ public class CouchManager
         }
     }
 
+    // replaces an installed design document whose views or filters differ from the application definition.
+    public boolean upgradeApplication( final CouchApp app )
+        throws CouchDBException
+    {
+        final String url = buildDocUrl( app, false );
+        final HttpGet request = new HttpGet( url );
+
+        JsonObject installed;
+        try
+        {
+            final HttpResponse response =
+                client.executeHttpWithResponse( request, SC_OK, "Failed to retrieve application document" );
+            final HttpEntity entity = response.getEntity();
+            installed = new JsonParser().parse( new InputStreamReader( entity.getContent(), "UTF-8" ) )
+                                        .getAsJsonObject();
+        }
+        catch ( final IOException e )
+        {
+            throw new CouchDBException( "Failed to read application document: %s.\nReason: %s", e, url,
+                                        e.getMessage() );
+        }
+        catch ( final JsonParseException e )
+        {
+            throw new CouchDBException( "Invalid application document: %s.\nReason: %s", e, url, e.getMessage() );
+        }
+        finally
+        {
+            client.cleanup( request );
+        }
+
+        final JsonObject wanted = new JsonParser().parse( serializer.toString( app ) )
+                                                  .getAsJsonObject();
+        if ( !designChanged( installed, wanted ) )
+        {
+            return false;
+        }
+
+        LOGGER.info( "Upgrading app at: " + url );
+        app.setCouchDocRev( installed.get( "_rev" )
+                                     .getAsString() );
+
+        final HttpPut put = new HttpPut( buildDocUrl( app, true ) );
+        try
+        {
+            put.setHeader( "Referer", config.getDatabaseUrl() );
+            put.setEntity( new StringEntity( serializer.toString( app ), "application/json", "UTF-8" ) );
+
+            client.executeHttp( put, SC_CREATED, "Failed to upgrade application document" );
+            fireAppEvent( ApplicationEvent.Type.UPGRADE, app.getDescription() );
+        }
+        catch ( final UnsupportedEncodingException e )
+        {
+            throw new CouchDBException( "Failed to upgrade application document: %s.\nReason: %s", e, app,
+                                        e.getMessage() );
+        }
+
+        return true;
+    }
+
+    static boolean designChanged( final JsonObject installed, final JsonObject wanted )
+    {
+        for ( final String member : new String[] { "language", "views", "filters" } )
+        {
+            final JsonElement want = wanted.get( member );
+            final JsonElement have = installed.get( member );
+            if ( want == null ? have != null : !want.equals( have ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     protected String buildViewUrl( final ViewRequest req )
         throws CouchDBException
     {
@@ -870,56 +1976,6 @@ public class CouchManager
         }
     }
 
-    protected synchronized void threadedExecute( final Set<? extends CouchDocumentAction> actions )
-        throws CouchDBException
-    {
-        if ( exec == null )
-        {
-            exec = Executors.newCachedThreadPool();
-        }
-
-        final CountDownLatch latch = new CountDownLatch( actions.size() );
-        for ( final CouchDocumentAction action : actions )
-        {
-            action.prepareExecution( latch, this );
-            exec.execute( action );
-        }
-
-        synchronized ( latch )
-        {
-            while ( latch.getCount() > 0 )
-            {
-                if ( LOGGER.isDebugEnabled() )
-                {
-                    LOGGER.debug( "Waiting for " + latch.getCount() + " actions to complete." );
-                }
-
-                try
-                {
-                    latch.await( 2, TimeUnit.SECONDS );
-                }
-                catch ( final InterruptedException e )
-                {
-                    break;
-                }
-            }
-        }
-
-        final List<Throwable> errors = new ArrayList<Throwable>();
-        for ( final CouchDocumentAction action : actions )
-        {
-            if ( action.getError() != null )
-            {
-                errors.add( action.getError() );
-            }
-        }
-
-        if ( !errors.isEmpty() )
-        {
-            throw new CouchDBException( "Failed to execute %d actions.", errors.size() ).withNestedErrors( errors );
-        }
-    }
-
     protected CouchAppReader getAppReader()
     {
         return appReader;
@@ -941,4 +1997,19 @@ public class CouchManager
         }
     }
 
+    private static final class BulkThreadFactory
+        implements ThreadFactory
+    {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread( final Runnable r )
+        {
+            final Thread t = new Thread( r, "couch-bulk-" + count.incrementAndGet() );
+            t.setDaemon( true );
+
+            return t;
+        }
+    }
+
 }
@@ -0,0 +1,343 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.commonjava.couch.model.CouchDocRef;
+import org.commonjava.couch.model.CouchDocument;
+
+import com.google.gson.JsonElement;
+
+public class DocumentBatcher
+{
+
+    public static final int DEFAULT_MAX_KEYS = 100;
+
+    public static final long DEFAULT_WINDOW_MICROS = 1000;
+
+    private final CouchManager manager;
+
+    private final int maxKeys;
+
+    private final long windowNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition closed = lock.newCondition();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private Batch current;
+
+    public DocumentBatcher( final CouchManager manager )
+    {
+        this( manager, DEFAULT_MAX_KEYS, DEFAULT_WINDOW_MICROS );
+    }
+
+    public DocumentBatcher( final CouchManager manager, final int maxKeys, final long windowMicros )
+    {
+        this.manager = manager;
+        this.maxKeys = maxKeys < 1 ? DEFAULT_MAX_KEYS : maxKeys;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos( windowMicros < 1 ? DEFAULT_WINDOW_MICROS : windowMicros );
+    }
+
+    public long getRequestCount()
+    {
+        return requests.get();
+    }
+
+    public long getBatchCount()
+    {
+        return batches.get();
+    }
+
+    public double getAverageBatchSize()
+    {
+        final long b = batches.get();
+        return b < 1 ? 0 : (double) requests.get() / b;
+    }
+
+    public <T extends CouchDocument> T get( final CouchDocRef ref, final Class<T> type )
+        throws CouchDBException
+    {
+        requests.incrementAndGet();
+
+        Batch batch;
+        PendingGet pending;
+        boolean leader = false;
+
+        lock.lock();
+        try
+        {
+            if ( current == null )
+            {
+                current = new Batch();
+                leader = true;
+            }
+
+            batch = current;
+            pending = batch.add( type, ref.getCouchDocId() );
+            if ( batch.size >= maxKeys )
+            {
+                current = null;
+                closed.signalAll();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        // the first caller in a window waits it out, then runs the whole batch on behalf of everyone in it.
+        if ( leader )
+        {
+            awaitWindow( batch );
+            batches.incrementAndGet();
+            batch.execute( manager );
+        }
+
+        final T result = type.cast( pending.await( manager, type ) );
+        if ( result != null )
+        {
+            ref.setCouchDocRev( result.getCouchDocRev() );
+        }
+
+        return result;
+    }
+
+    private void awaitWindow( final Batch batch )
+    {
+        lock.lock();
+        try
+        {
+            long remaining = windowNanos;
+            while ( current == batch && remaining > 0 )
+            {
+                try
+                {
+                    remaining = closed.awaitNanos( remaining );
+                }
+                catch ( final InterruptedException e )
+                {
+                    // still run the batch, so the other callers in it are not stranded.
+                    Thread.currentThread()
+                          .interrupt();
+                    break;
+                }
+            }
+
+            if ( current == batch )
+            {
+                current = null;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "DocumentBatcher [requests=%s, batches=%s, averageBatchSize=%.1f]", getRequestCount(),
+                              getBatchCount(), getAverageBatchSize() );
+    }
+
+    private static final class Batch
+    {
+        private final Map<Class<?>, Map<String, PendingGet>> byType =
+            new LinkedHashMap<Class<?>, Map<String, PendingGet>>();
+
+        private int size;
+
+        PendingGet add( final Class<?> type, final String id )
+        {
+            Map<String, PendingGet> gets = byType.get( type );
+            if ( gets == null )
+            {
+                gets = new LinkedHashMap<String, PendingGet>();
+                byType.put( type, gets );
+            }
+
+            PendingGet pending = gets.get( id );
+            if ( pending == null )
+            {
+                pending = new PendingGet();
+                gets.put( id, pending );
+                size++;
+            }
+
+            pending.waiters++;
+            return pending;
+        }
+
+        void execute( final CouchManager manager )
+        {
+            try
+            {
+                for ( final Map.Entry<Class<?>, Map<String, PendingGet>> entry : byType.entrySet() )
+                {
+                    execute( manager, entry.getKey()
+                                           .asSubclass( CouchDocument.class ), entry.getValue() );
+                }
+            }
+            finally
+            {
+                // after an Error the later types never ran; their callers must not wait forever.
+                final CouchDBException error = new CouchDBException( "Batched document retrieval did not complete." );
+                for ( final Map<String, PendingGet> gets : byType.values() )
+                {
+                    for ( final PendingGet pending : gets.values() )
+                    {
+                        pending.complete( null, null, error );
+                    }
+                }
+            }
+        }
+
+        private <T extends CouchDocument> void execute( final CouchManager manager, final Class<T> type,
+                                                        final Map<String, PendingGet> gets )
+        {
+            final List<CouchDocRef> refs = new ArrayList<CouchDocRef>( gets.size() );
+            for ( final String id : gets.keySet() )
+            {
+                refs.add( new CouchDocRef( id ) );
+            }
+
+            try
+            {
+                final List<T> docs = manager.getDocuments( type, true, refs.toArray( new CouchDocRef[refs.size()] ) );
+
+                final Map<String, T> found = new HashMap<String, T>();
+                if ( docs != null )
+                {
+                    for ( final T doc : docs )
+                    {
+                        found.put( doc.getCouchDocId(), doc );
+                    }
+                }
+
+                for ( final Map.Entry<String, PendingGet> entry : gets.entrySet() )
+                {
+                    final PendingGet pending = entry.getValue();
+                    final T doc = found.get( entry.getKey() );
+
+                    // callers asking for the same id each get their own instance, built from a snapshot.
+                    pending.complete( doc, pending.waiters > 1 ? manager.snapshot( doc ) : null, null );
+                }
+            }
+            catch ( final CouchDBException e )
+            {
+                for ( final PendingGet pending : gets.values() )
+                {
+                    pending.complete( null, null, e );
+                }
+            }
+            catch ( final RuntimeException e )
+            {
+                final CouchDBException error =
+                    new CouchDBException( "Batched document retrieval failed: %s", e, e.getMessage() );
+                for ( final PendingGet pending : gets.values() )
+                {
+                    pending.complete( null, null, error );
+                }
+            }
+            catch ( final Error e )
+            {
+                final CouchDBException error =
+                    new CouchDBException( "Batched document retrieval failed: %s", e, e.getMessage() );
+                for ( final PendingGet pending : gets.values() )
+                {
+                    pending.complete( null, null, error );
+                }
+
+                throw e;
+            }
+        }
+    }
+
+    private static final class PendingGet
+    {
+        private final CountDownLatch done = new CountDownLatch( 1 );
+
+        private final AtomicBoolean handedOut = new AtomicBoolean();
+
+        // only changed while the batch is open, under the batcher's lock.
+        private int waiters;
+
+        private Object result;
+
+        private JsonElement snapshot;
+
+        private CouchDBException error;
+
+        // the first completion wins, so the batch's final cleanup can't overwrite a real result.
+        synchronized void complete( final Object result, final JsonElement snapshot, final CouchDBException error )
+        {
+            if ( done.getCount() == 0 )
+            {
+                return;
+            }
+
+            this.result = result;
+            this.snapshot = snapshot;
+            this.error = error;
+            done.countDown();
+        }
+
+        Object await( final CouchManager manager, final Class<?> type )
+            throws CouchDBException
+        {
+            try
+            {
+                done.await();
+            }
+            catch ( final InterruptedException e )
+            {
+                Thread.currentThread()
+                      .interrupt();
+                throw new CouchDBException( "Interrupted while waiting for batched document retrieval.", e );
+            }
+
+            if ( error != null )
+            {
+                throw error;
+            }
+
+            if ( result == null || handedOut.compareAndSet( false, true ) )
+            {
+                return result;
+            }
+
+            return manager.copyOf( snapshot, type );
+        }
+    }
+
+}
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+public class DocumentCache
+{
+
+    private static final int AVERAGE_DOCUMENT_SIZE = 1024;
+
+    private static final int STAMP_STRIPES = 256;
+
+    private final long maxWeight;
+
+    private final long ttlMillis;
+
+    private final CacheStats stats = new CacheStats();
+
+    private final FrequencySketch sketch;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>( 16, 0.75f, true );
+
+    private long weight;
+
+    // bumped by every invalidation, so a read that started before one cannot cache what it fetched.
+    private final long[] stamps = new long[STAMP_STRIPES];
+
+    public DocumentCache( final long maxWeight, final long ttlMillis )
+    {
+        this.maxWeight = maxWeight;
+        this.ttlMillis = ttlMillis;
+        this.sketch = new FrequencySketch( (int) Math.min( Integer.MAX_VALUE, maxWeight / AVERAGE_DOCUMENT_SIZE ) );
+    }
+
+    public CacheStats getStats()
+    {
+        return stats;
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public synchronized long getWeight()
+    {
+        return weight;
+    }
+
+    public synchronized void invalidate( final String id )
+    {
+        stamps[stripe( id )]++;
+        final Entry old = entries.remove( id );
+        if ( old != null )
+        {
+            weight -= old.getWeight();
+        }
+    }
+
+    public synchronized void clear()
+    {
+        for ( int i = 0; i < stamps.length; i++ )
+        {
+            stamps[i]++;
+        }
+
+        entries.clear();
+        weight = 0;
+    }
+
+    synchronized Entry get( final String id )
+    {
+        sketch.increment( id );
+        return entries.get( id );
+    }
+
+    boolean isFresh( final Entry entry )
+    {
+        return System.currentTimeMillis() - entry.validated < ttlMillis;
+    }
+
+    void revalidated( final Entry entry )
+    {
+        entry.validated = System.currentTimeMillis();
+    }
+
+    synchronized long stamp( final String id )
+    {
+        return stamps[stripe( id )];
+    }
+
+    private static int stripe( final String id )
+    {
+        return ( id.hashCode() & Integer.MAX_VALUE ) % STAMP_STRIPES;
+    }
+
+    synchronized boolean put( final Entry entry, final long stamp )
+    {
+        if ( stamps[stripe( entry.getId() )] != stamp )
+        {
+            return false;
+        }
+
+        return put( entry );
+    }
+
+    synchronized boolean put( final Entry entry )
+    {
+        final long w = entry.getWeight();
+        final Entry old = entries.remove( entry.getId() );
+        if ( old != null )
+        {
+            weight -= old.getWeight();
+        }
+
+        // a replacement is already admitted, but it may have grown: it still has to fit.
+        if ( w > maxWeight || ( old == null && !admit( entry.getId(), w ) ) )
+        {
+            stats.recordRejection();
+            return false;
+        }
+
+        evict( w );
+
+        entries.put( entry.getId(), entry );
+        weight += w;
+
+        return true;
+    }
+
+    // TinyLFU admission: a newcomer only displaces the LRU victim if the sketch has seen it more often.
+    private boolean admit( final String id, final long w )
+    {
+        if ( weight + w <= maxWeight )
+        {
+            return true;
+        }
+
+        final Entry victim = entries.values()
+                                    .iterator()
+                                    .next();
+
+        return !isFresh( victim ) || sketch.frequency( victim.getId() ) < sketch.frequency( id );
+    }
+
+    private void evict( final long w )
+    {
+        final Iterator<Entry> it = entries.values()
+                                          .iterator();
+        while ( weight + w > maxWeight && it.hasNext() )
+        {
+            final Entry evicted = it.next();
+            it.remove();
+            weight -= evicted.getWeight();
+            stats.recordEviction();
+        }
+    }
+
+    public static final class Entry
+    {
+        private final String id;
+
+        private final String revision;
+
+        private final String json;
+
+        private volatile long validated = System.currentTimeMillis();
+
+        public Entry( final String id, final String revision, final String json )
+        {
+            this.id = id;
+            this.revision = revision;
+            this.json = json;
+        }
+
+        public String getId()
+        {
+            return id;
+        }
+
+        public String getRevision()
+        {
+            return revision;
+        }
+
+        public String getJson()
+        {
+            return json;
+        }
+
+        long getWeight()
+        {
+            return json.length();
+        }
+    }
+
+}
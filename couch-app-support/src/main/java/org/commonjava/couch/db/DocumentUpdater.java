@@ -0,0 +1,27 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import org.commonjava.couch.model.CouchDocument;
+
+public interface DocumentUpdater<T extends CouchDocument>
+{
+
+    // current is null when the document doesn't exist; return null to skip the write. Re-run on conflict.
+    T update( T current )
+        throws CouchDBException;
+
+}
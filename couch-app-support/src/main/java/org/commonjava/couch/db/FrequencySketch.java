@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+final class FrequencySketch
+{
+
+    private static final int DEPTH = 4;
+
+    private static final int MAX_COUNT = 15;
+
+    private static final int[] SEEDS = { 0x97CB3127, 0x2F2B2E3B, 0x7FEB352D, 0x846CA68B };
+
+    private final int[][] table;
+
+    private final int mask;
+
+    private final int sampleSize;
+
+    private int additions;
+
+    FrequencySketch( final int expectedEntries )
+    {
+        int width = 16;
+        while ( width < expectedEntries && width < ( 1 << 20 ) )
+        {
+            width <<= 1;
+        }
+
+        this.table = new int[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+    void increment( final Object key )
+    {
+        final int hash = spread( key.hashCode() );
+
+        boolean added = false;
+        for ( int i = 0; i < DEPTH; i++ )
+        {
+            final int idx = indexOf( hash, i );
+            if ( table[i][idx] < MAX_COUNT )
+            {
+                table[i][idx]++;
+                added = true;
+            }
+        }
+
+        if ( added && ++additions >= sampleSize )
+        {
+            reset();
+        }
+    }
+
+    int frequency( final Object key )
+    {
+        final int hash = spread( key.hashCode() );
+
+        int min = MAX_COUNT;
+        for ( int i = 0; i < DEPTH; i++ )
+        {
+            min = Math.min( min, table[i][indexOf( hash, i )] );
+        }
+
+        return min;
+    }
+
+    // halving every counter periodically lets the sketch forget keys that used to be popular.
+    private void reset()
+    {
+        for ( final int[] row : table )
+        {
+            for ( int i = 0; i < row.length; i++ )
+            {
+                row[i] >>>= 1;
+            }
+        }
+
+        additions /= 2;
+    }
+
+    private int indexOf( final int hash, final int row )
+    {
+        int h = ( hash ^ SEEDS[row] ) * 0x9E3779B9;
+        h ^= h >>> 16;
+        return h & mask;
+    }
+
+    private static int spread( final int hash )
+    {
+        int h = hash * 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+}
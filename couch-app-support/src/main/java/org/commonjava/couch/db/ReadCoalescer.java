@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ReadCoalescer
+{
+
+    private final ConcurrentMap<String, FutureTask<?>> inFlight = new ConcurrentHashMap<String, FutureTask<?>>();
+
+    private final AtomicLong executed = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public long getExecutedCount()
+    {
+        return executed.get();
+    }
+
+    public long getCoalescedCount()
+    {
+        return coalesced.get();
+    }
+
+    public int getInFlightCount()
+    {
+        return inFlight.size();
+    }
+
+    @SuppressWarnings( "unchecked" )
+    <T> T execute( final String key, final Callable<T> loader )
+        throws CouchDBException
+    {
+        final FutureTask<T> task = new FutureTask<T>( loader );
+        final FutureTask<?> existing = inFlight.putIfAbsent( key, task );
+        if ( existing != null )
+        {
+            coalesced.incrementAndGet();
+            return (T) await( key, existing );
+        }
+
+        executed.incrementAndGet();
+        try
+        {
+            task.run();
+        }
+        finally
+        {
+            // only the calls that overlap share a result; the next request after this one goes to the server.
+            inFlight.remove( key, task );
+        }
+
+        return await( key, task );
+    }
+
+    private <T> T await( final String key, final FutureTask<T> task )
+        throws CouchDBException
+    {
+        try
+        {
+            return task.get();
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread()
+                  .interrupt();
+            throw new CouchDBException( "Interrupted while waiting for shared read: %s", e, key );
+        }
+        catch ( final ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            if ( cause instanceof CouchDBException )
+            {
+                throw (CouchDBException) cause;
+            }
+            else if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            else if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+
+            throw new CouchDBException( "Shared read failed: %s. Reason: %s", cause, key, cause.getMessage() );
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "ReadCoalescer [executed=%s, coalesced=%s, inFlight=%s]", getExecutedCount(),
+                              getCoalescedCount(), getInFlightCount() );
+    }
+
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import com.google.gson.JsonElement;
+
+public class ViewCache
+{
+
+    private final long maxWeight;
+
+    private final CacheStats stats = new CacheStats();
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>( 16, 0.75f, true );
+
+    private long weight;
+
+    public ViewCache( final long maxWeight )
+    {
+        this.maxWeight = maxWeight;
+    }
+
+    public long getMaxWeight()
+    {
+        return maxWeight;
+    }
+
+    public CacheStats getStats()
+    {
+        return stats;
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public synchronized long getWeight()
+    {
+        return weight;
+    }
+
+    public synchronized void clear()
+    {
+        entries.clear();
+        weight = 0;
+    }
+
+    synchronized Entry get( final String key )
+    {
+        return entries.get( key );
+    }
+
+    synchronized boolean put( final String key, final Entry entry )
+    {
+        final Entry old = entries.remove( key );
+        if ( old != null )
+        {
+            weight -= old.weight;
+        }
+
+        if ( entry.weight > maxWeight )
+        {
+            stats.recordRejection();
+            return false;
+        }
+
+        final Iterator<Entry> it = entries.values()
+                                          .iterator();
+        while ( weight + entry.weight > maxWeight && it.hasNext() )
+        {
+            final Entry victim = it.next();
+            it.remove();
+            weight -= victim.weight;
+            stats.recordEviction();
+        }
+
+        entries.put( key, entry );
+        weight += entry.weight;
+
+        return true;
+    }
+
+    // keeps rows as JSON trees rather than objects: every hit binds objects no other caller holds, without
+    // parsing text again. The weight is the size of the response body the rows came from.
+    static final class Entry
+    {
+        private final String etag;
+
+        private final List<JsonElement> rows;
+
+        private final long weight;
+
+        Entry( final String etag, final List<JsonElement> rows, final long weight )
+        {
+            this.etag = etag;
+            this.rows = rows;
+            this.weight = weight;
+        }
+
+        String getEtag()
+        {
+            return etag;
+        }
+
+        List<JsonElement> getRows()
+        {
+            return rows;
+        }
+    }
+
+}
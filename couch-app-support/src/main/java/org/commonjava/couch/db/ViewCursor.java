@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import java.io.Closeable;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.commonjava.couch.db.model.ViewPage;
+import org.commonjava.couch.db.model.ViewRequest;
+
+public class ViewCursor<T>
+    implements Iterator<T>, Closeable
+{
+
+    private static final String ENCODING = "UTF-8";
+
+    private final CouchManager manager;
+
+    private final Executor executor;
+
+    private final Class<T> type;
+
+    private final int pageSize;
+
+    private final Map<String, String> parameters;
+
+    private final String[] path;
+
+    private Iterator<T> current = Collections.<T> emptyList()
+                                             .iterator();
+
+    private FutureTask<ViewPage<T>> pending;
+
+    private long pageCount;
+
+    private boolean closed;
+
+    ViewCursor( final CouchManager manager, final Executor executor, final Class<T> type, final int pageSize,
+                final Map<String, String> parameters, final String... path )
+    {
+        this.manager = manager;
+        this.executor = executor;
+        this.type = type;
+        this.pageSize = Math.max( 1, pageSize );
+        this.parameters = new LinkedHashMap<String, String>( parameters );
+        this.path = path;
+
+        pending = fetch( null, null );
+    }
+
+    @Override
+    public synchronized boolean hasNext()
+    {
+        while ( !closed && !current.hasNext() )
+        {
+            if ( pending == null )
+            {
+                return false;
+            }
+
+            final ViewPage<T> page = await( pending );
+            pageCount++;
+
+            // ask for the following page before handing this one out, so it loads while the caller works.
+            pending = page.hasNext() ? fetch( page.getNextKey(), page.getNextDocId() ) : null;
+            current = page.getItems()
+                          .iterator();
+        }
+
+        return !closed;
+    }
+
+    @Override
+    public synchronized T next()
+    {
+        if ( !hasNext() )
+        {
+            throw new NoSuchElementException();
+        }
+
+        return current.next();
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException( "View cursors are read-only." );
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        closed = true;
+        current = Collections.<T> emptyList()
+                             .iterator();
+
+        if ( pending != null )
+        {
+            // let an in-flight request finish normally so its connection goes back to the pool.
+            pending.cancel( false );
+            pending = null;
+        }
+    }
+
+    public synchronized long getPageCount()
+    {
+        return pageCount;
+    }
+
+    private FutureTask<ViewPage<T>> fetch( final String startKey, final String startDocId )
+    {
+        final Map<String, String> query = pageParameters( startKey, startDocId );
+        final FutureTask<ViewPage<T>> task = new FutureTask<ViewPage<T>>( new Callable<ViewPage<T>>()
+        {
+            @Override
+            public ViewPage<T> call()
+                throws CouchDBException
+            {
+                return manager.getViewPage( query, type, pageSize, path );
+            }
+        } );
+
+        try
+        {
+            executor.execute( task );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            // await() will run it on the caller's thread.
+        }
+
+        return task;
+    }
+
+    private ViewPage<T> await( final FutureTask<ViewPage<T>> task )
+    {
+        // a no-op if a pool thread already started it; otherwise there is no point waiting for one.
+        task.run();
+
+        try
+        {
+            return task.get();
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread()
+                  .interrupt();
+            throw new IllegalStateException( "Interrupted while reading the next page of: " + this, e );
+        }
+        catch ( final ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            throw new IllegalStateException( "Failed to read the next page of: " + this + ". Reason: "
+                + cause.getMessage(), cause );
+        }
+    }
+
+    Map<String, String> pageParameters( final String startKey, final String startDocId )
+    {
+        final Map<String, String> query = new LinkedHashMap<String, String>( parameters );
+        query.remove( ViewRequest.LIMIT );
+
+        if ( startKey != null )
+        {
+            // keyset paging: never skip, just restart from the first row that did not fit in the last page.
+            query.remove( ViewRequest.SKIP );
+            query.put( ViewRequest.START_KEY, encode( startKey ) );
+            if ( startDocId == null )
+            {
+                query.remove( ViewRequest.START_KEY_DOCID );
+            }
+            else
+            {
+                query.put( ViewRequest.START_KEY_DOCID, encode( startDocId ) );
+            }
+        }
+
+        query.put( ViewRequest.LIMIT, Integer.toString( pageSize + 1 ) );
+
+        return query;
+    }
+
+    private static String encode( final String value )
+    {
+        try
+        {
+            return URLEncoder.encode( value, ENCODING );
+        }
+        catch ( final UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( "Cannot encode query parameter: " + value, e );
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "ViewCursor [path=%s, type=%s, pageSize=%s, pages=%s]", path.length > 0
+            ? path[path.length - 1] : "", type.getName(), pageSize, pageCount );
+    }
+
+}
@@ -23,11 +23,9 @@ import com.google.gson.annotations.SerializedName;
 public class BulkActionHolder
 {
 
-    @SuppressWarnings( "unused" )
     @SerializedName( "all_or_nothing" )
     private boolean transactional = false;
 
-    @SuppressWarnings( "unused" )
     @SerializedName( "non_atomic" )
     private boolean nonAtomic = true;
 
@@ -53,4 +51,14 @@ public class BulkActionHolder
         return actions;
     }
 
+    public boolean isTransactional()
+    {
+        return transactional;
+    }
+
+    public boolean isNonAtomic()
+    {
+        return nonAtomic;
+    }
+
 }
@@ -15,10 +15,6 @@
  ******************************************************************************/
 package org.commonjava.couch.db.action;
 
-import java.util.concurrent.CountDownLatch;
-
-import org.commonjava.couch.db.CouchDBException;
-import org.commonjava.couch.db.CouchManager;
 import org.commonjava.couch.model.AbstractCouchDocument;
 import org.commonjava.couch.model.CouchDocument;
 
@@ -31,25 +27,24 @@ public class DeleteAction
 
     private final CouchDocument document;
 
-    private CouchDBException error;
-
-    private CountDownLatch latch;
-
-    private CouchManager manager;
+    private final CouchDocument target;
 
     public DeleteAction( final CouchDocument document )
     {
         this.document = new DeleteDoc( document );
+        this.target = document;
     }
 
     public DeleteAction( final String key, final String revision )
     {
         this.document = new DeleteDoc( key, revision );
+        this.target = null;
     }
 
     public DeleteAction( final String key )
     {
         this.document = new DeleteDoc( key );
+        this.target = null;
     }
 
     @Override
@@ -58,6 +53,16 @@ public class DeleteAction
         return document;
     }
 
+    @Override
+    public void updateRevision( final String revision )
+    {
+        document.setCouchDocRev( revision );
+        if ( target != null )
+        {
+            target.setCouchDocRev( revision );
+        }
+    }
+
     static final class DeleteDoc
         extends AbstractCouchDocument
     {
@@ -88,34 +93,4 @@ public class DeleteAction
 
     }
 
-    @Override
-    public void run()
-    {
-        try
-        {
-            manager.delete( document );
-        }
-        catch ( CouchDBException e )
-        {
-            error = e;
-        }
-        finally
-        {
-            latch.countDown();
-        }
-    }
-
-    @Override
-    public CouchDBException getError()
-    {
-        return error;
-    }
-
-    @Override
-    public void prepareExecution( final CountDownLatch latch, final CouchManager manager )
-    {
-        this.manager = manager;
-        this.latch = latch;
-    }
-
 }
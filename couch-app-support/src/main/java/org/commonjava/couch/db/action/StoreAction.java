@@ -15,10 +15,6 @@
  ******************************************************************************/
 package org.commonjava.couch.db.action;
 
-import java.util.concurrent.CountDownLatch;
-
-import org.commonjava.couch.db.CouchDBException;
-import org.commonjava.couch.db.CouchManager;
 import org.commonjava.couch.model.CouchDocument;
 
 public class StoreAction
@@ -29,12 +25,6 @@ public class StoreAction
 
     private final boolean skipIfExists;
 
-    private CouchManager manager;
-
-    private CountDownLatch latch;
-
-    private CouchDBException error;
-
     public StoreAction( final CouchDocument document, final boolean skipIfExists )
     {
         this.document = document;
@@ -48,33 +38,14 @@ public class StoreAction
     }
 
     @Override
-    public void run()
+    public void updateRevision( final String revision )
     {
-        try
-        {
-            manager.store( document, skipIfExists );
-        }
-        catch ( CouchDBException e )
-        {
-            error = e;
-        }
-        finally
-        {
-            latch.countDown();
-        }
+        document.setCouchDocRev( revision );
     }
 
-    @Override
-    public CouchDBException getError()
-    {
-        return error;
-    }
-
-    @Override
-    public void prepareExecution( final CountDownLatch latch, final CouchManager manager )
+    public boolean isSkipIfExists()
     {
-        this.manager = manager;
-        this.latch = latch;
+        return skipIfExists;
     }
 
 }
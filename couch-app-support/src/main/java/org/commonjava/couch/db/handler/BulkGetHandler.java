@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.couch.db.CouchDBException;
+import org.commonjava.couch.db.model.CouchObjectList;
+import org.commonjava.couch.io.Serializer;
+import org.commonjava.couch.model.CouchError;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+public class BulkGetHandler<T>
+    implements ResponseHandlerWithError<CouchObjectList<T>>
+{
+
+    private static final String DEFAULT_CHARSET = "UTF-8";
+
+    private static final String RESULTS = "results";
+
+    private static final String ID = "id";
+
+    private static final String DOCS = "docs";
+
+    private static final String OK = "ok";
+
+    private static final String DELETED = "_deleted";
+
+    private final Serializer serializer;
+
+    private final Class<T> type;
+
+    private final boolean allowMissing;
+
+    private boolean unsupported;
+
+    private CouchDBException error;
+
+    public BulkGetHandler( final Serializer serializer, final Class<T> type, final boolean allowMissing )
+    {
+        this.serializer = serializer;
+        this.type = type;
+        this.allowMissing = allowMissing;
+    }
+
+    @Override
+    public CouchDBException getError()
+    {
+        return error;
+    }
+
+    // servers older than CouchDB 2.0 have no _bulk_get, and answer with one of these instead.
+    public boolean isUnsupported()
+    {
+        return unsupported;
+    }
+
+    @Override
+    public CouchObjectList<T> handleResponse( final HttpResponse response )
+        throws ClientProtocolException, IOException
+    {
+        final HttpEntity entity = response.getEntity();
+        final StatusLine sl = response.getStatusLine();
+        final int code = sl.getStatusCode();
+
+        if ( code == HttpStatus.SC_NOT_FOUND || code == HttpStatus.SC_METHOD_NOT_ALLOWED
+            || code == HttpStatus.SC_BAD_REQUEST )
+        {
+            EntityUtils.consume( entity );
+            unsupported = true;
+            return null;
+        }
+
+        if ( entity == null )
+        {
+            error = new CouchDBException( "No content returned from server: '%s'", sl );
+            return null;
+        }
+
+        String charset = EntityUtils.getContentCharSet( entity );
+        if ( charset == null )
+        {
+            charset = DEFAULT_CHARSET;
+        }
+
+        final InputStream in = entity.getContent();
+        try
+        {
+            if ( code != HttpStatus.SC_OK )
+            {
+                final CouchError err = serializer.toError( in, charset );
+                error =
+                    new CouchDBException( "Error returned from server: '%s'\nError message: %s", sl,
+                                          err == null ? "-NONE-" : err );
+
+                return null;
+            }
+
+            return read( new JsonReader( new InputStreamReader( in, charset ) ) );
+        }
+        catch ( final JsonParseException e )
+        {
+            error = new CouchDBException( "Failed to parse _bulk_get results: %s", e, e.getMessage() );
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return null;
+    }
+
+    private CouchObjectList<T> read( final JsonReader reader )
+        throws IOException
+    {
+        final ArrayList<T> items = new ArrayList<T>();
+        final JsonParser parser = new JsonParser();
+
+        reader.beginObject();
+        while ( reader.hasNext() )
+        {
+            if ( !RESULTS.equals( reader.nextName() ) || reader.peek() != JsonToken.BEGIN_ARRAY )
+            {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginArray();
+            while ( reader.hasNext() )
+            {
+                final JsonObject result = parser.parse( reader )
+                                                .getAsJsonObject();
+
+                final T item = readResult( result );
+                if ( item != null )
+                {
+                    items.add( item );
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+
+        return CouchObjectList.wrap( items );
+    }
+
+    private T readResult( final JsonObject result )
+    {
+        final JsonElement docs = result.get( DOCS );
+        if ( docs != null && docs.isJsonArray() )
+        {
+            for ( final JsonElement element : docs.getAsJsonArray() )
+            {
+                final JsonElement ok = element.isJsonObject() ? element.getAsJsonObject()
+                                                                       .get( OK ) : null;
+                if ( ok == null || !ok.isJsonObject() )
+                {
+                    continue;
+                }
+
+                // a deleted document is reported like a missing one, as _all_docs does.
+                final JsonElement deleted = ok.getAsJsonObject()
+                                              .get( DELETED );
+                if ( deleted != null && deleted.isJsonPrimitive() && deleted.getAsBoolean() )
+                {
+                    return null;
+                }
+
+                return type.cast( serializer.fromJson( ok, type ) );
+            }
+        }
+
+        if ( !allowMissing )
+        {
+            throw new JsonParseException( "Document not found: " + result.get( ID ) );
+        }
+
+        return null;
+    }
+
+}
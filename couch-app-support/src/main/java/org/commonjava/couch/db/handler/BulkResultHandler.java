@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.couch.db.CouchDBException;
+import org.commonjava.couch.db.model.BulkResult;
+import org.commonjava.couch.db.model.BulkResult.DocumentResult;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+public class BulkResultHandler
+    implements ResponseHandlerWithError<BulkResult>
+{
+
+    private static final String DEFAULT_CHARSET = "UTF-8";
+
+    private static final String ID = "id";
+
+    private static final String REV = "rev";
+
+    private static final String ERROR = "error";
+
+    private static final String REASON = "reason";
+
+    private CouchDBException error;
+
+    @Override
+    public CouchDBException getError()
+    {
+        return error;
+    }
+
+    @Override
+    public BulkResult handleResponse( final HttpResponse response )
+        throws ClientProtocolException, IOException
+    {
+        final HttpEntity entity = response.getEntity();
+        final StatusLine sl = response.getStatusLine();
+        final int code = sl.getStatusCode();
+
+        String charset = entity == null ? null : EntityUtils.getContentCharSet( entity );
+        if ( charset == null )
+        {
+            charset = DEFAULT_CHARSET;
+        }
+
+        InputStream in = null;
+        try
+        {
+            if ( entity != null )
+            {
+                in = entity.getContent();
+            }
+
+            // all_or_nothing failures come back as 417, still carrying the per-document array.
+            if ( code != HttpStatus.SC_OK && code != HttpStatus.SC_CREATED && code != HttpStatus.SC_ACCEPTED
+                && code != HttpStatus.SC_EXPECTATION_FAILED )
+            {
+                final String content = in == null ? null : IOUtils.toString( in, charset );
+                error =
+                    new CouchDBException( "Bulk operation failed. Status line: %s\nContent:\n----------\n\n%s", sl,
+                                          content );
+
+                return null;
+            }
+
+            if ( in == null )
+            {
+                return new BulkResult();
+            }
+
+            return new BulkResult( read( new JsonReader( new InputStreamReader( in, charset ) ) ) );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( in );
+        }
+    }
+
+    private List<DocumentResult> read( final JsonReader reader )
+        throws IOException
+    {
+        final List<DocumentResult> results = new ArrayList<DocumentResult>();
+        if ( reader.peek() != JsonToken.BEGIN_ARRAY )
+        {
+            reader.skipValue();
+            return results;
+        }
+
+        reader.beginArray();
+        while ( reader.hasNext() )
+        {
+            results.add( readResult( reader ) );
+        }
+        reader.endArray();
+
+        return results;
+    }
+
+    static DocumentResult readResult( final JsonReader reader )
+        throws IOException
+    {
+        String id = null;
+        String rev = null;
+        String err = null;
+        String reason = null;
+
+        reader.beginObject();
+        while ( reader.hasNext() )
+        {
+            final String name = reader.nextName();
+            if ( reader.peek() != JsonToken.STRING )
+            {
+                reader.skipValue();
+            }
+            else if ( ID.equals( name ) )
+            {
+                id = reader.nextString();
+            }
+            else if ( REV.equals( name ) )
+            {
+                rev = reader.nextString();
+            }
+            else if ( ERROR.equals( name ) )
+            {
+                err = reader.nextString();
+            }
+            else if ( REASON.equals( name ) )
+            {
+                reason = reader.nextString();
+            }
+            else
+            {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new DocumentResult( id, rev, err, reason );
+    }
+
+}
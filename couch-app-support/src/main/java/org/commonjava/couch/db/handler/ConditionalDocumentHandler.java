@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.couch.db.CouchDBException;
+import org.commonjava.couch.db.DocumentCache;
+import org.commonjava.couch.io.Serializer;
+import org.commonjava.couch.model.CouchError;
+
+public class ConditionalDocumentHandler
+    implements ResponseHandlerWithError<DocumentCache.Entry>
+{
+
+    private static final String DEFAULT_CHARSET = "UTF-8";
+
+    private final Serializer serializer;
+
+    private final String id;
+
+    private final DocumentCache.Entry cached;
+
+    private boolean notModified;
+
+    private CouchDBException error;
+
+    public ConditionalDocumentHandler( final Serializer serializer, final String id, final DocumentCache.Entry cached )
+    {
+        this.serializer = serializer;
+        this.id = id;
+        this.cached = cached;
+    }
+
+    @Override
+    public CouchDBException getError()
+    {
+        return error;
+    }
+
+    public boolean isNotModified()
+    {
+        return notModified;
+    }
+
+    @Override
+    public DocumentCache.Entry handleResponse( final HttpResponse response )
+        throws ClientProtocolException, IOException
+    {
+        final HttpEntity entity = response.getEntity();
+        final StatusLine sl = response.getStatusLine();
+        final int code = sl.getStatusCode();
+
+        if ( code == HttpStatus.SC_NOT_MODIFIED && cached != null )
+        {
+            EntityUtils.consume( entity );
+            notModified = true;
+            return cached;
+        }
+        else if ( code == HttpStatus.SC_NOT_FOUND )
+        {
+            EntityUtils.consume( entity );
+            return null;
+        }
+
+        String charset = entity == null ? null : EntityUtils.getContentCharSet( entity );
+        if ( charset == null )
+        {
+            charset = DEFAULT_CHARSET;
+        }
+
+        InputStream in = null;
+        try
+        {
+            if ( entity != null )
+            {
+                in = entity.getContent();
+            }
+
+            if ( code != HttpStatus.SC_OK || in == null )
+            {
+                final CouchError err = in == null ? null : serializer.toError( in, charset );
+                error =
+                    new CouchDBException( "Error returned from server: '%s'\nError message: %s", sl,
+                                          err == null ? "-NONE-" : err );
+
+                return null;
+            }
+
+            final String json = IOUtils.toString( in, charset );
+            return new DocumentCache.Entry( id, DocumentGetHandler.getRevision( response ), json );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( in );
+        }
+    }
+
+}
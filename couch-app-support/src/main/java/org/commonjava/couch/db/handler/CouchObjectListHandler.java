@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.couch.db.CouchDBException;
+import org.commonjava.couch.db.model.CouchObjectList;
+import org.commonjava.couch.io.Serializer;
+import org.commonjava.couch.io.json.CouchObjectListReader;
+import org.commonjava.couch.model.CouchError;
+
+import com.google.gson.JsonParseException;
+
+public class CouchObjectListHandler<T>
+    implements ResponseHandlerWithError<CouchObjectList<T>>
+{
+
+    private static final String DEFAULT_CHARSET = "UTF-8";
+
+    private CouchDBException error;
+
+    private final Serializer serializer;
+
+    private final CouchObjectListReader<T> reader;
+
+    public CouchObjectListHandler( final Serializer serializer, final CouchObjectListReader<T> reader )
+    {
+        this.serializer = serializer;
+        this.reader = reader;
+    }
+
+    @Override
+    public CouchDBException getError()
+    {
+        return error;
+    }
+
+    @Override
+    public CouchObjectList<T> handleResponse( final HttpResponse response )
+        throws ClientProtocolException, IOException
+    {
+        final HttpEntity entity = response.getEntity();
+        final StatusLine sl = response.getStatusLine();
+        if ( entity == null )
+        {
+            error = new CouchDBException( "No content returned from server: '%s'", sl );
+            return null;
+        }
+
+        String charset = EntityUtils.getContentCharSet( entity );
+        if ( charset == null )
+        {
+            charset = DEFAULT_CHARSET;
+        }
+
+        final InputStream in = entity.getContent();
+        try
+        {
+            if ( sl.getStatusCode() != HttpStatus.SC_OK )
+            {
+                final CouchError err = serializer.toError( in, charset );
+                error =
+                    new CouchDBException( "Error returned from server: '%s'\nError message: %s", sl,
+                                          err == null ? "-NONE-" : err );
+
+                return null;
+            }
+
+            return reader.read( new InputStreamReader( in, charset ) );
+        }
+        catch ( final JsonParseException e )
+        {
+            error = new CouchDBException( "Failed to parse view rows: %s", e, e.getMessage() );
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return null;
+    }
+
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import java.io.IOException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.couch.db.CouchDBException;
+import org.commonjava.couch.io.Serializer;
+import org.commonjava.couch.model.CouchDocument;
+
+public class DocumentGetHandler<T extends CouchDocument>
+    implements ResponseHandlerWithError<T>
+{
+
+    private static final String ETAG = "ETag";
+
+    private final SerializedGetHandler<T> delegate;
+
+    private final CouchDocument ref;
+
+    public DocumentGetHandler( final Serializer serializer, final Class<T> type, final CouchDocument ref )
+    {
+        this.delegate = new SerializedGetHandler<T>( serializer, type );
+        this.ref = ref;
+    }
+
+    @Override
+    public CouchDBException getError()
+    {
+        return delegate.getError();
+    }
+
+    @Override
+    public T handleResponse( final HttpResponse response )
+        throws ClientProtocolException, IOException
+    {
+        if ( response.getStatusLine()
+                     .getStatusCode() == HttpStatus.SC_NOT_FOUND )
+        {
+            EntityUtils.consume( response.getEntity() );
+            return null;
+        }
+
+        final T result = delegate.handleResponse( response );
+        if ( result != null )
+        {
+            final String rev = getRevision( response );
+            if ( result.getCouchDocRev() == null && rev != null )
+            {
+                result.setCouchDocRev( rev );
+            }
+
+            if ( ref != null )
+            {
+                ref.setCouchDocRev( result.getCouchDocRev() );
+            }
+        }
+
+        return result;
+    }
+
+    public static String getRevision( final HttpResponse response )
+    {
+        final Header etag = response.getFirstHeader( ETAG );
+        if ( etag == null )
+        {
+            return null;
+        }
+
+        String rev = etag.getValue();
+        if ( rev.startsWith( "\"" ) || rev.startsWith( "'" ) )
+        {
+            rev = rev.substring( 1 );
+        }
+
+        if ( rev.endsWith( "\"" ) || rev.endsWith( "'" ) )
+        {
+            rev = rev.substring( 0, rev.length() - 1 );
+        }
+
+        return rev;
+    }
+
+}
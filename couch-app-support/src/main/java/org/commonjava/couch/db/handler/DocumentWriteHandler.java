@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.couch.db.CouchDBException;
+import org.commonjava.couch.db.model.BulkResult.DocumentResult;
+
+import com.google.gson.stream.JsonReader;
+
+public class DocumentWriteHandler
+    implements ResponseHandlerWithError<DocumentResult>
+{
+
+    private static final String DEFAULT_CHARSET = "UTF-8";
+
+    private static final String CONFLICT = "conflict";
+
+    private final String id;
+
+    private CouchDBException error;
+
+    public DocumentWriteHandler( final String id )
+    {
+        this.id = id;
+    }
+
+    @Override
+    public CouchDBException getError()
+    {
+        return error;
+    }
+
+    @Override
+    public DocumentResult handleResponse( final HttpResponse response )
+        throws ClientProtocolException, IOException
+    {
+        final HttpEntity entity = response.getEntity();
+        final StatusLine sl = response.getStatusLine();
+        final int code = sl.getStatusCode();
+
+        String charset = entity == null ? null : EntityUtils.getContentCharSet( entity );
+        if ( charset == null )
+        {
+            charset = DEFAULT_CHARSET;
+        }
+
+        InputStream in = null;
+        try
+        {
+            if ( entity != null )
+            {
+                in = entity.getContent();
+            }
+
+            if ( code == HttpStatus.SC_CONFLICT )
+            {
+                String reason = null;
+                if ( in != null )
+                {
+                    reason = BulkResultHandler.readResult( new JsonReader( new InputStreamReader( in, charset ) ) )
+                                              .getReason();
+                }
+
+                return new DocumentResult( id, null, CONFLICT, reason );
+            }
+
+            if ( code != HttpStatus.SC_OK && code != HttpStatus.SC_CREATED && code != HttpStatus.SC_ACCEPTED )
+            {
+                final String content = in == null ? null : IOUtils.toString( in, charset );
+                error =
+                    new CouchDBException( "Error returned from server: '%s'\nContent:\n----------\n\n%s", sl, content );
+
+                return null;
+            }
+
+            if ( in == null )
+            {
+                return new DocumentResult( id, DocumentGetHandler.getRevision( response ), null, null );
+            }
+
+            final DocumentResult result =
+                BulkResultHandler.readResult( new JsonReader( new InputStreamReader( in, charset ) ) );
+
+            return result.getId() == null ? new DocumentResult( id, result.getRev(), null, null ) : result;
+        }
+        finally
+        {
+            IOUtils.closeQuietly( in );
+        }
+    }
+
+}
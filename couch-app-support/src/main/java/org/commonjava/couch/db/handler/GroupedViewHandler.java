@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.couch.db.CouchDBException;
+import org.commonjava.couch.io.Serializer;
+import org.commonjava.couch.model.CouchDocument;
+import org.commonjava.couch.model.CouchError;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+public class GroupedViewHandler<K, T>
+    implements ResponseHandlerWithError<Map<K, List<T>>>
+{
+
+    private static final String DEFAULT_CHARSET = "UTF-8";
+
+    private static final String ROWS = "rows";
+
+    private static final String KEY = "key";
+
+    private static final String DOC_ELEMENT = "doc";
+
+    private final Serializer serializer;
+
+    private final Class<K> keyType;
+
+    private final Class<T> itemType;
+
+    private final Map<K, List<T>> groups;
+
+    private CouchDBException error;
+
+    public GroupedViewHandler( final Serializer serializer, final Class<K> keyType, final Class<T> itemType,
+                               final Map<K, List<T>> groups )
+    {
+        this.serializer = serializer;
+        this.keyType = keyType;
+        this.itemType = itemType;
+        this.groups = groups;
+    }
+
+    @Override
+    public CouchDBException getError()
+    {
+        return error;
+    }
+
+    @Override
+    public Map<K, List<T>> handleResponse( final HttpResponse response )
+        throws ClientProtocolException, IOException
+    {
+        final HttpEntity entity = response.getEntity();
+        final StatusLine sl = response.getStatusLine();
+        if ( entity == null )
+        {
+            error = new CouchDBException( "No content returned from server: '%s'", sl );
+            return null;
+        }
+
+        String charset = EntityUtils.getContentCharSet( entity );
+        if ( charset == null )
+        {
+            charset = DEFAULT_CHARSET;
+        }
+
+        final InputStream in = entity.getContent();
+        try
+        {
+            if ( sl.getStatusCode() != HttpStatus.SC_OK )
+            {
+                final CouchError err = serializer.toError( in, charset );
+                error =
+                    new CouchDBException( "Error returned from server: '%s'\nError message: %s", sl,
+                                          err == null ? "-NONE-" : err );
+
+                return null;
+            }
+
+            read( new JsonReader( new InputStreamReader( in, charset ) ) );
+            return groups;
+        }
+        catch ( final JsonParseException e )
+        {
+            error = new CouchDBException( "Failed to parse view rows: %s", e, e.getMessage() );
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return null;
+    }
+
+    private void read( final JsonReader reader )
+        throws IOException
+    {
+        final boolean useDocElement = CouchDocument.class.isAssignableFrom( itemType );
+        final JsonParser parser = new JsonParser();
+
+        reader.beginObject();
+        while ( reader.hasNext() )
+        {
+            if ( !ROWS.equals( reader.nextName() ) || reader.peek() != JsonToken.BEGIN_ARRAY )
+            {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginArray();
+            while ( reader.hasNext() )
+            {
+                final JsonObject row = parser.parse( reader )
+                                             .getAsJsonObject();
+
+                final JsonElement keyElement = row.get( KEY );
+                final K key =
+                    keyElement == null || keyElement.isJsonNull() ? null
+                                    : keyType.cast( serializer.fromJson( keyElement, keyType ) );
+
+                List<T> items = groups.get( key );
+                if ( items == null )
+                {
+                    items = new ArrayList<T>();
+                    groups.put( key, items );
+                }
+
+                // rows whose linked document is gone still mark the key as seen, just with no item.
+                final JsonElement src = useDocElement ? row.get( DOC_ELEMENT ) : row;
+                if ( src != null && !src.isJsonNull() )
+                {
+                    final Object item = serializer.fromJson( src, itemType );
+                    if ( item != null )
+                    {
+                        items.add( itemType.cast( item ) );
+                    }
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+}
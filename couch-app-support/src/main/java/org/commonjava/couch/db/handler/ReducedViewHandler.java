@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Map;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.couch.db.CouchDBException;
+import org.commonjava.couch.io.Serializer;
+import org.commonjava.couch.model.CouchError;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+public class ReducedViewHandler<K, V>
+    implements ResponseHandlerWithError<Map<K, V>>
+{
+
+    private static final String DEFAULT_CHARSET = "UTF-8";
+
+    private static final String ROWS = "rows";
+
+    private static final String KEY = "key";
+
+    private static final String VALUE = "value";
+
+    private final Serializer serializer;
+
+    private final Class<K> keyType;
+
+    private final Class<V> valueType;
+
+    private final Map<K, V> values;
+
+    private CouchDBException error;
+
+    public ReducedViewHandler( final Serializer serializer, final Class<K> keyType, final Class<V> valueType,
+                               final Map<K, V> values )
+    {
+        this.serializer = serializer;
+        this.keyType = keyType;
+        this.valueType = valueType;
+        this.values = values;
+    }
+
+    @Override
+    public CouchDBException getError()
+    {
+        return error;
+    }
+
+    @Override
+    public Map<K, V> handleResponse( final HttpResponse response )
+        throws ClientProtocolException, IOException
+    {
+        final HttpEntity entity = response.getEntity();
+        final StatusLine sl = response.getStatusLine();
+        if ( entity == null )
+        {
+            error = new CouchDBException( "No content returned from server: '%s'", sl );
+            return null;
+        }
+
+        String charset = EntityUtils.getContentCharSet( entity );
+        if ( charset == null )
+        {
+            charset = DEFAULT_CHARSET;
+        }
+
+        final InputStream in = entity.getContent();
+        try
+        {
+            if ( sl.getStatusCode() != HttpStatus.SC_OK )
+            {
+                final CouchError err = serializer.toError( in, charset );
+                error =
+                    new CouchDBException( "Error returned from server: '%s'\nError message: %s", sl,
+                                          err == null ? "-NONE-" : err );
+
+                return null;
+            }
+
+            read( new JsonReader( new InputStreamReader( in, charset ) ) );
+            return values;
+        }
+        catch ( final JsonParseException e )
+        {
+            error = new CouchDBException( "Failed to parse reduced view rows: %s", e, e.getMessage() );
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return null;
+    }
+
+    private void read( final JsonReader reader )
+        throws IOException
+    {
+        final JsonParser parser = new JsonParser();
+
+        reader.beginObject();
+        while ( reader.hasNext() )
+        {
+            if ( !ROWS.equals( reader.nextName() ) || reader.peek() != JsonToken.BEGIN_ARRAY )
+            {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginArray();
+            while ( reader.hasNext() )
+            {
+                final JsonObject row = parser.parse( reader )
+                                             .getAsJsonObject();
+
+                // an ungrouped reduce comes back as a single row with a null key.
+                values.put( convert( row.get( KEY ), keyType ), convert( row.get( VALUE ), valueType ) );
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    private <T> T convert( final JsonElement element, final Class<T> type )
+    {
+        if ( element == null || element.isJsonNull() )
+        {
+            return null;
+        }
+
+        return type.cast( serializer.fromJson( element, type ) );
+    }
+
+}
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.couch.db.CouchDBException;
+import org.commonjava.couch.io.Serializer;
+import org.commonjava.couch.model.CouchError;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+public class RevisionMapHandler
+    implements ResponseHandlerWithError<Map<String, String>>
+{
+
+    private static final String DEFAULT_CHARSET = "UTF-8";
+
+    private static final String ROWS = "rows";
+
+    private static final String ID = "id";
+
+    private static final String VALUE = "value";
+
+    private static final String REV = "rev";
+
+    private static final String DELETED = "deleted";
+
+    private final Serializer serializer;
+
+    private final Map<String, String> revisions;
+
+    private CouchDBException error;
+
+    public RevisionMapHandler( final Serializer serializer )
+    {
+        this( serializer, new HashMap<String, String>() );
+    }
+
+    public RevisionMapHandler( final Serializer serializer, final Map<String, String> revisions )
+    {
+        this.serializer = serializer;
+        this.revisions = revisions;
+    }
+
+    @Override
+    public CouchDBException getError()
+    {
+        return error;
+    }
+
+    @Override
+    public Map<String, String> handleResponse( final HttpResponse response )
+        throws ClientProtocolException, IOException
+    {
+        final HttpEntity entity = response.getEntity();
+        final StatusLine sl = response.getStatusLine();
+        if ( entity == null )
+        {
+            error = new CouchDBException( "No content returned from server: '%s'", sl );
+            return null;
+        }
+
+        String charset = EntityUtils.getContentCharSet( entity );
+        if ( charset == null )
+        {
+            charset = DEFAULT_CHARSET;
+        }
+
+        final InputStream in = entity.getContent();
+        try
+        {
+            if ( sl.getStatusCode() != HttpStatus.SC_OK )
+            {
+                final CouchError err = serializer.toError( in, charset );
+                error =
+                    new CouchDBException( "Error returned from server: '%s'\nError message: %s", sl,
+                                          err == null ? "-NONE-" : err );
+
+                return null;
+            }
+
+            read( new JsonReader( new InputStreamReader( in, charset ) ) );
+            return revisions;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private void read( final JsonReader reader )
+        throws IOException
+    {
+        reader.beginObject();
+        while ( reader.hasNext() )
+        {
+            if ( !ROWS.equals( reader.nextName() ) || reader.peek() != JsonToken.BEGIN_ARRAY )
+            {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginArray();
+            while ( reader.hasNext() )
+            {
+                readRow( reader );
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    private void readRow( final JsonReader reader )
+        throws IOException
+    {
+        String id = null;
+        String rev = null;
+        boolean deleted = false;
+
+        reader.beginObject();
+        while ( reader.hasNext() )
+        {
+            final String name = reader.nextName();
+            if ( ID.equals( name ) && reader.peek() == JsonToken.STRING )
+            {
+                id = reader.nextString();
+            }
+            else if ( VALUE.equals( name ) && reader.peek() == JsonToken.BEGIN_OBJECT )
+            {
+                reader.beginObject();
+                while ( reader.hasNext() )
+                {
+                    final String field = reader.nextName();
+                    if ( REV.equals( field ) && reader.peek() == JsonToken.STRING )
+                    {
+                        rev = reader.nextString();
+                    }
+                    else if ( DELETED.equals( field ) && reader.peek() == JsonToken.BOOLEAN )
+                    {
+                        deleted = reader.nextBoolean();
+                    }
+                    else
+                    {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+            else
+            {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if ( id != null && rev != null && !deleted )
+        {
+            revisions.put( id, rev );
+        }
+    }
+
+}
@@ -15,19 +15,20 @@
  ******************************************************************************/
 package org.commonjava.couch.db.handler;
 
-import static org.apache.commons.io.IOUtils.copy;
-
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Type;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.util.EntityUtils;
 import org.apache.log4j.Logger;
 import org.commonjava.couch.db.CouchDBException;
 import org.commonjava.couch.io.Serializer;
@@ -40,6 +41,10 @@ public class SerializedGetHandler<T>
 
     private static final Logger LOGGER = Logger.getLogger( SerializedGetHandler.class );
 
+    private static final String DEFAULT_CHARSET = "UTF-8";
+
+    private static final int DEFAULT_DEBUG_CAPTURE_LIMIT = 8192;
+
     private CouchDBException error;
 
     private final Serializer serializer;
@@ -48,6 +53,8 @@ public class SerializedGetHandler<T>
 
     private final WebSerializationAdapter[] adapters;
 
+    private int debugCaptureLimit = DEFAULT_DEBUG_CAPTURE_LIMIT;
+
     public SerializedGetHandler( final Serializer serializer, final Class<T> type )
     {
         this.serializer = serializer;
@@ -63,6 +70,16 @@ public class SerializedGetHandler<T>
         this.adapters = adapters;
     }
 
+    public int getDebugCaptureLimit()
+    {
+        return debugCaptureLimit;
+    }
+
+    public void setDebugCaptureLimit( final int debugCaptureLimit )
+    {
+        this.debugCaptureLimit = debugCaptureLimit;
+    }
+
     @Override
     public CouchDBException getError()
     {
@@ -73,50 +90,127 @@ public class SerializedGetHandler<T>
     public T handleResponse( final HttpResponse response )
         throws ClientProtocolException, IOException
     {
-        // FIXME: Parse content-encoding??
         final HttpEntity entity = response.getEntity();
+        final StatusLine sl = response.getStatusLine();
+
+        String charset = entity == null ? null : EntityUtils.getContentCharSet( entity );
+        if ( charset == null )
+        {
+            charset = DEFAULT_CHARSET;
+        }
 
-        ByteArrayOutputStream out = null;
         InputStream in = null;
         try
         {
             if ( entity != null )
             {
                 in = entity.getContent();
-                out = new ByteArrayOutputStream();
-                copy( in, out );
-
-                if ( LOGGER.isDebugEnabled() )
-                {
-                    LOGGER.debug( new String( out.toByteArray() ) );
-                }
             }
 
-            final StatusLine sl = response.getStatusLine();
             if ( sl.getStatusCode() != HttpStatus.SC_OK )
             {
                 CouchError err = null;
-                if ( out != null )
+                if ( in != null )
                 {
-                    LOGGER.info( "Body content: '" + new String( out.toByteArray() ) + "'" );
-                    err = serializer.toError( new ByteArrayInputStream( out.toByteArray() ), "UTF-8" );
+                    // error bodies are small, and we want them in the log as well as parsed.
+                    final byte[] body = IOUtils.toByteArray( in );
+                    LOGGER.info( "Body content: '" + new String( body, charset ) + "'" );
+                    err = serializer.toError( new ByteArrayInputStream( body ), charset );
                 }
 
                 error =
                     new CouchDBException( "Error returned from server: '%s'\nError message: %s", sl,
                                           err == null ? "-NONE-" : err );
             }
-            else
+            else if ( in != null )
             {
-                return serializer.fromJson( new ByteArrayInputStream( out.toByteArray() ), "UTF-8", type, adapters );
+                if ( LOGGER.isDebugEnabled() && debugCaptureLimit > 0 )
+                {
+                    final CaptureInputStream capture = new CaptureInputStream( in, debugCaptureLimit );
+                    in = capture;
+                    try
+                    {
+                        return serializer.fromJson( in, charset, type, adapters );
+                    }
+                    finally
+                    {
+                        LOGGER.debug( capture.getCaptured( charset ) );
+                    }
+                }
+
+                return serializer.fromJson( in, charset, type, adapters );
             }
         }
         finally
         {
-            in.close();
+            IOUtils.closeQuietly( in );
         }
 
         return null;
     }
 
+    private static final class CaptureInputStream
+        extends FilterInputStream
+    {
+        private final ByteArrayOutputStream captured;
+
+        private final int limit;
+
+        private boolean truncated;
+
+        CaptureInputStream( final InputStream in, final int limit )
+        {
+            super( in );
+            this.limit = limit;
+            this.captured = new ByteArrayOutputStream( Math.min( limit, 1024 ) );
+        }
+
+        @Override
+        public int read()
+            throws IOException
+        {
+            final int b = super.read();
+            if ( b > -1 )
+            {
+                capture( new byte[] { (byte) b }, 0, 1 );
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read( final byte[] b, final int off, final int len )
+            throws IOException
+        {
+            final int read = super.read( b, off, len );
+            if ( read > 0 )
+            {
+                capture( b, off, read );
+            }
+
+            return read;
+        }
+
+        private void capture( final byte[] b, final int off, final int len )
+        {
+            final int remaining = limit - captured.size();
+            if ( remaining < len )
+            {
+                truncated = true;
+            }
+
+            if ( remaining > 0 )
+            {
+                captured.write( b, off, Math.min( remaining, len ) );
+            }
+        }
+
+        String getCaptured( final String charset )
+            throws IOException
+        {
+            final String content = new String( captured.toByteArray(), charset );
+            return truncated ? content + "...[truncated at " + limit + " bytes]" : content;
+        }
+    }
+
 }
@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.couch.db.CouchDBException;
+import org.commonjava.couch.db.model.CouchObjectList;
+import org.commonjava.couch.io.Serializer;
+import org.commonjava.couch.io.json.CouchObjectListReader;
+
+public class ViewResultHandler<T>
+    implements ResponseHandlerWithError<CouchObjectList<T>>
+{
+
+    private static final String ETAG = "ETag";
+
+    private static final String DEFAULT_CHARSET = "UTF-8";
+
+    private final CouchObjectListHandler<T> delegate;
+
+    private final long captureLimit;
+
+    private String charset;
+
+    private boolean notModified;
+
+    private String etag;
+
+    private CountingInputStream counter;
+
+    public ViewResultHandler( final Serializer serializer, final CouchObjectListReader<T> reader )
+    {
+        this( serializer, reader, -1 );
+    }
+
+    // keeps a copy of bodies up to captureLimit bytes while they stream through the parser; larger ones aren't kept.
+    public ViewResultHandler( final Serializer serializer, final CouchObjectListReader<T> reader,
+                              final long captureLimit )
+    {
+        this.delegate = new CouchObjectListHandler<T>( serializer, reader );
+        this.captureLimit = captureLimit;
+    }
+
+    @Override
+    public CouchDBException getError()
+    {
+        return delegate.getError();
+    }
+
+    public boolean isNotModified()
+    {
+        return notModified;
+    }
+
+    public String getEtag()
+    {
+        return etag;
+    }
+
+    public long getBytesRead()
+    {
+        return counter == null ? 0 : counter.getByteCount();
+    }
+
+    public byte[] getBody()
+    {
+        return counter instanceof CapturingInputStream ? ( (CapturingInputStream) counter ).getCaptured() : null;
+    }
+
+    public String getCharset()
+    {
+        return charset;
+    }
+
+    @Override
+    public CouchObjectList<T> handleResponse( final HttpResponse response )
+        throws ClientProtocolException, IOException
+    {
+        if ( response.getStatusLine()
+                     .getStatusCode() == HttpStatus.SC_NOT_MODIFIED )
+        {
+            EntityUtils.consume( response.getEntity() );
+            notModified = true;
+            return null;
+        }
+
+        final Header header = response.getFirstHeader( ETAG );
+        etag = header == null ? null : header.getValue();
+
+        final HttpEntity entity = response.getEntity();
+        if ( entity != null )
+        {
+            charset = EntityUtils.getContentCharSet( entity );
+            if ( charset == null )
+            {
+                charset = DEFAULT_CHARSET;
+            }
+
+            response.setEntity( new HttpEntityWrapper( entity )
+            {
+                @Override
+                public InputStream getContent()
+                    throws IOException
+                {
+                    // the client calls this again to release the connection; keep the first count.
+                    if ( counter == null )
+                    {
+                        counter =
+                            captureLimit > 0 ? new CapturingInputStream( wrappedEntity.getContent(), captureLimit )
+                                            : new CountingInputStream( wrappedEntity.getContent() );
+                    }
+
+                    return counter;
+                }
+            } );
+        }
+
+        return delegate.handleResponse( response );
+    }
+
+    private static final class CapturingInputStream
+        extends CountingInputStream
+    {
+        private final long limit;
+
+        private ByteArrayOutputStream captured = new ByteArrayOutputStream();
+
+        CapturingInputStream( final InputStream in, final long limit )
+        {
+            super( in );
+            this.limit = limit;
+        }
+
+        byte[] getCaptured()
+        {
+            return captured == null ? null : captured.toByteArray();
+        }
+
+        @Override
+        public int read()
+            throws IOException
+        {
+            final int b = super.read();
+            if ( b > -1 && capture( 1 ) )
+            {
+                captured.write( b );
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read( final byte[] buf )
+            throws IOException
+        {
+            return read( buf, 0, buf.length );
+        }
+
+        @Override
+        public int read( final byte[] buf, final int off, final int len )
+            throws IOException
+        {
+            final int n = super.read( buf, off, len );
+            if ( n > 0 && capture( n ) )
+            {
+                captured.write( buf, off, n );
+            }
+
+            return n;
+        }
+
+        // once the body outgrows the limit the copy is dropped, and the rest is only streamed to the parser.
+        private boolean capture( final int n )
+        {
+            if ( captured != null && captured.size() + n > limit )
+            {
+                captured = null;
+            }
+
+            return captured != null;
+        }
+    }
+
+}
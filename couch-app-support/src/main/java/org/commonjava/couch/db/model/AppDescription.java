@@ -26,4 +26,6 @@ public interface AppDescription
 
     Set<String> getViewNames();
 
+    Set<String> getFilterNames();
+
 }
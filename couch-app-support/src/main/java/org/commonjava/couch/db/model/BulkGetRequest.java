@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BulkGetRequest
+{
+
+    private final List<DocId> docs;
+
+    public BulkGetRequest( final String... ids )
+    {
+        this.docs = new ArrayList<DocId>( ids.length );
+        for ( final String id : ids )
+        {
+            docs.add( new DocId( id ) );
+        }
+    }
+
+    public int size()
+    {
+        return docs.size();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "BulkGetRequest [docs=%s]", docs.size() );
+    }
+
+    private static final class DocId
+    {
+        @SuppressWarnings( "unused" )
+        private final String id;
+
+        DocId( final String id )
+        {
+            this.id = id;
+        }
+    }
+
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.commonjava.couch.model.CouchDocument;
+
+public class BulkResult
+    implements Iterable<BulkResult.DocumentResult>
+{
+
+    public enum FailurePolicy
+    {
+        IGNORE, THROW;
+    }
+
+    private static final String CONFLICT = "conflict";
+
+    private final List<DocumentResult> results;
+
+    public BulkResult()
+    {
+        this.results = new ArrayList<DocumentResult>();
+    }
+
+    public BulkResult( final List<DocumentResult> results )
+    {
+        this.results = results == null ? new ArrayList<DocumentResult>() : results;
+    }
+
+    public List<DocumentResult> getResults()
+    {
+        return Collections.unmodifiableList( results );
+    }
+
+    public void addAll( final BulkResult other )
+    {
+        results.addAll( other.results );
+    }
+
+    public int size()
+    {
+        return results.size();
+    }
+
+    public boolean hasFailures()
+    {
+        for ( final DocumentResult result : results )
+        {
+            if ( !result.isSuccess() )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public List<DocumentResult> getFailures()
+    {
+        final List<DocumentResult> failures = new ArrayList<DocumentResult>();
+        for ( final DocumentResult result : results )
+        {
+            if ( !result.isSuccess() )
+            {
+                failures.add( result );
+            }
+        }
+
+        return failures;
+    }
+
+    public List<DocumentResult> getConflicts()
+    {
+        final List<DocumentResult> conflicts = new ArrayList<DocumentResult>();
+        for ( final DocumentResult result : results )
+        {
+            if ( result.isConflict() )
+            {
+                conflicts.add( result );
+            }
+        }
+
+        return conflicts;
+    }
+
+    @Override
+    public Iterator<DocumentResult> iterator()
+    {
+        return getResults().iterator();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "BulkResult [total=%s, failures=%s]", results.size(), getFailures().size() );
+    }
+
+    public static final class DocumentResult
+    {
+        private final String id;
+
+        private final String rev;
+
+        private final String error;
+
+        private final String reason;
+
+        private CouchDocument document;
+
+        public DocumentResult( final String id, final String rev, final String error, final String reason )
+        {
+            this.id = id;
+            this.rev = rev;
+            this.error = error;
+            this.reason = reason;
+        }
+
+        public String getId()
+        {
+            return id;
+        }
+
+        public String getRev()
+        {
+            return rev;
+        }
+
+        public String getError()
+        {
+            return error;
+        }
+
+        public String getReason()
+        {
+            return reason;
+        }
+
+        public CouchDocument getDocument()
+        {
+            return document;
+        }
+
+        public void setDocument( final CouchDocument document )
+        {
+            this.document = document;
+        }
+
+        public boolean isSuccess()
+        {
+            return error == null && rev != null;
+        }
+
+        public boolean isConflict()
+        {
+            return CONFLICT.equals( error );
+        }
+
+        @Override
+        public String toString()
+        {
+            return isSuccess() ? String.format( "%s [rev=%s]", id, rev )
+                            : String.format( "%s [error=%s, reason=%s]", id, error, reason );
+        }
+    }
+
+}
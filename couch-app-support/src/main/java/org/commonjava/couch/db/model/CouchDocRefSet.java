@@ -52,6 +52,16 @@ public class CouchDocRefSet
         }
     }
 
+    private CouchDocRefSet( final String[] keys )
+    {
+        this.keys = keys;
+    }
+
+    public static CouchDocRefSet forIds( final Collection<String> ids )
+    {
+        return new CouchDocRefSet( ids.toArray( new String[ids.size()] ) );
+    }
+
     public String[] getKeys()
     {
         return keys;
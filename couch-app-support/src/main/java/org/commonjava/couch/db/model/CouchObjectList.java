@@ -36,6 +36,17 @@ public class CouchObjectList<T>
         setItems( items );
     }
 
+    public static <T> CouchObjectList<T> wrap( final ArrayList<T> items )
+    {
+        final CouchObjectList<T> list = new CouchObjectList<T>();
+        if ( items != null )
+        {
+            list.items = items;
+        }
+
+        return list;
+    }
+
     public List<T> getItems()
     {
         return items;
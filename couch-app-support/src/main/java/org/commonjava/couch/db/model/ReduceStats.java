@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.model;
+
+import com.google.gson.annotations.SerializedName;
+
+// the value produced by the _stats built-in reducer.
+public class ReduceStats
+{
+
+    private double sum;
+
+    private long count;
+
+    private double min;
+
+    private double max;
+
+    @SerializedName( "sumsqr" )
+    private double sumOfSquares;
+
+    ReduceStats()
+    {
+    }
+
+    public ReduceStats( final double sum, final long count, final double min, final double max,
+                        final double sumOfSquares )
+    {
+        this.sum = sum;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.sumOfSquares = sumOfSquares;
+    }
+
+    public double getSum()
+    {
+        return sum;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public double getMin()
+    {
+        return min;
+    }
+
+    public double getMax()
+    {
+        return max;
+    }
+
+    public double getSumOfSquares()
+    {
+        return sumOfSquares;
+    }
+
+    public double getMean()
+    {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "ReduceStats [sum=%s, count=%s, min=%s, max=%s, sumsqr=%s]", sum, count, min, max,
+                              sumOfSquares );
+    }
+
+}
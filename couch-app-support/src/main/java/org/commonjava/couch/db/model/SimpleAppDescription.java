@@ -30,6 +30,8 @@ public class SimpleAppDescription
 
     private final Set<String> viewNames = new HashSet<String>();
 
+    private final Set<String> filterNames = new HashSet<String>();
+
     public SimpleAppDescription( final String appName )
     {
         this( appName, appName );
@@ -72,4 +74,21 @@ public class SimpleAppDescription
         return viewNames;
     }
 
+    public void setFilterNames( final Collection<String> filterNames )
+    {
+        this.filterNames.clear();
+        this.filterNames.addAll( filterNames );
+    }
+
+    public boolean addFilterName( final String filterName )
+    {
+        return filterNames.add( filterName );
+    }
+
+    @Override
+    public Set<String> getFilterNames()
+    {
+        return filterNames;
+    }
+
 }
@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ViewKeys
+{
+
+    private final List<Object> keys;
+
+    public ViewKeys( final List<?> keys )
+    {
+        this.keys = new ArrayList<Object>( keys );
+    }
+
+    public List<Object> getKeys()
+    {
+        return keys;
+    }
+
+    public int size()
+    {
+        return keys.size();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "ViewKeys [keys=%s]", keys );
+    }
+
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.model;
+
+import java.util.List;
+
+public class ViewPage<T>
+{
+
+    private final List<T> items;
+
+    private final String nextKey;
+
+    private final String nextDocId;
+
+    public ViewPage( final List<T> items, final String nextKey, final String nextDocId )
+    {
+        this.items = items;
+        this.nextKey = nextKey;
+        this.nextDocId = nextDocId;
+    }
+
+    public List<T> getItems()
+    {
+        return items;
+    }
+
+    // JSON form of the first row past this page, or null when this is the last page.
+    public String getNextKey()
+    {
+        return nextKey;
+    }
+
+    public String getNextDocId()
+    {
+        return nextDocId;
+    }
+
+    public boolean hasNext()
+    {
+        return nextKey != null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "ViewPage [items=%s, nextKey=%s, nextDocId=%s]", items.size(), nextKey, nextDocId );
+    }
+
+}
@@ -17,10 +17,13 @@ package org.commonjava.couch.db.model;
 
 import static org.commonjava.couch.util.UrlUtils.stringQueryParameter;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -31,20 +34,34 @@ public class ViewRequest
 
     public static final String KEY = "key";
 
+    public static final String KEYS = "keys";
+
     public static final String START_KEY = "startkey";
 
+    public static final String START_KEY_DOCID = "startkey_docid";
+
     public static final String END_KEY = "endkey";
 
     public static final String INCLUDE_DOCS = "include_docs";
 
     public static final String LIMIT = "limit";
 
+    public static final String SKIP = "skip";
+
+    public static final String REDUCE = "reduce";
+
+    public static final String GROUP = "group";
+
+    public static final String GROUP_LEVEL = "group_level";
+
     private final String application;
 
     private final String view;
 
     private Set<String> views;
 
+    private List<Object> keys;
+
     // NOTE: LinkedHashMap is critical, since CouchDB has order-sensitive request parameters.
     private final Map<String, String> requestParameters = new LinkedHashMap<String, String>();
 
@@ -56,9 +73,45 @@ public class ViewRequest
 
     public void setKey( final Object key )
     {
+        keys = null;
         setParameter( KEY, key );
     }
 
+    // multiple keys are POSTed in the request body instead of the query string, which caps out quickly.
+    public void setKeys( final Collection<?> keys )
+    {
+        requestParameters.remove( KEY );
+        this.keys = keys == null ? null : new ArrayList<Object>( keys );
+    }
+
+    public void setKeys( final Object... keys )
+    {
+        setKeys( Arrays.asList( keys ) );
+    }
+
+    public List<Object> getKeys()
+    {
+        return keys;
+    }
+
+    public void setReduce( final boolean reduce )
+    {
+        setParameter( REDUCE, reduce );
+    }
+
+    public void setGroup( final boolean group )
+    {
+        requestParameters.remove( GROUP_LEVEL );
+        setParameter( GROUP, group );
+    }
+
+    // groups array keys by their first groupLevel elements.
+    public void setGroupLevel( final int groupLevel )
+    {
+        requestParameters.remove( GROUP );
+        setParameter( GROUP_LEVEL, groupLevel );
+    }
+
     public void setFullRangeForBaseKey( final Object baseKey )
     {
         setParameterArray( START_KEY, baseKey );
@@ -131,8 +184,8 @@ public class ViewRequest
     @Override
     public String toString()
     {
-        return String.format( "ViewRequest [application=%s, view=%s, parameters=%s]", application, view,
-                              requestParameters );
+        return String.format( "ViewRequest [application=%s, view=%s, parameters=%s, keys=%s]", application, view,
+                              requestParameters, keys == null ? 0 : keys.size() );
     }
 
     public Map<String, String> getRequestParameters()
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ConnectionStats
+{
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong reused = new AtomicLong();
+
+    private final AtomicLong aborted = new AtomicLong();
+
+    void recordRequest( final boolean reusedConnection )
+    {
+        requests.incrementAndGet();
+        if ( reusedConnection )
+        {
+            reused.incrementAndGet();
+        }
+    }
+
+    void recordAbort()
+    {
+        aborted.incrementAndGet();
+    }
+
+    public long getRequestCount()
+    {
+        return requests.get();
+    }
+
+    public long getReusedCount()
+    {
+        return reused.get();
+    }
+
+    public long getOpenedCount()
+    {
+        return requests.get() - reused.get();
+    }
+
+    public long getAbortedCount()
+    {
+        return aborted.get();
+    }
+
+    public double getReuseRatio()
+    {
+        final long total = requests.get();
+        return total < 1 ? 0 : (double) reused.get() / total;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "ConnectionStats [requests=%s, reused=%s, aborted=%s, reuseRatio=%.3f]", getRequestCount(),
+                              getReusedCount(), getAbortedCount(), getReuseRatio() );
+    }
+
+}
@@ -16,17 +16,18 @@
 package org.commonjava.couch.io;
 
 import static org.apache.commons.io.IOUtils.closeQuietly;
-import static org.apache.commons.io.IOUtils.copy;
 import static org.apache.commons.io.IOUtils.readLines;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.List;
 import java.util.Set;
 
 import javax.inject.Singleton;
 
+import org.apache.commons.io.IOUtils;
 import org.commonjava.couch.db.CouchDBException;
 import org.commonjava.couch.db.model.AppDescription;
 import org.commonjava.couch.model.CouchApp;
@@ -39,6 +40,10 @@ public class CouchAppReader
 
     private static final String VIEW_SUBPATH = "/views/";
 
+    private static final String FILTER_SUBPATH = "/filters/";
+
+    private static final String JS = ".js";
+
     private static final String MAP_JS = "/map.js";
 
     private static final String REDUCE_JS = "/reduce.js";
@@ -63,8 +68,6 @@ public class CouchAppReader
                 String mapPath = viewBase + view + MAP_JS;
                 String reducePath = viewBase + view + REDUCE_JS;
 
-                String map = null;
-
                 InputStream in = cloader.getResourceAsStream( mapPath );
                 if ( in == null )
                 {
@@ -73,50 +76,94 @@ public class CouchAppReader
                                                 view, appName, mapPath );
                 }
 
-                StringWriter sWriter = new StringWriter();
+                final String map;
                 try
                 {
-                    List<String> lines = readLines( in );
-                    for ( String line : lines )
-                    {
-                        String test = line.trim();
-                        if ( test.startsWith( "#" ) || test.startsWith( "/*" )
-                            || test.startsWith( "*" ) || test.startsWith( "//" ) )
-                        {
-                            continue;
-                        }
-                        sWriter.write( line );
-                        sWriter.write( '\n' );
-                    }
+                    map = stripComments( readLines( in ) );
                 }
                 finally
                 {
                     closeQuietly( in );
                 }
-                map = sWriter.toString();
 
                 String reduce = null;
 
                 in = cloader.getResourceAsStream( reducePath );
-                sWriter = new StringWriter();
                 if ( in != null )
                 {
                     try
                     {
-                        copy( in, sWriter );
+                        reduce = IOUtils.toString( in );
                     }
                     finally
                     {
                         closeQuietly( in );
                     }
-                    reduce = sWriter.toString();
+
+                    // a reduce.js holding only a name like _count selects one of CouchDB's native reducers.
+                    final String builtin = stripComments( readLines( new StringReader( reduce ) ) ).trim();
+                    if ( builtin.startsWith( "_" ) )
+                    {
+                        if ( !CouchAppView.BUILTIN_REDUCERS.contains( builtin ) )
+                        {
+                            throw new CouchDBException( "Unknown built-in reducer: %s for view: %s in CouchDB "
+                                + "application: %s (classpath resource: %s)", builtin, view, appName, reducePath );
+                        }
+
+                        reduce = builtin;
+                    }
                 }
 
                 app.addView( view, new CouchAppView( map, reduce ) );
             }
         }
 
+        // filter functions let change listeners narrow the _changes feed on the server.
+        Set<String> filters = description.getFilterNames();
+        if ( filters != null )
+        {
+            for ( String filter : filters )
+            {
+                String filterPath = appBase + FILTER_SUBPATH + filter + JS;
+
+                InputStream in = cloader.getResourceAsStream( filterPath );
+                if ( in == null )
+                {
+                    throw new CouchDBException(
+                                                "Cannot read filter: %s in CouchDB application: %s (classpath resource: %s)",
+                                                filter, appName, filterPath );
+                }
+
+                try
+                {
+                    app.addFilter( filter, stripComments( readLines( in ) ) );
+                }
+                finally
+                {
+                    closeQuietly( in );
+                }
+            }
+        }
+
         return app;
     }
 
+    private String stripComments( final List<String> lines )
+    {
+        final StringWriter sWriter = new StringWriter();
+        for ( String line : lines )
+        {
+            String test = line.trim();
+            if ( test.startsWith( "#" ) || test.startsWith( "/*" ) || test.startsWith( "*" )
+                || test.startsWith( "//" ) )
+            {
+                continue;
+            }
+            sWriter.write( line );
+            sWriter.write( '\n' );
+        }
+
+        return sWriter.toString();
+    }
+
 }
@@ -18,33 +18,74 @@ package org.commonjava.couch.io;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Type;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.inject.Alternative;
 import javax.inject.Named;
 
+import org.apache.http.HttpConnection;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
 import org.apache.http.StatusLine;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 import org.commonjava.couch.conf.CouchDBConfiguration;
 import org.commonjava.couch.db.CouchDBException;
 import org.commonjava.couch.db.handler.ResponseHandlerWithError;
 import org.commonjava.couch.db.handler.SerializedGetHandler;
 import org.commonjava.couch.model.CouchError;
+import org.commonjava.util.logging.Logger;
 import org.commonjava.web.json.ser.WebSerializationAdapter;
 
 @Named( "dont-use-directly" )
 @Alternative
 public class CouchHttpClient
 {
+
+    public enum ReleaseMode
+    {
+        CONSUME, ABORT;
+
+        public static ReleaseMode forName( final String name )
+        {
+            for ( final ReleaseMode mode : values() )
+            {
+                if ( mode.name()
+                         .equalsIgnoreCase( name ) )
+                {
+                    return mode;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30000;
+
+    private final Map<HttpRequestBase, HttpResponse> openResponses =
+        new ConcurrentHashMap<HttpRequestBase, HttpResponse>();
+
+    private final ConnectionStats stats = new ConnectionStats();
+
+    private final Logger logger = new Logger( getClass() );
+
+    // fixed per configuration: the client is shared through CouchHttpClientRegistry, so it can't change per caller.
+    private final ReleaseMode releaseMode;
+
     private HttpClient client;
 
     private final CouchDBConfiguration config;
@@ -55,16 +96,32 @@ public class CouchHttpClient
     {
         this.config = config;
         this.serializer = serializer;
+
+        final ReleaseMode mode = ReleaseMode.forName( config.getConnectionReleaseMode() );
+        if ( mode == null )
+        {
+            logger.warn( "Unknown connection release mode: '%s'. Using: %s", config.getConnectionReleaseMode(),
+                         ReleaseMode.CONSUME );
+        }
+
+        this.releaseMode = mode == null ? ReleaseMode.CONSUME : mode;
         setupClient();
     }
 
     @PostConstruct
     private void setupClient()
     {
+        if ( client != null )
+        {
+            return;
+        }
+
         final ThreadSafeClientConnManager ccm = new ThreadSafeClientConnManager();
         ccm.setMaxTotal( config.getMaxConnections() );
+        ccm.setDefaultMaxPerRoute( config.getMaxConnectionsPerRoute() );
 
         final DefaultHttpClient c = new DefaultHttpClient( ccm );
+        c.addResponseInterceptor( new ConnectionReuseInterceptor() );
 
         if ( config.getDatabaseUser() != null )
         {
@@ -77,6 +134,53 @@ public class CouchHttpClient
         }
 
         client = c;
+        IdleConnectionReaper.register( ccm, DEFAULT_IDLE_TIMEOUT_MILLIS );
+    }
+
+    public ReleaseMode getReleaseMode()
+    {
+        return releaseMode;
+    }
+
+    public ConnectionStats getConnectionStats()
+    {
+        return stats;
+    }
+
+    public int getPooledConnectionCount()
+    {
+        final ClientConnectionManager ccm = client.getConnectionManager();
+        if ( ccm instanceof ThreadSafeClientConnManager )
+        {
+            return ( (ThreadSafeClientConnManager) ccm ).getConnectionsInPool();
+        }
+
+        return -1;
+    }
+
+    public synchronized void ensureCapacity( final int maxTotal, final int maxPerRoute )
+    {
+        final ClientConnectionManager ccm = client.getConnectionManager();
+        if ( ccm instanceof ThreadSafeClientConnManager )
+        {
+            final ThreadSafeClientConnManager tsccm = (ThreadSafeClientConnManager) ccm;
+            if ( tsccm.getMaxTotal() < maxTotal )
+            {
+                tsccm.setMaxTotal( maxTotal );
+            }
+
+            if ( tsccm.getDefaultMaxPerRoute() < maxPerRoute )
+            {
+                tsccm.setDefaultMaxPerRoute( maxPerRoute );
+            }
+        }
+    }
+
+    public void shutdown()
+    {
+        final ClientConnectionManager ccm = client.getConnectionManager();
+        IdleConnectionReaper.unregister( ccm );
+        ccm.shutdown();
     }
 
     public void executeHttp( final HttpRequestBase request, final String failureMessage )
@@ -91,9 +195,12 @@ public class CouchHttpClient
         final String url = request.getURI()
                                   .toString();
 
+        boolean failed = false;
         try
         {
             final HttpResponse response = client.execute( request );
+            openResponses.put( request, response );
+
             final StatusLine statusLine = response.getStatusLine();
             if ( expectedStatus != null && statusLine.getStatusCode() != expectedStatus )
             {
@@ -105,19 +212,29 @@ public class CouchHttpClient
         }
         catch ( final UnsupportedEncodingException e )
         {
+            failed = true;
             throw new CouchDBException( "%s: %s.\nReason: %s", e, failureMessage, url, e.getMessage() );
         }
         catch ( final ClientProtocolException e )
         {
+            failed = true;
             throw new CouchDBException( "%s: %s.\nReason: %s", e, failureMessage, url, e.getMessage() );
         }
         catch ( final IOException e )
         {
+            failed = true;
             throw new CouchDBException( "%s: %s.\nReason: %s", e, failureMessage, url, e.getMessage() );
         }
         finally
         {
-            cleanup( request );
+            if ( failed )
+            {
+                abort( request );
+            }
+            else
+            {
+                cleanup( request );
+            }
         }
     }
 
@@ -138,11 +255,15 @@ public class CouchHttpClient
         try
         {
             final HttpResponse response = client.execute( request );
+            openResponses.put( request, response );
+
             final StatusLine statusLine = response.getStatusLine();
             if ( expectedStatus != null && statusLine.getStatusCode() != expectedStatus )
             {
                 final HttpEntity entity = response.getEntity();
                 final CouchError error = serializer.toError( entity );
+                cleanup( request );
+
                 throw new CouchDBException( "%s: %s.\nHTTP Response: %s\nError: %s", failureMessage, url, statusLine,
                                             error );
             }
@@ -168,7 +289,7 @@ public class CouchHttpClient
         {
             if ( failed )
             {
-                cleanup( request );
+                abort( request );
             }
         }
     }
@@ -187,8 +308,10 @@ public class CouchHttpClient
         final String url = request.getURI()
                                   .toString();
 
+        boolean failed = false;
         try
         {
+            // the response handler variant consumes the entity itself, releasing the connection back to the pool.
             final T result = client.execute( request, handler );
             if ( result == null && handler.getError() != null )
             {
@@ -199,28 +322,73 @@ public class CouchHttpClient
         }
         catch ( final UnsupportedEncodingException e )
         {
+            failed = true;
             throw new CouchDBException( "%s: %s.\nReason: %s", e, failureMessage, url, e.getMessage() );
         }
         catch ( final ClientProtocolException e )
         {
+            failed = true;
             throw new CouchDBException( "%s: %s.\nReason: %s", e, failureMessage, url, e.getMessage() );
         }
         catch ( final IOException e )
         {
+            failed = true;
             throw new CouchDBException( "%s: %s.\nReason: %s", e, failureMessage, url, e.getMessage() );
         }
         finally
         {
-            cleanup( request );
+            if ( failed )
+            {
+                abort( request );
+            }
+            else
+            {
+                cleanup( request );
+            }
         }
     }
 
     public void cleanup( final HttpRequestBase request )
     {
+        final HttpResponse response = openResponses.remove( request );
+        if ( releaseMode == ReleaseMode.ABORT )
+        {
+            abort( request );
+        }
+        else if ( response != null )
+        {
+            try
+            {
+                EntityUtils.consume( response.getEntity() );
+            }
+            catch ( final IOException e )
+            {
+                abort( request );
+            }
+        }
+    }
+
+    public void abort( final HttpRequestBase request )
+    {
+        openResponses.remove( request );
+        stats.recordAbort();
         request.abort();
-        client.getConnectionManager()
-              .closeExpiredConnections();
-        client.getConnectionManager()
-              .closeIdleConnections( 2, TimeUnit.SECONDS );
     }
+
+    private final class ConnectionReuseInterceptor
+        implements HttpResponseInterceptor
+    {
+        @Override
+        public void process( final HttpResponse response, final HttpContext context )
+            throws HttpException, IOException
+        {
+            final HttpConnection conn = (HttpConnection) context.getAttribute( ExecutionContext.HTTP_CONNECTION );
+            if ( conn != null && conn.getMetrics() != null )
+            {
+                stats.recordRequest( conn.getMetrics()
+                                         .getRequestCount() > 1 );
+            }
+        }
+    }
+
 }
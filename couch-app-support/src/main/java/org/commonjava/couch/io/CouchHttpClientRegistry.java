@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.io;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.commonjava.couch.conf.CouchDBConfiguration;
+import org.commonjava.util.logging.Logger;
+
+@Singleton
+public class CouchHttpClientRegistry
+{
+
+    private final Logger logger = new Logger( getClass() );
+
+    private final Map<ClientKey, CouchHttpClient> clients = new HashMap<ClientKey, CouchHttpClient>();
+
+    @Inject
+    private Serializer serializer;
+
+    CouchHttpClientRegistry()
+    {
+    }
+
+    public CouchHttpClientRegistry( final Serializer serializer )
+    {
+        this.serializer = serializer;
+    }
+
+    public synchronized CouchHttpClient getClient( final CouchDBConfiguration config )
+    {
+        final ClientKey key = new ClientKey( config );
+        CouchHttpClient client = clients.get( key );
+        if ( client == null )
+        {
+            logger.info( "Creating shared connection pool for: %s", key );
+            client = new CouchHttpClient( config, serializer );
+            clients.put( key, client );
+        }
+        else
+        {
+            client.ensureCapacity( config.getMaxConnections(), config.getMaxConnectionsPerRoute() );
+        }
+
+        return client;
+    }
+
+    public synchronized int size()
+    {
+        return clients.size();
+    }
+
+    @PreDestroy
+    public synchronized void shutdown()
+    {
+        for ( final Map.Entry<ClientKey, CouchHttpClient> entry : clients.entrySet() )
+        {
+            logger.info( "Shutting down connection pool for: %s (%s)", entry.getKey(), entry.getValue()
+                                                                                          .getConnectionStats() );
+            entry.getValue()
+                 .shutdown();
+        }
+
+        clients.clear();
+    }
+
+    private static final class ClientKey
+    {
+        private final String host;
+
+        private final int port;
+
+        private final String user;
+
+        private final String password;
+
+        private final String releaseMode;
+
+        ClientKey( final CouchDBConfiguration config )
+        {
+            this.host = config.getDatabaseHost();
+            this.port = config.getDatabasePort();
+            this.user = config.getDatabaseUser();
+            this.password = config.getDatabasePassword();
+            this.releaseMode = config.getConnectionReleaseMode();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + ( ( host == null ) ? 0 : host.hashCode() );
+            result = prime * result + port;
+            result = prime * result + ( ( user == null ) ? 0 : user.hashCode() );
+            result = prime * result + ( ( password == null ) ? 0 : password.hashCode() );
+            result = prime * result + ( ( releaseMode == null ) ? 0 : releaseMode.hashCode() );
+            return result;
+        }
+
+        @Override
+        public boolean equals( final Object obj )
+        {
+            if ( this == obj )
+            {
+                return true;
+            }
+            if ( obj == null || getClass() != obj.getClass() )
+            {
+                return false;
+            }
+            final ClientKey other = (ClientKey) obj;
+            return port == other.port && eq( host, other.host ) && eq( user, other.user )
+                && eq( password, other.password ) && eq( releaseMode, other.releaseMode );
+        }
+
+        private static boolean eq( final String first, final String second )
+        {
+            return first == null ? second == null : first.equals( second );
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format( "%s@%s:%s", user == null ? "-anonymous-" : user, host, port );
+        }
+    }
+
+}
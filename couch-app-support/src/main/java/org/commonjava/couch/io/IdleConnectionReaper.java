@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.io;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ClientConnectionManager;
+import org.commonjava.util.logging.Logger;
+
+public final class IdleConnectionReaper
+    implements Runnable
+{
+
+    private static final long REAP_INTERVAL_MILLIS = 5000;
+
+    private static final IdleConnectionReaper INSTANCE = new IdleConnectionReaper();
+
+    private final Logger logger = new Logger( getClass() );
+
+    private final Map<ClientConnectionManager, Long> managers = new ConcurrentHashMap<ClientConnectionManager, Long>();
+
+    private Thread reaperThread;
+
+    private IdleConnectionReaper()
+    {
+    }
+
+    public static void register( final ClientConnectionManager manager, final long idleMillis )
+    {
+        INSTANCE.managers.put( manager, idleMillis );
+        INSTANCE.ensureRunning();
+    }
+
+    public static void unregister( final ClientConnectionManager manager )
+    {
+        INSTANCE.managers.remove( manager );
+    }
+
+    private synchronized void ensureRunning()
+    {
+        if ( reaperThread == null || !reaperThread.isAlive() )
+        {
+            reaperThread = new Thread( this, "couch-idle-connection-reaper" );
+            reaperThread.setDaemon( true );
+            reaperThread.start();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        while ( !Thread.interrupted() )
+        {
+            try
+            {
+                Thread.sleep( REAP_INTERVAL_MILLIS );
+            }
+            catch ( final InterruptedException e )
+            {
+                break;
+            }
+
+            for ( final Map.Entry<ClientConnectionManager, Long> entry : managers.entrySet() )
+            {
+                try
+                {
+                    final ClientConnectionManager manager = entry.getKey();
+                    manager.closeExpiredConnections();
+                    manager.closeIdleConnections( entry.getValue(), TimeUnit.MILLISECONDS );
+                }
+                catch ( final RuntimeException e )
+                {
+                    logger.warn( "Failed to evict idle connections. Reason: %s", e, e.getMessage() );
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.io;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.commonjava.couch.db.action.BulkActionHolder;
+import org.commonjava.web.json.ser.WebSerializationAdapter;
+
+import com.google.gson.stream.JsonWriter;
+
+public class JsonEntity
+    extends AbstractHttpEntity
+{
+
+    private static final String CHARSET = "UTF-8";
+
+    private static final String CONTENT_TYPE = "application/json; charset=" + CHARSET;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Serializer serializer;
+
+    private final Object src;
+
+    private final WebSerializationAdapter[] adapters;
+
+    public JsonEntity( final Serializer serializer, final Object src, final WebSerializationAdapter... adapters )
+    {
+        this.serializer = serializer;
+        this.src = src;
+        this.adapters = adapters;
+        setContentType( CONTENT_TYPE );
+        setChunked( true );
+    }
+
+    @Override
+    public boolean isRepeatable()
+    {
+        return true;
+    }
+
+    @Override
+    public long getContentLength()
+    {
+        return -1;
+    }
+
+    @Override
+    public InputStream getContent()
+        throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo( out );
+        return new ByteArrayInputStream( out.toByteArray() );
+    }
+
+    @Override
+    public void writeTo( final OutputStream out )
+        throws IOException
+    {
+        if ( out == null )
+        {
+            throw new IllegalArgumentException( "Output stream may not be null" );
+        }
+
+        final JsonWriter writer =
+            new JsonWriter( new BufferedWriter( new OutputStreamWriter( out, CHARSET ), BUFFER_SIZE ) );
+        if ( src instanceof BulkActionHolder )
+        {
+            serializer.writeJson( (BulkActionHolder) src, writer, adapters );
+        }
+        else
+        {
+            serializer.writeJson( src, writer, adapters );
+        }
+
+        // flush only; closing the writer would close the connection's output stream.
+        writer.flush();
+    }
+
+    @Override
+    public boolean isStreaming()
+    {
+        return false;
+    }
+
+}
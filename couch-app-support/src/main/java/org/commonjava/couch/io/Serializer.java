@@ -21,14 +21,19 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.inject.Singleton;
 
 import org.apache.http.HttpEntity;
+import org.apache.http.util.EntityUtils;
 import org.commonjava.couch.db.action.BulkActionHolder;
 import org.commonjava.couch.db.action.CouchDocumentAction;
 import org.commonjava.couch.db.model.CouchDocRefSet;
@@ -41,13 +46,22 @@ import org.commonjava.web.json.ser.WebSerializationAdapter;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 @Singleton
 public class Serializer
 {
 
-    private final Set<WebSerializationAdapter> baseAdapters = new HashSet<WebSerializationAdapter>();
+    private static final int MAX_CACHED_GSON = 64;
+
+    private final Set<WebSerializationAdapter> baseAdapters = new LinkedHashSet<WebSerializationAdapter>();
+
+    private final Map<List<WebSerializationAdapter>, Gson> gsonCache = new GsonCache( MAX_CACHED_GSON );
+
+    private volatile Gson baseGson;
 
     Serializer()
     {
@@ -60,7 +74,22 @@ public class Serializer
 
     public void registerSerializationAdapters( final WebSerializationAdapter... adapters )
     {
-        this.baseAdapters.addAll( Arrays.asList( adapters ) );
+        synchronized ( gsonCache )
+        {
+            if ( this.baseAdapters.addAll( Arrays.asList( adapters ) ) )
+            {
+                gsonCache.clear();
+                baseGson = null;
+            }
+        }
+    }
+
+    public int getCachedGsonCount()
+    {
+        synchronized ( gsonCache )
+        {
+            return gsonCache.size() + ( baseGson == null ? 0 : 1 );
+        }
     }
 
     public String toString( final BulkActionHolder actions, final WebSerializationAdapter... adapters )
@@ -78,6 +107,39 @@ public class Serializer
         return getGson( adapters ).toJson( doc );
     }
 
+    public JsonElement toJsonTree( final Object src, final WebSerializationAdapter... adapters )
+    {
+        return getGson( adapters ).toJsonTree( src, src.getClass() );
+    }
+
+    public void writeJson( final Object src, final JsonWriter writer, final WebSerializationAdapter... adapters )
+    {
+        getGson( adapters ).toJson( src, src.getClass(), writer );
+    }
+
+    public void writeJson( final BulkActionHolder actions, final JsonWriter writer,
+                           final WebSerializationAdapter... adapters )
+        throws IOException
+    {
+        final Gson gson = getGson( adapters );
+
+        // write the envelope by hand so only one document tree is held in memory at a time.
+        writer.beginObject();
+        writer.name( "all_or_nothing" )
+              .value( actions.isTransactional() );
+        writer.name( "non_atomic" )
+              .value( actions.isNonAtomic() );
+        writer.name( "docs" )
+              .beginArray();
+        for ( final CouchDocumentAction action : actions.getActions() )
+        {
+            final Object doc = action.getDocument();
+            gson.toJson( doc, doc.getClass(), writer );
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
     public <D extends CouchDocument> D toDocument( final String src, final Class<D> docType,
                                                    final WebSerializationAdapter... adapters )
     {
@@ -103,6 +165,16 @@ public class Serializer
         return getGson( adapters ).fromJson( new InputStreamReader( src, encoding ), type );
     }
 
+    public <T> T fromJson( final JsonReader reader, final Type type, final WebSerializationAdapter... adapters )
+    {
+        return getGson( adapters ).fromJson( reader, type );
+    }
+
+    public <T> T fromJson( final JsonElement src, final Type type, final WebSerializationAdapter... adapters )
+    {
+        return getGson( adapters ).fromJson( src, type );
+    }
+
     public CouchError toError( final InputStream in, final String charset )
         throws UnsupportedEncodingException
     {
@@ -125,7 +197,13 @@ public class Serializer
                                                                                                  .getValue() );
         }
 
-        final Reader reader = new InputStreamReader( entity.getContent() );
+        String charset = EntityUtils.getContentCharSet( entity );
+        if ( charset == null )
+        {
+            charset = "UTF-8";
+        }
+
+        final Reader reader = new InputStreamReader( entity.getContent(), charset );
         return getGson().fromJson( reader, CouchError.class );
     }
 
@@ -143,13 +221,47 @@ public class Serializer
 
     protected final Gson getGson( final WebSerializationAdapter... adapters )
     {
-        final GsonBuilder builder = newGsonBuilder();
-        if ( baseAdapters != null )
+        if ( adapters == null || adapters.length < 1 )
         {
-            for ( final WebSerializationAdapter adapter : baseAdapters )
+            Gson gson = baseGson;
+            if ( gson == null )
             {
-                adapter.register( builder );
+                synchronized ( gsonCache )
+                {
+                    gson = baseGson;
+                    if ( gson == null )
+                    {
+                        gson = createGson();
+                        baseGson = gson;
+                    }
+                }
+            }
+
+            return gson;
+        }
+
+        final List<WebSerializationAdapter> key =
+            Collections.unmodifiableList( new ArrayList<WebSerializationAdapter>( Arrays.asList( adapters ) ) );
+
+        synchronized ( gsonCache )
+        {
+            Gson gson = gsonCache.get( key );
+            if ( gson == null )
+            {
+                gson = createGson( adapters );
+                gsonCache.put( key, gson );
             }
+
+            return gson;
+        }
+    }
+
+    private Gson createGson( final WebSerializationAdapter... adapters )
+    {
+        final GsonBuilder builder = newGsonBuilder();
+        for ( final WebSerializationAdapter adapter : baseAdapters )
+        {
+            adapter.register( builder );
         }
 
         if ( adapters != null )
@@ -163,4 +275,24 @@ public class Serializer
         return builder.create();
     }
 
+    private static final class GsonCache
+        extends LinkedHashMap<List<WebSerializationAdapter>, Gson>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        GsonCache( final int maxSize )
+        {
+            super( 16, 0.75f, true );
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry( final Map.Entry<List<WebSerializationAdapter>, Gson> eldest )
+        {
+            return size() > maxSize;
+        }
+    }
+
 }
@@ -55,4 +55,16 @@ public class AttachmentInfoListAdapter
         }.getType(), this );
     }
 
+    @Override
+    public int hashCode()
+    {
+        return getClass().hashCode();
+    }
+
+    @Override
+    public boolean equals( final Object obj )
+    {
+        return obj != null && getClass() == obj.getClass();
+    }
+
 }
@@ -113,4 +113,44 @@ public class CouchObjectListDeserializer<T>
         gsonBuilder.registerTypeAdapter( serType.getType(), this );
     }
 
+    @Override
+    public int hashCode()
+    {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + ( allowMissing ? 1231 : 1237 );
+        result = prime * result + ( ( serType == null ) ? 0 : serType.getType()
+                                                                       .hashCode() );
+        result = prime * result + ( ( type == null ) ? 0 : type.hashCode() );
+        return result;
+    }
+
+    @Override
+    public boolean equals( final Object obj )
+    {
+        if ( this == obj )
+        {
+            return true;
+        }
+        if ( obj == null || getClass() != obj.getClass() )
+        {
+            return false;
+        }
+        final CouchObjectListDeserializer<?> other = (CouchObjectListDeserializer<?>) obj;
+        if ( allowMissing != other.allowMissing )
+        {
+            return false;
+        }
+        if ( type == null ? other.type != null : !type.equals( other.type ) )
+        {
+            return false;
+        }
+        if ( serType == null )
+        {
+            return other.serType == null;
+        }
+        return other.serType != null && serType.getType()
+                                               .equals( other.serType.getType() );
+    }
+
 }
@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.io.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.commonjava.couch.db.model.CouchObjectList;
+import org.commonjava.couch.io.Serializer;
+import org.commonjava.couch.model.CouchDocument;
+import org.commonjava.web.json.ser.WebSerializationAdapter;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+public class CouchObjectListReader<T>
+{
+
+    private static final String ROWS = "rows";
+
+    private static final String DOC_ELEMENT = "doc";
+
+    private final Serializer serializer;
+
+    private final Class<T> type;
+
+    private final boolean allowMissing;
+
+    private final boolean dedupe;
+
+    private final WebSerializationAdapter[] adapters;
+
+    public CouchObjectListReader( final Serializer serializer, final Class<T> type, final boolean allowMissing,
+                                  final WebSerializationAdapter... adapters )
+    {
+        this( serializer, type, allowMissing, true, adapters );
+    }
+
+    public CouchObjectListReader( final Serializer serializer, final Class<T> type, final boolean allowMissing,
+                                  final boolean dedupe, final WebSerializationAdapter... adapters )
+    {
+        this.serializer = serializer;
+        this.type = type;
+        this.allowMissing = allowMissing;
+        this.dedupe = dedupe;
+        this.adapters = adapters;
+    }
+
+    public CouchObjectList<T> read( final Reader in )
+        throws IOException
+    {
+        return read( new JsonReader( in ) );
+    }
+
+    public CouchObjectList<T> read( final JsonReader reader )
+        throws IOException
+    {
+        final boolean useDocElement = CouchDocument.class.isAssignableFrom( type );
+
+        final ArrayList<T> items = new ArrayList<T>();
+        final Set<T> seen = dedupe ? new HashSet<T>() : null;
+
+        boolean foundRows = false;
+        reader.beginObject();
+        while ( reader.hasNext() )
+        {
+            final String name = reader.nextName();
+            if ( !ROWS.equals( name ) || reader.peek() != JsonToken.BEGIN_ARRAY )
+            {
+                reader.skipValue();
+                continue;
+            }
+
+            foundRows = true;
+            reader.beginArray();
+            while ( reader.hasNext() )
+            {
+                final T item = useDocElement ? readDocElement( reader ) : readRow( reader );
+                if ( item != null && ( seen == null || seen.add( item ) ) )
+                {
+                    items.add( item );
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+
+        if ( !foundRows )
+        {
+            throw new JsonParseException( "Cannot find " + ROWS + " field within root object." );
+        }
+
+        return CouchObjectList.wrap( items );
+    }
+
+    // the rows read() would bind, as JSON trees; bind() makes new objects from them without parsing text again.
+    public List<JsonElement> readElements( final Reader in )
+        throws IOException
+    {
+        final boolean useDocElement = CouchDocument.class.isAssignableFrom( type );
+        final JsonReader reader = new JsonReader( in );
+        final JsonParser parser = new JsonParser();
+
+        final List<JsonElement> rows = new ArrayList<JsonElement>();
+
+        boolean foundRows = false;
+        reader.beginObject();
+        while ( reader.hasNext() )
+        {
+            final String name = reader.nextName();
+            if ( !ROWS.equals( name ) || reader.peek() != JsonToken.BEGIN_ARRAY )
+            {
+                reader.skipValue();
+                continue;
+            }
+
+            foundRows = true;
+            reader.beginArray();
+            while ( reader.hasNext() )
+            {
+                final JsonElement row = parser.parse( reader );
+                final JsonElement item = useDocElement ? docElement( row ) : row;
+                if ( item != null && !item.isJsonNull() )
+                {
+                    rows.add( item );
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+
+        if ( !foundRows )
+        {
+            throw new JsonParseException( "Cannot find " + ROWS + " field within root object." );
+        }
+
+        return rows;
+    }
+
+    public CouchObjectList<T> bind( final List<JsonElement> rows )
+    {
+        final ArrayList<T> items = new ArrayList<T>( rows.size() );
+        final Set<T> seen = dedupe ? new HashSet<T>() : null;
+        for ( final JsonElement row : rows )
+        {
+            final Object val = serializer.fromJson( row, type, adapters );
+            final T item = val == null ? null : type.cast( val );
+            if ( item != null && ( seen == null || seen.add( item ) ) )
+            {
+                items.add( item );
+            }
+        }
+
+        return CouchObjectList.wrap( items );
+    }
+
+    private JsonElement docElement( final JsonElement row )
+    {
+        final JsonElement doc = row.isJsonObject() ? ( (JsonObject) row ).get( DOC_ELEMENT ) : null;
+        if ( doc == null && !allowMissing )
+        {
+            throw new JsonParseException( "Cannot find " + DOC_ELEMENT + " field within row."
+                + "\nDid you access the view with the '?include_docs=true' query parameter?" );
+        }
+
+        return doc;
+    }
+
+    private T readRow( final JsonReader reader )
+    {
+        final Object val = serializer.fromJson( reader, type, adapters );
+        return val == null ? null : type.cast( val );
+    }
+
+    private T readDocElement( final JsonReader reader )
+        throws IOException
+    {
+        boolean foundDoc = false;
+        T item = null;
+
+        reader.beginObject();
+        while ( reader.hasNext() )
+        {
+            final String name = reader.nextName();
+            if ( DOC_ELEMENT.equals( name ) )
+            {
+                foundDoc = true;
+                item = readRow( reader );
+            }
+            else
+            {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if ( !foundDoc && !allowMissing )
+        {
+            throw new JsonParseException( "Cannot find " + DOC_ELEMENT + " field within row."
+                + "\nDid you access the view with the '?include_docs=true' query parameter?" );
+        }
+
+        return item;
+    }
+
+}
@@ -34,6 +34,8 @@ public class CouchApp
 
     private Map<String, CouchAppView> views;
 
+    private Map<String, String> filters;
+
     private transient final AppDescription description;
 
     public CouchApp( final String id, final Map<String, CouchAppView> views,
@@ -81,6 +83,26 @@ public class CouchApp
         this.views = views;
     }
 
+    public synchronized String addFilter( final String name, final String function )
+    {
+        if ( filters == null )
+        {
+            filters = new HashMap<String, String>();
+        }
+
+        return filters.put( name, function );
+    }
+
+    public Map<String, String> getFilters()
+    {
+        return filters;
+    }
+
+    void setFilters( final Map<String, String> filters )
+    {
+        this.filters = filters;
+    }
+
     @Override
     public String toString()
     {
@@ -15,8 +15,22 @@
  ******************************************************************************/
 package org.commonjava.couch.model;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 public class CouchAppView
 {
+    public static final String COUNT = "_count";
+
+    public static final String SUM = "_sum";
+
+    public static final String STATS = "_stats";
+
+    public static final Set<String> BUILTIN_REDUCERS =
+        Collections.unmodifiableSet( new HashSet<String>( Arrays.asList( COUNT, SUM, STATS ) ) );
+
     private String map;
 
     private String reduce;
@@ -54,4 +68,10 @@ public class CouchAppView
     {
         this.reduce = reduce;
     }
+
+    // built-ins run natively inside CouchDB, without a round trip through the JavaScript view server.
+    public boolean isBuiltinReduce()
+    {
+        return reduce != null && BUILTIN_REDUCERS.contains( reduce );
+    }
 }
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.change;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.junit.Test;
+
+public class ChangeFilterTest
+{
+
+    @Test
+    public void postDocIdsAndPassDesignParametersInUrl()
+    {
+        final ChangeFilter ids = ChangeFilter.docIds( "b", "a" );
+        assertThat( ids.getUrlParameters()
+                       .get( "filter" ), equalTo( "_doc_ids" ) );
+        assertThat( ids.getRequestBody(), equalTo( "{\"doc_ids\":[\"a\",\"b\"]}" ) );
+        assertThat( CouchChangeListener.newFeedRequest( "http://localhost/db/_changes", ids ),
+                    instanceOf( HttpPost.class ) );
+
+        final ChangeFilter design =
+            ChangeFilter.design( "app", "by-type", Collections.singletonMap( "type", "a b" ) );
+        final Map<String, String> params = design.getUrlParameters();
+        assertThat( params.get( "filter" ), equalTo( "app%2Fby-type" ) );
+        assertThat( params.get( "type" ), equalTo( "a+b" ) );
+        assertThat( design.getRequestBody(), nullValue() );
+        assertThat( CouchChangeListener.newFeedRequest( "http://localhost/db/_changes", design ),
+                    instanceOf( HttpGet.class ) );
+    }
+
+    @Test
+    public void combineListenerFilters()
+    {
+        assertThat( ChangeFilter.combine( Arrays.asList( ChangeFilter.docIds( "a" ), ChangeFilter.docIds( "b" ) ) ),
+                    equalTo( ChangeFilter.docIds( "a", "b" ) ) );
+
+        final ChangeFilter mixed =
+            ChangeFilter.combine( Arrays.asList( ChangeFilter.selector( "{\"doctype\":\"user\"}" ),
+                                                 ChangeFilter.docIds( "a" ) ) );
+        assertThat( mixed.getSelector(),
+                    equalTo( "{\"$or\":[{\"doctype\":\"user\"},{\"_id\":{\"$in\":[\"a\"]}}]}" ) );
+
+        final ChangeFilter design = ChangeFilter.design( "app", "f" );
+        assertThat( ChangeFilter.combine( Arrays.asList( design, ChangeFilter.design( "app", "f" ) ) ),
+                    equalTo( design ) );
+        assertThat( ChangeFilter.combine( Arrays.asList( design, ChangeFilter.design( "app", "g" ) ) ), nullValue() );
+        assertThat( ChangeFilter.combine( Arrays.asList( design, null ) ), nullValue() );
+    }
+
+}
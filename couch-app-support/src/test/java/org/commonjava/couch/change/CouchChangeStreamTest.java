@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.change;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class CouchChangeStreamTest
+{
+
+    @Test
+    public void readContinuousLinesAndSkipHeartbeats()
+        throws Exception
+    {
+        final String src =
+            "{\"seq\":4,\"id\":\"one\",\"changes\":[{\"rev\":\"1-a\"}]}\n\n\n"
+                + "{\"seq\":5,\"id\":\"two\",\"changes\":[{\"rev\":\"2-b\"}],\"deleted\":true}\n\n"
+                + "{\"last_seq\":5}\n";
+
+        final CouchChangeStream stream =
+            new CouchChangeStream( new StringReader( src ), ChangeFeedMode.CONTINUOUS );
+
+        assertThat( stream.next()
+                          .getId(), equalTo( "one" ) );
+
+        final CouchDocChange second = stream.next();
+        assertThat( second.getSequence(), equalTo( 5 ) );
+        assertThat( second.isDeleted(), equalTo( true ) );
+
+        assertThat( stream.next(), nullValue() );
+        assertThat( stream.getLastSequence(), equalTo( "5" ) );
+    }
+
+    @Test
+    public void readResultsArrayIncrementally()
+        throws Exception
+    {
+        final String src =
+            "{\"results\":[\n{\"seq\":1,\"id\":\"one\",\"changes\":[{\"rev\":\"1-a\"}]},\n"
+                + "{\"seq\":2,\"id\":\"two\",\"changes\":[{\"rev\":\"1-b\"}]}\n],\n\"last_seq\":2}\n";
+
+        final CouchChangeStream stream = new CouchChangeStream( new StringReader( src ), ChangeFeedMode.LONGPOLL );
+
+        assertThat( stream.next()
+                          .getSequence(), equalTo( 1 ) );
+        assertThat( stream.next()
+                          .getId(), equalTo( "two" ) );
+        assertThat( stream.next(), nullValue() );
+        assertThat( stream.getLastSequence(), equalTo( "2" ) );
+    }
+
+    @Test
+    public void reportHeartbeatsBetweenChanges()
+        throws Exception
+    {
+        final String src = "\n\n{\"seq\":\"7-abc\",\"id\":\"one\",\"changes\":[{\"rev\":\"1-a\"}]}\n\n";
+
+        final CouchChangeStream stream =
+            new CouchChangeStream( new StringReader( src ), ChangeFeedMode.CONTINUOUS );
+
+        final AtomicInteger heartbeats = new AtomicInteger();
+        stream.setHeartbeatCallback( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                heartbeats.incrementAndGet();
+            }
+        } );
+
+        assertThat( stream.next()
+                          .getSequenceId(), equalTo( "7-abc" ) );
+        assertThat( heartbeats.get(), equalTo( 2 ) );
+
+        assertThat( stream.next(), nullValue() );
+        assertThat( heartbeats.get(), equalTo( 3 ) );
+        assertThat( stream.getLastSequence(), nullValue() );
+    }
+
+    @Test
+    public void backoffGrowsWithinBounds()
+    {
+        final long first = CouchChangeListener.backoffMillis( 1 );
+        assertTrue( first >= 250 && first <= 500 );
+
+        final long later = CouchChangeListener.backoffMillis( 50 );
+        assertTrue( later >= 30000 && later <= 60000 );
+    }
+
+}
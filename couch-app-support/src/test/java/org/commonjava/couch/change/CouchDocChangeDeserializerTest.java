@@ -75,4 +75,19 @@ public class CouchDocChangeDeserializerTest
         assertThat( revs.get( 0 ), equalTo( "3-7532023626276bbc71063b7958daf8f3" ) );
     }
 
+    @Test
+    public void keepOpaqueStringSequence()
+    {
+        String changeLine =
+            "{\"seq\":\"27-g1AAAAG7eJzLYWBgYMlgTmFQTElKzi9KdUhJMtTLTc3NLUpMLtFLzskvTUnMK9HLSy3JAalkSmTIY2H4\","
+                + "\"id\":\"one\",\"changes\":[{\"rev\":\"1-a\"}]}";
+
+        CouchDocChange change =
+            new Serializer().fromJson( changeLine, CouchDocChange.class, new CouchDocChangeDeserializer() );
+
+        assertThat( change.getSequenceId()
+                          .startsWith( "27-g1AAAAG7" ), equalTo( true ) );
+        assertThat( change.getSequence(), equalTo( 27 ) );
+    }
+
 }
@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.change.dispatch;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.commonjava.couch.change.CouchDocChange;
+import org.junit.Test;
+
+public class ThreadedChangeDispatcherTest
+{
+
+    @Test
+    public void keepPerDocumentOrderAcrossThreads()
+        throws Exception
+    {
+        final RecordingListener listener = new RecordingListener();
+        final ExecutorService exec = Executors.newFixedThreadPool( 4 );
+        final ThreadedChangeDispatcher dispatcher =
+            new ThreadedChangeDispatcher( Arrays.asList( listener ), exec, 3 );
+
+        final int count = 500;
+        for ( int seq = 1; seq <= count; seq++ )
+        {
+            dispatcher.documentChanged( new CouchDocChange( seq, "doc-" + ( seq % 7 ), null, false ) );
+        }
+
+        final long end = System.currentTimeMillis() + 10000;
+        while ( dispatcher.getPendingCount() > 0 && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+
+        exec.shutdown();
+        exec.awaitTermination( 5, TimeUnit.SECONDS );
+
+        assertThat( dispatcher.getPendingCount(), equalTo( 0 ) );
+
+        int seen = 0;
+        for ( final List<Integer> sequences : listener.byId.values() )
+        {
+            final List<Integer> sorted = new ArrayList<Integer>( sequences );
+            Collections.sort( sorted );
+            assertThat( sequences, equalTo( sorted ) );
+            seen += sequences.size();
+        }
+
+        assertThat( seen, equalTo( count ) );
+
+        long total = 0;
+        for ( final long laneTotal : dispatcher.getLaneTotals() )
+        {
+            total += laneTotal;
+        }
+
+        assertThat( total, equalTo( (long) count ) );
+        assertTrue( dispatcher.getLaneSkew() >= 1 );
+    }
+
+    @Test
+    public void reportQueuedDepthPerLane()
+    {
+        final List<Runnable> submitted = new ArrayList<Runnable>();
+        final ThreadedChangeDispatcher dispatcher =
+            new ThreadedChangeDispatcher( Arrays.asList( new RecordingListener() ), new Executor()
+            {
+                @Override
+                public void execute( final Runnable command )
+                {
+                    submitted.add( command );
+                }
+            }, 4 );
+
+        dispatcher.documentChanged( new CouchDocChange( 1, "a", null, false ) );
+        dispatcher.documentChanged( new CouchDocChange( 2, "a", null, false ) );
+
+        // one consumer per lane, however many changes are waiting in it.
+        assertThat( submitted.size(), equalTo( 1 ) );
+        assertThat( dispatcher.getLaneDepths()[ThreadedChangeDispatcher.laneIndex( "a", 4 )], equalTo( 2 ) );
+        assertThat( dispatcher.getPendingCount(), equalTo( 2 ) );
+
+        submitted.get( 0 )
+                 .run();
+
+        assertThat( dispatcher.getPendingCount(), equalTo( 0 ) );
+        assertThat( dispatcher.getLaneSkew(), equalTo( 4.0 ) );
+    }
+
+    @Test
+    public void refuseOffersWhenFullUnderSpill()
+        throws Exception
+    {
+        final HeldExecutor held = new HeldExecutor();
+        final ThreadedChangeDispatcher dispatcher =
+            new ThreadedChangeDispatcher( Arrays.asList( new RecordingListener() ), held, 4, 2,
+                                          OverflowPolicy.SPILL );
+
+        assertThat( dispatcher.offerChange( new CouchDocChange( 1, "a", null, false ) ), equalTo( 1L ) );
+        assertThat( dispatcher.offerChange( new CouchDocChange( 2, "b", null, false ) ), equalTo( 2L ) );
+        assertThat( dispatcher.offerChange( new CouchDocChange( 3, "c", null, false ) ),
+                    equalTo( BoundedChangeDispatcher.REFUSED ) );
+        assertThat( dispatcher.getSpilledCount(), equalTo( 1L ) );
+        assertThat( dispatcher.awaitDrain( 10 ), equalTo( false ) );
+
+        held.runAll();
+
+        assertThat( dispatcher.awaitDrain( 10 ), equalTo( true ) );
+        final long retried = dispatcher.offerChange( new CouchDocChange( 3, "c", null, false ) );
+        assertTrue( retried != BoundedChangeDispatcher.REFUSED );
+    }
+
+    @Test
+    public void reportCompletionOnlyUpToOldestQueuedChange()
+    {
+        final HeldExecutor held = new HeldExecutor();
+        final ThreadedChangeDispatcher dispatcher =
+            new ThreadedChangeDispatcher( Arrays.asList( new RecordingListener() ), held, 4 );
+
+        final long first = dispatcher.offerChange( new CouchDocChange( 1, "a", null, false ) );
+        final long second = dispatcher.offerChange( new CouchDocChange( 2, "b", null, false ) );
+
+        assertThat( dispatcher.getCompletedTicket(), equalTo( first - 1 ) );
+
+        // "a" and "b" hash to different lanes; the lane for "b" finishes first, but "a" still holds the mark back.
+        assertTrue( ThreadedChangeDispatcher.laneIndex( "a", 4 ) != ThreadedChangeDispatcher.laneIndex( "b", 4 ) );
+        held.run( 1 );
+
+        assertThat( dispatcher.getCompletedTicket(), equalTo( first - 1 ) );
+
+        held.runAll();
+
+        assertThat( dispatcher.getCompletedTicket(), equalTo( second ) );
+    }
+
+    @Test
+    public void replaceWaitingChangeUnderCoalesce()
+    {
+        final HeldExecutor held = new HeldExecutor();
+        final RecordingListener listener = new RecordingListener();
+        final ThreadedChangeDispatcher dispatcher =
+            new ThreadedChangeDispatcher( Arrays.asList( listener ), held, 4, 1, OverflowPolicy.COALESCE );
+
+        dispatcher.documentChanged( new CouchDocChange( 1, "a", null, false ) );
+        dispatcher.documentChanged( new CouchDocChange( 2, "a", null, false ) );
+        dispatcher.documentChanged( new CouchDocChange( 3, "a", null, true ) );
+
+        assertThat( dispatcher.getPendingCount(), equalTo( 1 ) );
+        assertThat( dispatcher.getCoalescedCount(), equalTo( 2L ) );
+
+        held.runAll();
+
+        assertThat( listener.byId.get( "a" ), equalTo( Arrays.asList( 3 ) ) );
+    }
+
+    @Test
+    public void blockFeedReaderUntilSlotFrees()
+        throws Exception
+    {
+        final HeldExecutor held = new HeldExecutor();
+        final RecordingListener listener = new RecordingListener();
+        final ThreadedChangeDispatcher dispatcher =
+            new ThreadedChangeDispatcher( Arrays.asList( listener ), held, 4, 1, OverflowPolicy.BLOCK );
+
+        dispatcher.documentChanged( new CouchDocChange( 1, "a", null, false ) );
+
+        final Thread reader = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                dispatcher.documentChanged( new CouchDocChange( 2, "b", null, false ) );
+            }
+        };
+        reader.start();
+        reader.join( 200 );
+
+        assertThat( reader.isAlive(), equalTo( true ) );
+
+        held.runAll();
+        reader.join( 5000 );
+
+        assertThat( reader.isAlive(), equalTo( false ) );
+        assertThat( dispatcher.getPendingCount(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void freeLaneWhenListenerThrowsAnError()
+    {
+        final HeldExecutor held = new HeldExecutor();
+        final RecordingListener listener = new RecordingListener();
+        listener.failOn = 1;
+        final ThreadedChangeDispatcher dispatcher =
+            new ThreadedChangeDispatcher( Arrays.asList( listener ), held, 4, 2, OverflowPolicy.BLOCK );
+
+        dispatcher.documentChanged( new CouchDocChange( 1, "a", null, false ) );
+        dispatcher.documentChanged( new CouchDocChange( 2, "a", null, false ) );
+
+        try
+        {
+            held.run( 0 );
+            fail( "The listener's Error should reach the executor." );
+        }
+        catch ( final AssertionError e )
+        {
+            assertThat( e.getMessage(), equalTo( "listener failed" ) );
+        }
+
+        // the lane rescheduled itself for the change behind the failed one.
+        assertThat( dispatcher.getPendingCount(), equalTo( 1 ) );
+        held.runAll();
+
+        assertThat( dispatcher.getPendingCount(), equalTo( 0 ) );
+        assertThat( listener.byId.get( "a" ), equalTo( Arrays.asList( 1, 2 ) ) );
+    }
+
+    private static final class HeldExecutor
+        implements Executor
+    {
+        private final List<Runnable> held = new ArrayList<Runnable>();
+
+        @Override
+        public synchronized void execute( final Runnable command )
+        {
+            held.add( command );
+        }
+
+        synchronized void run( final int index )
+        {
+            held.remove( index )
+                .run();
+        }
+
+        synchronized void runAll()
+        {
+            while ( !held.isEmpty() )
+            {
+                held.remove( 0 )
+                    .run();
+            }
+        }
+    }
+
+    private static final class RecordingListener
+        implements ThreadableListener
+    {
+        private final Map<String, List<Integer>> byId = new HashMap<String, List<Integer>>();
+
+        private int failOn = -1;
+
+        @Override
+        public boolean canProcess( final String id, final boolean deleted )
+        {
+            return true;
+        }
+
+        @Override
+        public void documentChanged( final CouchDocChange change )
+        {
+            synchronized ( byId )
+            {
+                List<Integer> sequences = byId.get( change.getId() );
+                if ( sequences == null )
+                {
+                    sequences = new ArrayList<Integer>();
+                    byId.put( change.getId(), sequences );
+                }
+
+                sequences.add( change.getSequence() );
+            }
+
+            if ( change.getSequence() == failOn )
+            {
+                throw new AssertionError( "listener failed" );
+            }
+        }
+
+        @Override
+        public void waitForChange( final long totalMillis, final long pollingMillis )
+        {
+        }
+    }
+
+}
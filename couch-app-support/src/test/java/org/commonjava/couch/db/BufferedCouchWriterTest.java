@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.commonjava.couch.db.model.BulkResult;
+import org.commonjava.couch.db.model.BulkResult.DocumentResult;
+import org.commonjava.couch.db.model.BulkResult.FailurePolicy;
+import org.commonjava.couch.model.CouchDocRef;
+import org.commonjava.couch.model.CouchDocument;
+import org.junit.Test;
+
+public class BufferedCouchWriterTest
+{
+
+    @Test
+    public void coalesceRepeatedWritesIntoOneBatch()
+        throws Exception
+    {
+        final RecordingManager manager = new RecordingManager();
+        final BufferedCouchWriter writer = new BufferedCouchWriter( manager, 100, 60000, 100 );
+
+        final CouchDocRef first = new CouchDocRef( "one" );
+        final CouchDocRef second = new CouchDocRef( "one" );
+
+        final Future<DocumentResult> f1 = writer.write( first );
+        final Future<DocumentResult> f2 = writer.write( second );
+        final Future<DocumentResult> f3 = writer.write( new CouchDocRef( "two" ) );
+
+        writer.flush();
+
+        assertThat( manager.batches.size(), equalTo( 1 ) );
+        assertThat( manager.batches.get( 0 )
+                                   .size(), equalTo( 2 ) );
+        assertThat( manager.batches.get( 0 )
+                                   .get( 0 ), sameInstance( (CouchDocument) second ) );
+
+        assertThat( f1.get( 1, TimeUnit.SECONDS )
+                      .getRev(), equalTo( "1-one" ) );
+        assertThat( f2.get( 1, TimeUnit.SECONDS ), sameInstance( f1.get() ) );
+        assertThat( f3.get( 1, TimeUnit.SECONDS )
+                      .getRev(), equalTo( "1-two" ) );
+        assertThat( first.getCouchDocRev(), equalTo( "1-one" ) );
+
+        writer.close();
+    }
+
+    @Test
+    public void flushWhenBatchIsFull()
+        throws Exception
+    {
+        final RecordingManager manager = new RecordingManager();
+        final BufferedCouchWriter writer = new BufferedCouchWriter( manager, 2, 60000, 2 );
+
+        writer.write( new CouchDocRef( "one" ) );
+        final Future<DocumentResult> f = writer.write( new CouchDocRef( "two" ) );
+
+        assertThat( f.get( 5, TimeUnit.SECONDS )
+                     .isSuccess(), equalTo( true ) );
+        assertThat( writer.getBufferedCount(), equalTo( 0 ) );
+
+        writer.close();
+    }
+
+    private static final class RecordingManager
+        extends CouchManager
+    {
+        private final List<List<CouchDocument>> batches = new ArrayList<List<CouchDocument>>();
+
+        RecordingManager()
+        {
+            super( null, null, null, null );
+        }
+
+        @Override
+        public synchronized BulkResult store( final Collection<? extends CouchDocument> documents,
+                                              final boolean skipIfExists, final boolean allOrNothing,
+                                              final FailurePolicy policy )
+        {
+            batches.add( new ArrayList<CouchDocument>( documents ) );
+
+            final List<DocumentResult> results = new ArrayList<DocumentResult>();
+            for ( final CouchDocument doc : documents )
+            {
+                doc.setCouchDocRev( "1-" + doc.getCouchDocId() );
+                results.add( new DocumentResult( doc.getCouchDocId(), doc.getCouchDocRev(), null, null ) );
+            }
+
+            return new BulkResult( results );
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.commonjava.couch.db.action.CouchDocumentAction;
+import org.commonjava.couch.db.action.StoreAction;
+import org.commonjava.couch.io.Serializer;
+import org.commonjava.couch.model.CouchDocRef;
+import org.junit.Test;
+
+public class BulkBatcherTest
+{
+
+    @Test
+    public void splitByDocumentCount()
+        throws Exception
+    {
+        final List<List<CouchDocumentAction>> batches =
+            new BulkBatcher( new Serializer(), 2, 0 ).partition( actions( 5 ) );
+
+        assertThat( batches.size(), equalTo( 3 ) );
+        assertThat( batches.get( 0 )
+                           .size(), equalTo( 2 ) );
+        assertThat( batches.get( 2 )
+                           .size(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void splitBySerializedBytes()
+        throws Exception
+    {
+        final List<List<CouchDocumentAction>> batches =
+            new BulkBatcher( new Serializer(), 0, 1 ).partition( actions( 3 ) );
+
+        assertThat( batches.size(), equalTo( 3 ) );
+    }
+
+    @Test
+    public void keepSmallCollectionInOneBatch()
+        throws Exception
+    {
+        final List<List<CouchDocumentAction>> batches =
+            new BulkBatcher( new Serializer(), 10, 1024 * 1024 ).partition( actions( 5 ) );
+
+        assertThat( batches.size(), equalTo( 1 ) );
+        assertThat( batches.get( 0 )
+                           .size(), equalTo( 5 ) );
+    }
+
+    private List<CouchDocumentAction> actions( final int count )
+    {
+        final List<CouchDocumentAction> actions = new ArrayList<CouchDocumentAction>();
+        for ( int i = 0; i < count; i++ )
+        {
+            actions.add( new StoreAction( new CouchDocRef( "doc-" + i ), false ) );
+        }
+
+        return actions;
+    }
+
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public class CouchAppUpgradeTest
+{
+
+    private static final String ALL_VIEW = "\"all\": {\"map\": \"function(doc){emit(doc._id, null);}\"}";
+
+    private static final String VIEWS = "\"views\": {" + ALL_VIEW + "}";
+
+    @Test
+    public void ignoreRevisionOfUnchangedDesign()
+        throws Exception
+    {
+        final JsonObject installed = parse( "{\"_id\": \"_design/app\", \"_rev\": \"3-abc\", " + VIEWS + "}" );
+        final JsonObject wanted = parse( "{\"_id\": \"_design/app\", " + VIEWS + "}" );
+
+        assertThat( CouchManager.designChanged( installed, wanted ), equalTo( false ) );
+    }
+
+    @Test
+    public void upgradeDesignMissingAView()
+        throws Exception
+    {
+        final JsonObject installed = parse( "{\"_id\": \"_design/app\", \"_rev\": \"1-abc\", " + VIEWS + "}" );
+        final JsonObject wanted =
+            parse( "{\"_id\": \"_design/app\", \"views\": {" + ALL_VIEW + ", "
+                + "\"count\": {\"map\": \"function(doc){emit(doc.role, 1);}\", \"reduce\": \"_sum\"}}}" );
+
+        assertThat( CouchManager.designChanged( installed, wanted ), equalTo( true ) );
+    }
+
+    @Test
+    public void upgradeDesignMissingFilters()
+        throws Exception
+    {
+        final JsonObject installed = parse( "{\"_id\": \"_design/app\", \"_rev\": \"1-abc\", " + VIEWS + "}" );
+        final JsonObject wanted =
+            parse( "{\"_id\": \"_design/app\", " + VIEWS
+                + ", \"filters\": {\"deleted\": \"function(doc, req){return doc._deleted;}\"}}" );
+
+        assertThat( CouchManager.designChanged( installed, wanted ), equalTo( true ) );
+    }
+
+    private static JsonObject parse( final String json )
+    {
+        return new JsonParser().parse( json )
+                               .getAsJsonObject();
+    }
+
+}
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.commonjava.couch.io.Serializer;
+import org.commonjava.couch.model.CouchDocRef;
+import org.commonjava.couch.model.CouchDocument;
+import org.junit.Test;
+
+public class DocumentBatcherTest
+{
+
+    @Test
+    public void combineConcurrentGetsIntoOneRequest()
+        throws Exception
+    {
+        final RecordingManager manager = new RecordingManager();
+        final DocumentBatcher batcher = new DocumentBatcher( manager, 3, 5000000 );
+
+        final ExecutorService exec = Executors.newFixedThreadPool( 3 );
+        try
+        {
+            final List<Future<CouchDocRef>> futures = new ArrayList<Future<CouchDocRef>>();
+            for ( final String id : new String[] { "one", "two", "missing" } )
+            {
+                futures.add( exec.submit( new Callable<CouchDocRef>()
+                {
+                    @Override
+                    public CouchDocRef call()
+                        throws Exception
+                    {
+                        return batcher.get( new CouchDocRef( id ), CouchDocRef.class );
+                    }
+                } ) );
+            }
+
+            assertThat( futures.get( 0 )
+                               .get()
+                               .getCouchDocRev(), equalTo( "1-one" ) );
+            assertThat( futures.get( 1 )
+                               .get()
+                               .getCouchDocRev(), equalTo( "1-two" ) );
+            assertThat( futures.get( 2 )
+                               .get(), nullValue() );
+        }
+        finally
+        {
+            exec.shutdownNow();
+        }
+
+        assertThat( manager.requests, equalTo( 1 ) );
+        assertThat( batcher.getBatchCount(), equalTo( 1L ) );
+    }
+
+    @Test
+    public void giveEachCallerForTheSameIdItsOwnDocument()
+        throws Exception
+    {
+        final RecordingManager manager = new RecordingManager();
+        final DocumentBatcher batcher = new DocumentBatcher( manager, 2, 5000000 );
+
+        final List<Future<CouchDocRef>> futures = getConcurrently( batcher, "one", "one" );
+
+        // both callers are waiting in the open batch; a second id fills it.
+        final long end = System.currentTimeMillis() + 5000;
+        while ( batcher.getRequestCount() < 2 && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+
+        futures.addAll( getConcurrently( batcher, "two" ) );
+
+        final CouchDocRef first = futures.get( 0 )
+                                         .get( 5, TimeUnit.SECONDS );
+        final CouchDocRef second = futures.get( 1 )
+                                          .get( 5, TimeUnit.SECONDS );
+
+        assertThat( first.getCouchDocRev(), equalTo( "1-one" ) );
+        assertThat( second.getCouchDocRev(), equalTo( "1-one" ) );
+        assertThat( second, not( sameInstance( first ) ) );
+        assertThat( manager.requests, equalTo( 1 ) );
+    }
+
+    @Test
+    public void completeEveryCallerWhenRetrievalThrowsAnError()
+        throws Exception
+    {
+        final RecordingManager manager = new RecordingManager();
+        manager.error = new Error( "boom" );
+        final DocumentBatcher batcher = new DocumentBatcher( manager, 2, 5000000 );
+
+        int errors = 0;
+        int failures = 0;
+        for ( final Future<CouchDocRef> future : getConcurrently( batcher, "one", "two" ) )
+        {
+            try
+            {
+                future.get( 5, TimeUnit.SECONDS );
+                fail( "Batched retrieval should fail." );
+            }
+            catch ( final ExecutionException e )
+            {
+                if ( e.getCause() instanceof Error )
+                {
+                    errors++;
+                }
+                else
+                {
+                    assertThat( e.getCause(), instanceOf( CouchDBException.class ) );
+                    failures++;
+                }
+            }
+        }
+
+        // the caller that ran the batch sees the Error; everyone else gets a CouchDBException.
+        assertThat( errors, equalTo( 1 ) );
+        assertThat( failures, equalTo( 1 ) );
+    }
+
+    private static List<Future<CouchDocRef>> getConcurrently( final DocumentBatcher batcher, final String... ids )
+    {
+        final ExecutorService exec = Executors.newFixedThreadPool( ids.length );
+        final List<Future<CouchDocRef>> futures = new ArrayList<Future<CouchDocRef>>();
+        for ( final String id : ids )
+        {
+            futures.add( exec.submit( new Callable<CouchDocRef>()
+            {
+                @Override
+                public CouchDocRef call()
+                    throws Exception
+                {
+                    return batcher.get( new CouchDocRef( id ), CouchDocRef.class );
+                }
+            } ) );
+        }
+
+        exec.shutdown();
+        return futures;
+    }
+
+    private static final class RecordingManager
+        extends CouchManager
+    {
+        private int requests;
+
+        private Error error;
+
+        RecordingManager()
+        {
+            super( null, null, new Serializer(), null );
+        }
+
+        @Override
+        public synchronized <T extends CouchDocument> List<T> getDocuments( final Class<T> docType,
+                                                                            final boolean allowMissing,
+                                                                            final CouchDocRef... refs )
+        {
+            requests++;
+            if ( error != null )
+            {
+                throw error;
+            }
+
+            final List<T> docs = new ArrayList<T>();
+            for ( final CouchDocRef ref : refs )
+            {
+                if ( !"missing".equals( ref.getCouchDocId() ) )
+                {
+                    docs.add( docType.cast( new CouchDocRef( ref.getCouchDocId(), "1-" + ref.getCouchDocId() ) ) );
+                }
+            }
+
+            return docs;
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class DocumentCacheTest
+{
+
+    @Test
+    public void rejectNewcomerThatIsLessFrequentThanVictim()
+        throws Exception
+    {
+        final DocumentCache cache = new DocumentCache( 20, 60000 );
+
+        cache.get( "hot" );
+        cache.get( "hot" );
+        assertThat( cache.put( new DocumentCache.Entry( "hot", "1-a", "0123456789" ) ), equalTo( true ) );
+        assertThat( cache.put( new DocumentCache.Entry( "warm", "1-b", "0123456789" ) ), equalTo( true ) );
+
+        cache.get( "cold" );
+        assertThat( cache.put( new DocumentCache.Entry( "cold", "1-c", "0123456789" ) ), equalTo( false ) );
+        assertThat( cache.getStats()
+                         .getRejectionCount(), equalTo( 1L ) );
+        assertThat( cache.get( "hot" ), notNullValue() );
+    }
+
+    @Test
+    public void admitFrequentNewcomerByEvictingVictim()
+        throws Exception
+    {
+        final DocumentCache cache = new DocumentCache( 20, 60000 );
+
+        assertThat( cache.put( new DocumentCache.Entry( "one", "1-a", "0123456789" ) ), equalTo( true ) );
+        assertThat( cache.put( new DocumentCache.Entry( "two", "1-b", "0123456789" ) ), equalTo( true ) );
+
+        for ( int i = 0; i < 5; i++ )
+        {
+            cache.get( "three" );
+        }
+
+        assertThat( cache.put( new DocumentCache.Entry( "three", "1-c", "0123456789" ) ), equalTo( true ) );
+        assertThat( cache.getStats()
+                         .getEvictionCount(), equalTo( 1L ) );
+        assertThat( cache.getWeight(), equalTo( 20L ) );
+        assertThat( cache.get( "one" ), nullValue() );
+    }
+
+    @Test
+    public void evictToFitReplacementThatGrew()
+        throws Exception
+    {
+        final DocumentCache cache = new DocumentCache( 20, 60000 );
+
+        assertThat( cache.put( new DocumentCache.Entry( "one", "1-a", "0123456789" ) ), equalTo( true ) );
+        assertThat( cache.put( new DocumentCache.Entry( "two", "1-b", "0123456789" ) ), equalTo( true ) );
+        assertThat( cache.put( new DocumentCache.Entry( "two", "2-b", "0123456789012345" ) ), equalTo( true ) );
+
+        assertThat( cache.getWeight(), equalTo( 16L ) );
+        assertThat( cache.get( "one" ), nullValue() );
+        assertThat( cache.get( "two" )
+                         .getRevision(), equalTo( "2-b" ) );
+    }
+
+    @Test
+    public void rejectReplacementLargerThanCache()
+        throws Exception
+    {
+        final DocumentCache cache = new DocumentCache( 20, 60000 );
+
+        assertThat( cache.put( new DocumentCache.Entry( "one", "1-a", "0123456789" ) ), equalTo( true ) );
+        assertThat( cache.put( new DocumentCache.Entry( "one", "2-a", "012345678901234567890" ) ), equalTo( false ) );
+
+        assertThat( cache.getWeight(), equalTo( 0L ) );
+        assertThat( cache.get( "one" ), nullValue() );
+        assertThat( cache.getStats()
+                         .getRejectionCount(), equalTo( 1L ) );
+    }
+
+    @Test
+    public void expireFreshnessAfterTtl()
+        throws Exception
+    {
+        final DocumentCache cache = new DocumentCache( 1024, 0 );
+        final DocumentCache.Entry entry = new DocumentCache.Entry( "one", "1-a", "{}" );
+        cache.put( entry );
+
+        assertThat( cache.isFresh( entry ), equalTo( false ) );
+
+        cache.invalidate( "one" );
+        assertThat( cache.size(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void dropReadThatRacedAnInvalidation()
+    {
+        final DocumentCache cache = new DocumentCache( 1000, 30000 );
+
+        final long stamp = cache.stamp( "one" );
+        cache.invalidate( "one" );
+
+        assertThat( cache.put( new DocumentCache.Entry( "one", "1-a", "{}" ), stamp ), equalTo( false ) );
+        assertThat( cache.put( new DocumentCache.Entry( "one", "2-b", "{}" ), cache.stamp( "one" ) ), equalTo( true ) );
+    }
+
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ReadCoalescerTest
+{
+
+    @Test
+    public void shareResultOfOverlappingCalls()
+        throws Exception
+    {
+        final ReadCoalescer coalescer = new ReadCoalescer();
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final AtomicInteger loads = new AtomicInteger();
+
+        final Callable<Object> loader = new Callable<Object>()
+        {
+            @Override
+            public Object call()
+                throws Exception
+            {
+                loads.incrementAndGet();
+                started.countDown();
+                release.await( 5, TimeUnit.SECONDS );
+                return new Object();
+            }
+        };
+
+        final Object[] results = new Object[2];
+        final CouchDBException[] errors = new CouchDBException[2];
+        final Thread leader = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    results[0] = coalescer.execute( "key", loader );
+                }
+                catch ( final CouchDBException e )
+                {
+                    errors[0] = e;
+                }
+            }
+        };
+        leader.start();
+        started.await( 5, TimeUnit.SECONDS );
+
+        final Thread follower = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    results[1] = coalescer.execute( "key", loader );
+                }
+                catch ( final CouchDBException e )
+                {
+                    errors[1] = e;
+                }
+            }
+        };
+        follower.start();
+
+        final long end = System.currentTimeMillis() + 5000;
+        while ( coalescer.getCoalescedCount() < 1 && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+
+        assertThat( coalescer.getCoalescedCount(), equalTo( 1L ) );
+
+        release.countDown();
+        leader.join( 5000 );
+        follower.join( 5000 );
+
+        assertThat( errors[0], nullValue() );
+        assertThat( errors[1], nullValue() );
+        assertThat( loads.get(), equalTo( 1 ) );
+        assertThat( results[1], sameInstance( results[0] ) );
+        assertThat( coalescer.getInFlightCount(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void rethrowLoaderFailure()
+        throws Exception
+    {
+        final ReadCoalescer coalescer = new ReadCoalescer();
+        try
+        {
+            coalescer.execute( "key", new Callable<Object>()
+            {
+                @Override
+                public Object call()
+                    throws Exception
+                {
+                    throw new CouchDBException( "boom" );
+                }
+            } );
+
+            fail( "Loader failure should propagate." );
+        }
+        catch ( final CouchDBException e )
+        {
+            assertThat( e.getMessage(), equalTo( "boom" ) );
+        }
+
+        assertThat( coalescer.getInFlightCount(), equalTo( 0 ) );
+    }
+
+}
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gson.JsonElement;
+
+public class ViewCacheTest
+{
+
+    private static final List<JsonElement> ROWS = Collections.emptyList();
+
+    @Test
+    public void evictLeastRecentlyUsedWhenOverWeight()
+        throws Exception
+    {
+        final ViewCache cache = new ViewCache( 100 );
+
+        cache.put( "one", new ViewCache.Entry( "\"1\"", ROWS, 40 ) );
+        cache.put( "two", new ViewCache.Entry( "\"2\"", ROWS, 40 ) );
+        cache.get( "one" );
+        cache.put( "three", new ViewCache.Entry( "\"3\"", ROWS, 40 ) );
+
+        assertThat( cache.get( "two" ), nullValue() );
+        assertThat( cache.get( "one" ), notNullValue() );
+        assertThat( cache.getWeight(), equalTo( 80L ) );
+        assertThat( cache.getStats()
+                         .getEvictionCount(), equalTo( 1L ) );
+    }
+
+}
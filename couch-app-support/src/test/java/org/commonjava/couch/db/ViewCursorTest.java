@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.commonjava.couch.db.model.ViewPage;
+import org.commonjava.couch.db.model.ViewRequest;
+import org.junit.Test;
+
+public class ViewCursorTest
+{
+
+    @Test
+    public void walkAllPagesByStartKeyWithoutSkipping()
+        throws Exception
+    {
+        final PagingManager manager = new PagingManager( 7 );
+        final ExecutorService exec = Executors.newSingleThreadExecutor();
+
+        final List<String> seen = new ArrayList<String>();
+        final ViewCursor<String> cursor =
+            new ViewCursor<String>( manager, exec, String.class, 3, Collections.singletonMap( ViewRequest.SKIP, "1" ),
+                                    "_all_docs" );
+        try
+        {
+            while ( cursor.hasNext() )
+            {
+                seen.add( cursor.next() );
+            }
+        }
+        finally
+        {
+            cursor.close();
+            exec.shutdownNow();
+        }
+
+        assertThat( seen.size(), equalTo( 7 ) );
+        assertThat( seen.get( 6 ), equalTo( "item-6" ) );
+        assertThat( cursor.getPageCount(), equalTo( 3L ) );
+
+        final List<Map<String, String>> queries = manager.getQueries();
+        assertThat( queries.get( 0 )
+                           .get( ViewRequest.START_KEY ), nullValue() );
+        assertThat( queries.get( 0 )
+                           .get( ViewRequest.SKIP ), equalTo( "1" ) );
+        assertThat( queries.get( 1 )
+                           .get( ViewRequest.START_KEY ), equalTo( "3" ) );
+        assertThat( queries.get( 1 )
+                           .get( ViewRequest.START_KEY_DOCID ), equalTo( "item-3" ) );
+        assertThat( queries.get( 1 )
+                           .get( ViewRequest.SKIP ), nullValue() );
+        assertThat( queries.get( 2 )
+                           .get( ViewRequest.LIMIT ), equalTo( "4" ) );
+    }
+
+    @Test
+    public void closeStopsIteration()
+        throws Exception
+    {
+        final PagingManager manager = new PagingManager( 10 );
+        final ExecutorService exec = Executors.newSingleThreadExecutor();
+
+        final ViewCursor<String> cursor =
+            new ViewCursor<String>( manager, exec, String.class, 2, Collections.<String, String> emptyMap(),
+                                    "_all_docs" );
+        try
+        {
+            cursor.next();
+            cursor.close();
+
+            assertThat( cursor.hasNext(), equalTo( false ) );
+        }
+        finally
+        {
+            exec.shutdownNow();
+        }
+    }
+
+    private static final class PagingManager
+        extends CouchManager
+    {
+        private final int total;
+
+        private final List<Map<String, String>> queries = new ArrayList<Map<String, String>>();
+
+        PagingManager( final int total )
+        {
+            super( null, null, null, null );
+            this.total = total;
+        }
+
+        synchronized List<Map<String, String>> getQueries()
+        {
+            return new ArrayList<Map<String, String>>( queries );
+        }
+
+        @Override
+        synchronized <T> ViewPage<T> getViewPage( final Map<String, String> params, final Class<T> itemType,
+                                                  final int pageSize, final String... path )
+        {
+            queries.add( params );
+
+            final String start = params.get( ViewRequest.START_KEY );
+            int idx = start == null ? 0 : Integer.parseInt( start );
+
+            final List<T> items = new ArrayList<T>();
+            while ( idx < total && items.size() < pageSize )
+            {
+                items.add( itemType.cast( "item-" + idx++ ) );
+            }
+
+            return idx < total ? new ViewPage<T>( items, Integer.toString( idx ), "item-" + idx )
+                            : new ViewPage<T>( items, null, null );
+        }
+    }
+
+}
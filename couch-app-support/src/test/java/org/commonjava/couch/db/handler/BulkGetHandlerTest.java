@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.commonjava.couch.db.model.CouchObjectList;
+import org.commonjava.couch.io.Serializer;
+import org.commonjava.couch.model.CouchDocRef;
+import org.junit.Test;
+
+public class BulkGetHandlerTest
+{
+
+    private static final String SRC = "{\"results\":["
+        + "{\"id\":\"one\",\"docs\":[{\"ok\":{\"_id\":\"one\",\"_rev\":\"1-a\"}}]},"
+        + "{\"id\":\"gone\",\"docs\":[{\"ok\":{\"_id\":\"gone\",\"_rev\":\"2-b\",\"_deleted\":true}}]},"
+        + "{\"id\":\"missing\",\"docs\":[{\"error\":{\"id\":\"missing\",\"error\":\"not_found\"}}]},"
+        + "{\"id\":\"two\",\"docs\":[{\"ok\":{\"_id\":\"two\",\"_rev\":\"3-c\"}}]}]}";
+
+    @Test
+    public void readFoundDocumentsInKeyOrder()
+        throws Exception
+    {
+        final BulkGetHandler<CouchDocRef> handler =
+            new BulkGetHandler<CouchDocRef>( new Serializer(), CouchDocRef.class, true );
+
+        final CouchObjectList<CouchDocRef> listing = handler.handleResponse( response( 200, SRC ) );
+        final List<CouchDocRef> items = listing.getItems();
+
+        assertThat( items.size(), equalTo( 2 ) );
+        assertThat( items.get( 0 )
+                         .getCouchDocId(), equalTo( "one" ) );
+        assertThat( items.get( 1 )
+                         .getCouchDocRev(), equalTo( "3-c" ) );
+    }
+
+    @Test
+    public void failOnMissingWhenNotAllowed()
+        throws Exception
+    {
+        final BulkGetHandler<CouchDocRef> handler =
+            new BulkGetHandler<CouchDocRef>( new Serializer(), CouchDocRef.class, false );
+
+        assertThat( handler.handleResponse( response( 200, SRC ) ), nullValue() );
+        assertThat( handler.getError(), notNullValue() );
+    }
+
+    @Test
+    public void flagOlderServersAsUnsupported()
+        throws Exception
+    {
+        final BulkGetHandler<CouchDocRef> handler =
+            new BulkGetHandler<CouchDocRef>( new Serializer(), CouchDocRef.class, true );
+
+        assertThat( handler.handleResponse( response( 405, "{\"error\":\"method_not_allowed\"}" ) ), nullValue() );
+        assertThat( handler.isUnsupported(), equalTo( true ) );
+        assertThat( handler.getError(), nullValue() );
+    }
+
+    private BasicHttpResponse response( final int code, final String body )
+        throws Exception
+    {
+        final BasicHttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, code, "" );
+        response.setEntity( new ByteArrayEntity( body.getBytes( "UTF-8" ) ) );
+        return response;
+    }
+
+}
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.commonjava.couch.db.model.BulkResult;
+import org.junit.Test;
+
+public class BulkResultHandlerTest
+{
+
+    @Test
+    public void parsePerDocumentOutcomes()
+        throws Exception
+    {
+        final String src =
+            "[{\"ok\":true,\"id\":\"one\",\"rev\":\"2-abc\"},"
+                + "{\"id\":\"two\",\"error\":\"conflict\",\"reason\":\"Document update conflict.\"}]";
+
+        final BasicHttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, 201, "Created" );
+        response.setEntity( new ByteArrayEntity( src.getBytes( "UTF-8" ) ) );
+
+        final BulkResult result = new BulkResultHandler().handleResponse( response );
+
+        assertThat( result.size(), equalTo( 2 ) );
+        assertThat( result.hasFailures(), equalTo( true ) );
+        assertThat( result.getResults()
+                          .get( 0 )
+                          .getRev(), equalTo( "2-abc" ) );
+        assertThat( result.getConflicts()
+                          .get( 0 )
+                          .getId(), equalTo( "two" ) );
+    }
+
+}
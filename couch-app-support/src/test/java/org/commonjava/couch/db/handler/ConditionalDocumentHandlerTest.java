@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.commonjava.couch.db.DocumentCache;
+import org.commonjava.couch.io.Serializer;
+import org.junit.Test;
+
+public class ConditionalDocumentHandlerTest
+{
+
+    @Test
+    public void reuseCachedEntryOnNotModified()
+        throws Exception
+    {
+        final DocumentCache.Entry cached = new DocumentCache.Entry( "one", "1-abc", "{\"_id\":\"one\"}" );
+
+        final BasicHttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, 304, "Not Modified" );
+        final ConditionalDocumentHandler handler = new ConditionalDocumentHandler( new Serializer(), "one", cached );
+
+        assertThat( handler.handleResponse( response ), sameInstance( cached ) );
+        assertThat( handler.isNotModified(), equalTo( true ) );
+    }
+
+    @Test
+    public void captureBodyAndRevisionOnOk()
+        throws Exception
+    {
+        final String src = "{\"_id\":\"one\",\"_rev\":\"2-def\"}";
+
+        final BasicHttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, 200, "OK" );
+        response.setHeader( "ETag", "\"2-def\"" );
+        response.setEntity( new ByteArrayEntity( src.getBytes( "UTF-8" ) ) );
+
+        final DocumentCache.Entry entry =
+            new ConditionalDocumentHandler( new Serializer(), "one", null ).handleResponse( response );
+
+        assertThat( entry.getRevision(), equalTo( "2-def" ) );
+        assertThat( entry.getJson(), equalTo( src ) );
+    }
+
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.commonjava.couch.fixture.TestUser;
+import org.commonjava.couch.io.Serializer;
+import org.commonjava.couch.model.CouchDocRef;
+import org.junit.Test;
+
+public class DocumentGetHandlerTest
+{
+
+    @Test
+    public void notFoundReturnsNullWithoutError()
+        throws Exception
+    {
+        final BasicHttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, 404, "Object Not Found" );
+        response.setEntity( new ByteArrayEntity( "{\"error\":\"not_found\",\"reason\":\"missing\"}".getBytes( "UTF-8" ) ) );
+
+        final DocumentGetHandler<TestUser> handler =
+            new DocumentGetHandler<TestUser>( new Serializer(), TestUser.class, new CouchDocRef( "user" ) );
+
+        assertThat( handler.handleResponse( response ), nullValue() );
+        assertThat( handler.getError(), nullValue() );
+    }
+
+    @Test
+    public void revisionTakenFromETagWhenBodyLacksIt()
+        throws Exception
+    {
+        final BasicHttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, 200, "OK" );
+        response.setHeader( "ETag", "\"2-abcdef\"" );
+        response.setEntity( new ByteArrayEntity( "{\"_id\":\"user\",\"username\":\"user\"}".getBytes( "UTF-8" ) ) );
+
+        final CouchDocRef ref = new CouchDocRef( "user" );
+        final TestUser user =
+            new DocumentGetHandler<TestUser>( new Serializer(), TestUser.class, ref ).handleResponse( response );
+
+        assertThat( user.getCouchDocRev(), equalTo( "2-abcdef" ) );
+        assertThat( ref.getCouchDocRev(), equalTo( "2-abcdef" ) );
+    }
+
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.commonjava.couch.db.model.BulkResult.DocumentResult;
+import org.junit.Test;
+
+public class DocumentWriteHandlerTest
+{
+
+    @Test
+    public void conflictIsReportedAsResultNotError()
+        throws Exception
+    {
+        final BasicHttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, 409, "Conflict" );
+        response.setEntity( new ByteArrayEntity(
+                                                 "{\"error\":\"conflict\",\"reason\":\"Document update conflict.\"}".getBytes( "UTF-8" ) ) );
+
+        final DocumentWriteHandler handler = new DocumentWriteHandler( "doc" );
+        final DocumentResult result = handler.handleResponse( response );
+
+        assertThat( handler.getError(), nullValue() );
+        assertThat( result.isConflict(), equalTo( true ) );
+        assertThat( result.getId(), equalTo( "doc" ) );
+    }
+
+    @Test
+    public void createdYieldsNewRevision()
+        throws Exception
+    {
+        final BasicHttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, 201, "Created" );
+        response.setEntity( new ByteArrayEntity( "{\"ok\":true,\"id\":\"doc\",\"rev\":\"3-abc\"}".getBytes( "UTF-8" ) ) );
+
+        final DocumentResult result = new DocumentWriteHandler( "doc" ).handleResponse( response );
+
+        assertThat( result.isSuccess(), equalTo( true ) );
+        assertThat( result.getRev(), equalTo( "3-abc" ) );
+    }
+
+}
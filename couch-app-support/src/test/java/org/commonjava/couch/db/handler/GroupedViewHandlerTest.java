@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.commonjava.couch.io.Serializer;
+import org.commonjava.couch.model.CouchDocRef;
+import org.junit.Test;
+
+public class GroupedViewHandlerTest
+{
+
+    @Test
+    public void groupRowsByKeyAcrossChunks()
+        throws Exception
+    {
+        final Map<String, List<CouchDocRef>> groups = new LinkedHashMap<String, List<CouchDocRef>>();
+        final GroupedViewHandler<String, CouchDocRef> handler =
+            new GroupedViewHandler<String, CouchDocRef>( new Serializer(), String.class, CouchDocRef.class, groups );
+
+        handler.handleResponse( response( "{\"rows\":["
+            + "{\"id\":\"role:admin\",\"key\":\"admin\",\"value\":{},\"doc\":{\"_id\":\"permission:a\"}},"
+            + "{\"id\":\"role:admin\",\"key\":\"admin\",\"value\":{},\"doc\":{\"_id\":\"permission:b\"}}]}" ) );
+
+        handler.handleResponse( response( "{\"rows\":["
+            + "{\"id\":\"role:user\",\"key\":\"user\",\"value\":{},\"doc\":null}]}" ) );
+
+        assertThat( groups.size(), equalTo( 2 ) );
+        assertThat( groups.get( "admin" )
+                          .size(), equalTo( 2 ) );
+        assertThat( groups.get( "admin" )
+                          .get( 1 )
+                          .getCouchDocId(), equalTo( "permission:b" ) );
+        assertThat( groups.get( "user" )
+                          .isEmpty(), equalTo( true ) );
+    }
+
+    private BasicHttpResponse response( final String body )
+        throws Exception
+    {
+        final BasicHttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, 200, "OK" );
+        response.setEntity( new ByteArrayEntity( body.getBytes( "UTF-8" ) ) );
+        return response;
+    }
+
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.commonjava.couch.db.model.ReduceStats;
+import org.commonjava.couch.io.Serializer;
+import org.junit.Test;
+
+public class ReducedViewHandlerTest
+{
+
+    @Test
+    public void readGroupedCounts()
+        throws Exception
+    {
+        final Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        final ReducedViewHandler<String, Long> handler =
+            new ReducedViewHandler<String, Long>( new Serializer(), String.class, Long.class, counts );
+
+        handler.handleResponse( response( "{\"rows\":[{\"key\":\"admin\",\"value\":2},"
+            + "{\"key\":\"user\",\"value\":40}]}" ) );
+
+        assertThat( counts.size(), equalTo( 2 ) );
+        assertThat( counts.get( "user" ), equalTo( 40L ) );
+    }
+
+    @Test
+    public void readUngroupedStats()
+        throws Exception
+    {
+        final Map<String, ReduceStats> stats = new LinkedHashMap<String, ReduceStats>();
+        final ReducedViewHandler<String, ReduceStats> handler =
+            new ReducedViewHandler<String, ReduceStats>( new Serializer(), String.class, ReduceStats.class, stats );
+
+        handler.handleResponse( response( "{\"rows\":[{\"key\":null,\"value\":"
+            + "{\"sum\":10,\"count\":4,\"min\":1,\"max\":4,\"sumsqr\":30}}]}" ) );
+
+        final ReduceStats value = stats.get( null );
+        assertThat( value.getCount(), equalTo( 4L ) );
+        assertThat( value.getSumOfSquares(), equalTo( 30.0 ) );
+        assertThat( value.getMean(), equalTo( 2.5 ) );
+    }
+
+    private BasicHttpResponse response( final String body )
+        throws Exception
+    {
+        final BasicHttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, 200, "OK" );
+        response.setEntity( new ByteArrayEntity( body.getBytes( "UTF-8" ) ) );
+        return response;
+    }
+
+}
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Map;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.commonjava.couch.io.Serializer;
+import org.junit.Test;
+
+public class RevisionMapHandlerTest
+{
+
+    @Test
+    public void skipMissingAndDeletedRows()
+        throws Exception
+    {
+        final String src =
+            "{\"total_rows\":3,\"rows\":[\n"
+                + "{\"id\":\"one\",\"key\":\"one\",\"value\":{\"rev\":\"1-abc\"}},\n"
+                + "{\"key\":\"two\",\"error\":\"not_found\"},\n"
+                + "{\"id\":\"three\",\"key\":\"three\",\"value\":{\"rev\":\"2-def\",\"deleted\":true}}\n"
+                + "]}";
+
+        final BasicHttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, 200, "OK" );
+        response.setEntity( new ByteArrayEntity( src.getBytes( "UTF-8" ) ) );
+
+        final Map<String, String> revs = new RevisionMapHandler( new Serializer() ).handleResponse( response );
+
+        assertThat( revs.size(), equalTo( 1 ) );
+        assertThat( revs.get( "one" ), equalTo( "1-abc" ) );
+    }
+
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.commonjava.couch.fixture.TestUser;
+import org.commonjava.couch.io.Serializer;
+import org.junit.Test;
+
+public class SerializedGetHandlerTest
+{
+
+    @Test
+    public void deserializeUsingEntityCharset()
+        throws Exception
+    {
+        final String json = "{\"username\":\"user\",\"first\":\"J\u00f6rg\",\"_id\":\"user\"}";
+
+        final BasicHttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, 200, "OK" );
+        final ByteArrayEntity entity = new ByteArrayEntity( json.getBytes( "ISO-8859-1" ) );
+        entity.setContentType( "application/json; charset=ISO-8859-1" );
+        response.setEntity( entity );
+
+        final SerializedGetHandler<TestUser> handler =
+            new SerializedGetHandler<TestUser>( new Serializer(), TestUser.class );
+
+        final TestUser user = handler.handleResponse( response );
+
+        assertThat( handler.getError(), nullValue() );
+        assertThat( user.getUsername(), equalTo( "user" ) );
+        assertThat( user.getFirst(), equalTo( "J\u00f6rg" ) );
+    }
+
+    @Test
+    public void errorStatusProducesCouchError()
+        throws Exception
+    {
+        final BasicHttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, 404, "Object Not Found" );
+        response.setEntity( new ByteArrayEntity( "{\"error\":\"not_found\",\"reason\":\"missing\"}".getBytes( "UTF-8" ) ) );
+
+        final SerializedGetHandler<TestUser> handler =
+            new SerializedGetHandler<TestUser>( new Serializer(), TestUser.class );
+
+        assertThat( handler.handleResponse( response ), nullValue() );
+        assertThat( handler.getError(), notNullValue() );
+    }
+
+}
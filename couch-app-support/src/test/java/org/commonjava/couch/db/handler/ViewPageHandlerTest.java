@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.commonjava.couch.db.model.ViewPage;
+import org.commonjava.couch.io.Serializer;
+import org.commonjava.couch.model.CouchDocRef;
+import org.junit.Test;
+
+public class ViewPageHandlerTest
+{
+
+    private static final String SRC = "{\"total_rows\":3,\"offset\":0,\"rows\":["
+        + "{\"id\":\"a\",\"key\":[\"x\",1],\"value\":null,\"doc\":{\"_id\":\"a\",\"_rev\":\"1-a\"}},"
+        + "{\"id\":\"b\",\"key\":[\"x\",2],\"value\":null,\"doc\":{\"_id\":\"b\",\"_rev\":\"1-b\"}},"
+        + "{\"id\":\"c\",\"key\":[\"x\",2],\"value\":null,\"doc\":{\"_id\":\"c\",\"_rev\":\"1-c\"}}]}";
+
+    @Test
+    public void holdBackTheExtraRowAsTheNextStartKey()
+        throws Exception
+    {
+        final ViewPageHandler<CouchDocRef> handler =
+            new ViewPageHandler<CouchDocRef>( new Serializer(), CouchDocRef.class, 2 );
+
+        final ViewPage<CouchDocRef> page = handler.handleResponse( response( SRC ) );
+
+        assertThat( page.getItems()
+                        .size(), equalTo( 2 ) );
+        assertThat( page.getItems()
+                        .get( 1 )
+                        .getCouchDocId(), equalTo( "b" ) );
+        assertThat( page.getNextKey(), equalTo( "[\"x\",2]" ) );
+        assertThat( page.getNextDocId(), equalTo( "c" ) );
+    }
+
+    @Test
+    public void shortPageIsTheLastOne()
+        throws Exception
+    {
+        final ViewPageHandler<CouchDocRef> handler =
+            new ViewPageHandler<CouchDocRef>( new Serializer(), CouchDocRef.class, 5 );
+
+        final ViewPage<CouchDocRef> page = handler.handleResponse( response( SRC ) );
+
+        assertThat( page.getItems()
+                        .size(), equalTo( 3 ) );
+        assertThat( page.hasNext(), equalTo( false ) );
+        assertThat( page.getNextDocId(), nullValue() );
+    }
+
+    private BasicHttpResponse response( final String body )
+        throws Exception
+    {
+        final BasicHttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, 200, "OK" );
+        response.setEntity( new ByteArrayEntity( body.getBytes( "UTF-8" ) ) );
+        return response;
+    }
+
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.db.handler;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.commonjava.couch.db.model.CouchObjectList;
+import org.commonjava.couch.io.Serializer;
+import org.commonjava.couch.io.json.CouchObjectListReader;
+import org.commonjava.couch.model.CouchDocRef;
+import org.junit.Test;
+
+public class ViewResultHandlerTest
+{
+
+    @Test
+    public void flagNotModifiedWithoutParsing()
+        throws Exception
+    {
+        final Serializer serializer = new Serializer();
+        final ViewResultHandler<CouchDocRef> handler =
+            new ViewResultHandler<CouchDocRef>( serializer, new CouchObjectListReader<CouchDocRef>( serializer,
+                                                                                                    CouchDocRef.class,
+                                                                                                    false ) );
+
+        final BasicHttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, 304, "Not Modified" );
+
+        assertThat( handler.handleResponse( response ), nullValue() );
+        assertThat( handler.isNotModified(), equalTo( true ) );
+    }
+
+    @Test
+    public void captureEtagAndSizeOfRows()
+        throws Exception
+    {
+        final String src = "{\"total_rows\":1,\"rows\":[{\"id\":\"one\",\"doc\":{\"_id\":\"one\",\"_rev\":\"1-a\"}}]}";
+        final byte[] body = src.getBytes( "UTF-8" );
+
+        final BasicHttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, 200, "OK" );
+        response.setHeader( "ETag", "\"abc\"" );
+        response.setEntity( new ByteArrayEntity( body ) );
+
+        final Serializer serializer = new Serializer();
+        final ViewResultHandler<CouchDocRef> handler =
+            new ViewResultHandler<CouchDocRef>( serializer, new CouchObjectListReader<CouchDocRef>( serializer,
+                                                                                                    CouchDocRef.class,
+                                                                                                    false ) );
+
+        final CouchObjectList<CouchDocRef> listing = handler.handleResponse( response );
+
+        assertThat( listing.getItems()
+                           .size(), equalTo( 1 ) );
+        assertThat( handler.getEtag(), equalTo( "\"abc\"" ) );
+        assertThat( handler.getBytesRead(), equalTo( (long) body.length ) );
+    }
+
+    @Test
+    public void captureBodyForCachingAndStillParseRows()
+        throws Exception
+    {
+        final String src = "{\"total_rows\":1,\"rows\":[{\"id\":\"one\",\"doc\":{\"_id\":\"one\",\"_rev\":\"1-a\"}}]}";
+        final byte[] body = src.getBytes( "UTF-8" );
+
+        final ViewResultHandler<CouchDocRef> handler = newCapturingHandler( 1024 );
+        final CouchObjectList<CouchDocRef> listing = handler.handleResponse( newResponse( body ) );
+
+        assertThat( listing.getItems()
+                           .size(), equalTo( 1 ) );
+        assertThat( new String( handler.getBody(), handler.getCharset() ), equalTo( src ) );
+        assertThat( handler.getBytesRead(), equalTo( (long) body.length ) );
+    }
+
+    @Test
+    public void streamBodyLargerThanCaptureLimitWithoutKeepingIt()
+        throws Exception
+    {
+        final String src = "{\"total_rows\":1,\"rows\":[{\"id\":\"one\",\"doc\":{\"_id\":\"one\",\"_rev\":\"1-a\"}}]}";
+        final byte[] body = src.getBytes( "UTF-8" );
+
+        final ViewResultHandler<CouchDocRef> handler = newCapturingHandler( body.length - 1 );
+        final CouchObjectList<CouchDocRef> listing = handler.handleResponse( newResponse( body ) );
+
+        assertThat( listing.getItems()
+                           .size(), equalTo( 1 ) );
+        assertThat( handler.getBody(), nullValue() );
+        assertThat( handler.getBytesRead(), equalTo( (long) body.length ) );
+    }
+
+    private static ViewResultHandler<CouchDocRef> newCapturingHandler( final long limit )
+    {
+        final Serializer serializer = new Serializer();
+        return new ViewResultHandler<CouchDocRef>( serializer,
+                                                   new CouchObjectListReader<CouchDocRef>( serializer,
+                                                                                           CouchDocRef.class, false ),
+                                                   limit );
+    }
+
+    private static BasicHttpResponse newResponse( final byte[] body )
+    {
+        final BasicHttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, 200, "OK" );
+        response.setHeader( "ETag", "\"abc\"" );
+        response.setEntity( new ByteArrayEntity( body ) );
+        return response;
+    }
+
+}
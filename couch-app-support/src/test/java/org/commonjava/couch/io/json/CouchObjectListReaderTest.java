@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright 2011 John Casey
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.commonjava.couch.io.json;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.commonjava.couch.io.Serializer;
+import org.commonjava.couch.model.CouchDocRef;
+import org.junit.Test;
+
+import com.google.gson.JsonElement;
+
+public class CouchObjectListReaderTest
+{
+
+    @Test
+    public void bindNewObjectsFromTheSameElements()
+        throws Exception
+    {
+        final String src =
+            "{\"total_rows\":2,\"rows\":[{\"id\":\"one\",\"doc\":{\"_id\":\"one\",\"_rev\":\"1-a\"}},"
+                + "{\"id\":\"two\",\"doc\":null}]}";
+
+        final CouchObjectListReader<CouchDocRef> reader =
+            new CouchObjectListReader<CouchDocRef>( new Serializer(), CouchDocRef.class, true );
+
+        final List<JsonElement> rows = reader.readElements( new StringReader( src ) );
+        assertThat( rows.size(), equalTo( 1 ) );
+
+        final CouchDocRef first = reader.bind( rows )
+                                        .getItems()
+                                        .get( 0 );
+        final CouchDocRef second = reader.bind( rows )
+                                         .getItems()
+                                         .get( 0 );
+
+        assertThat( first.getCouchDocId(), equalTo( "one" ) );
+        assertThat( first.getCouchDocRev(), equalTo( "1-a" ) );
+        assertThat( second, not( sameInstance( first ) ) );
+    }
+
+}
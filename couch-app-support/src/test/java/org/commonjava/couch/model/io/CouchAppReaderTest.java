@@ -15,12 +15,17 @@
  ******************************************************************************/
 package org.commonjava.couch.model.io;
 
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
 import java.io.IOException;
 
 import org.commonjava.couch.db.CouchDBException;
 import org.commonjava.couch.db.model.SimpleAppDescription;
 import org.commonjava.couch.io.CouchAppReader;
 import org.commonjava.couch.model.CouchApp;
+import org.commonjava.couch.model.CouchAppView;
 import org.junit.Test;
 
 public class CouchAppReaderTest
@@ -36,4 +41,37 @@ public class CouchAppReaderTest
         System.out.println( app );
     }
 
+    @Test
+    public void recognizeBuiltinReducer()
+        throws IOException, CouchDBException
+    {
+        CouchApp app =
+            new CouchAppReader().readAppDefinition( new SimpleAppDescription( "test-app", "test-app", "test-view",
+                                                                              "count-view" ) );
+
+        CouchAppView counted = app.getViews()
+                                  .get( "count-view" );
+
+        assertThat( counted.getReduce(), equalTo( CouchAppView.COUNT ) );
+        assertThat( counted.isBuiltinReduce(), equalTo( true ) );
+        assertThat( app.getViews()
+                       .get( "test-view" )
+                       .getReduce(), nullValue() );
+    }
+
+    @Test
+    public void readFilterFunction()
+        throws IOException, CouchDBException
+    {
+        SimpleAppDescription description = new SimpleAppDescription( "test-app" );
+        description.addFilterName( "deleted-only" );
+
+        CouchApp app = new CouchAppReader().readAppDefinition( description );
+
+        assertThat( app.getFilters()
+                       .get( "deleted-only" )
+                       .trim()
+                       .startsWith( "function( doc, req )" ), equalTo( true ) );
+    }
+
 }
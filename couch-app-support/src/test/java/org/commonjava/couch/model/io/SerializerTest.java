@@ -19,7 +19,10 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.junit.Assert.assertThat;
 
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,15 +34,19 @@ import org.commonjava.couch.db.action.StoreAction;
 import org.commonjava.couch.db.model.CouchDocRefSet;
 import org.commonjava.couch.db.model.CouchObjectList;
 import org.commonjava.couch.db.model.SimpleAppDescription;
+import org.commonjava.couch.db.model.ViewKeys;
 import org.commonjava.couch.fixture.TestUser;
+import org.commonjava.couch.io.JsonEntity;
 import org.commonjava.couch.io.Serializer;
 import org.commonjava.couch.io.json.CouchObjectListDeserializer;
+import org.commonjava.couch.io.json.CouchObjectListReader;
 import org.commonjava.couch.model.CouchApp;
 import org.commonjava.couch.model.CouchAppView;
 import org.commonjava.couch.model.CouchDocRef;
 import org.commonjava.couch.model.CouchDocument;
 import org.junit.Test;
 
+import com.google.gson.JsonParseException;
 import com.google.gson.annotations.SerializedName;
 import com.google.gson.reflect.TypeToken;
 
@@ -160,6 +167,42 @@ public class SerializerTest
         System.out.println( new Serializer().toString( new BulkActionHolder( actions, true ) ) );
     }
 
+    @Test
+    public void streamBulkModifyMatchesStringForm()
+        throws Exception
+    {
+        final List<CouchDocumentAction> actions = new ArrayList<CouchDocumentAction>();
+        actions.add( new StoreAction( new TestDoc( "one", null, "field-one" ), false ) );
+        actions.add( new DeleteAction( new TestDoc( "two", "1-1234", "field-two" ) ) );
+
+        final Serializer serializer = new Serializer();
+        final BulkActionHolder bulk = new BulkActionHolder( actions, true );
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final JsonEntity entity = new JsonEntity( serializer, bulk );
+        entity.writeTo( out );
+
+        assertThat( entity.isChunked(), equalTo( true ) );
+        assertThat( entity.isRepeatable(), equalTo( true ) );
+        assertThat( new String( out.toByteArray(), "UTF-8" ), equalTo( serializer.toString( bulk ) ) );
+    }
+
+    @Test
+    public void streamTypedViewKeys()
+        throws Exception
+    {
+        final List<Object> keys = new ArrayList<Object>();
+        keys.add( "admin" );
+        keys.add( 3 );
+        keys.add( Arrays.asList( "role", "admin" ) );
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonEntity( new Serializer(), new ViewKeys( keys ) ).writeTo( out );
+
+        assertThat( new String( out.toByteArray(), "UTF-8" ),
+                    equalTo( "{\"keys\":[\"admin\",3,[\"role\",\"admin\"]]}" ) );
+    }
+
     @Test
     public void serializeApp()
     {
@@ -171,6 +214,70 @@ public class SerializerTest
                                                                                                "test-view" ) ) ) );
     }
 
+    @Test
+    public void streamObjectList()
+        throws Exception
+    {
+        final String src =
+            "{\"total_rows\":3,\"offset\":0,\"rows\":[\n"
+                + "{\"key\":\"username\",\"value\":\"2-abcdef012345678\",\"doc\":{\"username\":\"username\",\"first\":\"first\",\"last\":\"last\",\"email\":\"email@nowhere.com\",\"_id\":\"username\"}},\n"
+                + "{\"key\":\"missing\",\"error\":\"not_found\"},\n"
+                + "{\"key\":\"deleted\",\"value\":{\"rev\":\"2-abc\",\"deleted\":true},\"doc\":null},\n"
+                + "{\"key\":\"username2\",\"value\":\"3-bdefca34567216\",\"doc\":{\"username\":\"username2\",\"first\":\"first2\",\"last\":\"last2\",\"email\":\"email2@nowhere.com\",\"_id\":\"username2\"}}"
+                + "]}";
+
+        final CouchObjectList<TestUser> listing =
+            new CouchObjectListReader<TestUser>( new Serializer(), TestUser.class, true ).read( new StringReader( src ) );
+
+        final List<TestUser> users = listing.getItems();
+        assertThat( users.size(), equalTo( 2 ) );
+        assertThat( users.get( 0 )
+                         .getUsername(), equalTo( "username" ) );
+        assertThat( users.get( 1 )
+                         .getUsername(), equalTo( "username2" ) );
+    }
+
+    @Test( expected = JsonParseException.class )
+    public void streamObjectListFailsOnMissingDocWhenNotAllowed()
+        throws Exception
+    {
+        final String src = "{\"rows\":[{\"key\":\"missing\",\"error\":\"not_found\"}]}";
+
+        new CouchObjectListReader<TestUser>( new Serializer(), TestUser.class, false ).read( new StringReader( src ) );
+    }
+
+    @Test
+    public void reuseGsonForEquivalentAdapters()
+    {
+        final String src =
+            "{\"total_rows\":1,\"offset\":0,\"rows\":[\n"
+                + "{\"key\":\"username\",\"value\":\"2-abcdef012345678\",\"doc\":{\"username\":\"username\",\"first\":\"first\",\"last\":\"last\",\"email\":\"email@nowhere.com\",\"_id\":\"username\"}}"
+                + "]}";
+
+        final TypeToken<CouchObjectList<TestUser>> tt = new TypeToken<CouchObjectList<TestUser>>()
+        {
+        };
+
+        final Serializer serializer = new Serializer();
+        for ( int i = 0; i < 3; i++ )
+        {
+            final CouchObjectList<TestUser> listing =
+                serializer.fromJson( src, tt.getType(),
+                                     new CouchObjectListDeserializer<TestUser>( tt, TestUser.class, false ) );
+
+            assertThat( listing.getItems()
+                               .size(), equalTo( 1 ) );
+        }
+
+        assertThat( serializer.getCachedGsonCount(), equalTo( 1 ) );
+
+        serializer.toString( new TestDoc( "id", null, "value" ) );
+        assertThat( serializer.getCachedGsonCount(), equalTo( 2 ) );
+
+        serializer.registerSerializationAdapters( new CouchObjectListDeserializer<TestUser>( tt, TestUser.class, true ) );
+        assertThat( serializer.getCachedGsonCount(), equalTo( 0 ) );
+    }
+
     public class TestDoc
         implements CouchDocument
     {
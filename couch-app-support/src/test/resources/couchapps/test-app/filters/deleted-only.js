@@ -0,0 +1,4 @@
+// passes only deletions
+function( doc, req ){
+  return doc._deleted == true;
+}
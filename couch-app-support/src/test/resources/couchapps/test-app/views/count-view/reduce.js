@@ -0,0 +1,2 @@
+// counts documents natively
+_count
@@ -17,27 +17,27 @@ package org.commonjava.auth.couch.change;
 
 import static org.commonjava.couch.util.IdUtils.nonNamespaceId;
 
-import java.util.Set;
-
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.commonjava.auth.couch.change.event.UserManagerDeleteEvent;
 import org.commonjava.auth.couch.change.event.UserManagerDeleteEvent.Type;
+import org.commonjava.auth.couch.data.UserAppDescription.Filter;
 import org.commonjava.auth.couch.data.UserDataException;
 import org.commonjava.auth.couch.data.UserDataManager;
+import org.commonjava.couch.change.ChangeFilter;
 import org.commonjava.couch.change.CouchDocChange;
+import org.commonjava.couch.change.dispatch.ChangeFilterSource;
 import org.commonjava.couch.change.dispatch.CouchChangeJ2EEEvent;
 import org.commonjava.couch.change.dispatch.ThreadableListener;
 import org.commonjava.couch.rbac.Permission;
-import org.commonjava.couch.rbac.Role;
 import org.commonjava.couch.util.ChangeSynchronizer;
 import org.commonjava.util.logging.Logger;
 
 @Singleton
 public class PermissionDeletionListener
-    implements ThreadableListener
+    implements ThreadableListener, ChangeFilterSource
 {
 
     private final Logger logger = new Logger( getClass() );
@@ -53,6 +53,12 @@ public class PermissionDeletionListener
         return deleted && id.startsWith( Permission.NAMESPACE );
     }
 
+    @Override
+    public ChangeFilter getChangeFilter()
+    {
+        return Filter.DELETED_SECURITY_DATA.changeFilter();
+    }
+
     @Override
     public void documentChanged( final CouchDocChange change )
     {
@@ -68,13 +74,7 @@ public class PermissionDeletionListener
         boolean changed = false;
         try
         {
-            final Set<Role> roles = dataManager.getRolesForPermission( permission );
-            for ( final Role role : roles )
-            {
-                changed = role.removePermission( permission ) || changed;
-            }
-
-            dataManager.storeRoles( roles );
+            changed = dataManager.removePermissionFromRoles( permission );
         }
         catch ( final UserDataException e )
         {
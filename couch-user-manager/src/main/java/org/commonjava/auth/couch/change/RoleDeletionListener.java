@@ -17,27 +17,27 @@ package org.commonjava.auth.couch.change;
 
 import static org.commonjava.couch.util.IdUtils.nonNamespaceId;
 
-import java.util.Set;
-
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.commonjava.auth.couch.change.event.UserManagerDeleteEvent;
 import org.commonjava.auth.couch.change.event.UserManagerDeleteEvent.Type;
+import org.commonjava.auth.couch.data.UserAppDescription.Filter;
 import org.commonjava.auth.couch.data.UserDataException;
 import org.commonjava.auth.couch.data.UserDataManager;
+import org.commonjava.couch.change.ChangeFilter;
 import org.commonjava.couch.change.CouchDocChange;
+import org.commonjava.couch.change.dispatch.ChangeFilterSource;
 import org.commonjava.couch.change.dispatch.CouchChangeJ2EEEvent;
 import org.commonjava.couch.change.dispatch.ThreadableListener;
 import org.commonjava.couch.rbac.Role;
-import org.commonjava.couch.rbac.User;
 import org.commonjava.couch.util.ChangeSynchronizer;
 import org.commonjava.util.logging.Logger;
 
 @Singleton
 public class RoleDeletionListener
-    implements ThreadableListener
+    implements ThreadableListener, ChangeFilterSource
 {
 
     private final Logger logger = new Logger( getClass() );
@@ -53,6 +53,13 @@ public class RoleDeletionListener
         return deleted && id.startsWith( Role.NAMESPACE );
     }
 
+    // PermissionDeletionListener declares the same filter, so a dispatcher serving both can still use it.
+    @Override
+    public ChangeFilter getChangeFilter()
+    {
+        return Filter.DELETED_SECURITY_DATA.changeFilter();
+    }
+
     @Override
     public void documentChanged( final CouchDocChange change )
     {
@@ -64,13 +71,7 @@ public class RoleDeletionListener
     {
         try
         {
-            final Set<User> users = dataManager.getUsersForRole( role );
-            for ( final User user : users )
-            {
-                user.removeRole( role );
-            }
-
-            dataManager.storeUsers( users );
+            dataManager.removeRoleFromUsers( role );
             changeSync.setChanged();
         }
         catch ( final UserDataException e )
@@ -131,7 +131,8 @@ public class DefaultUserManagerConfig
     {
         if ( dbConfig == null )
         {
-            dbConfig = new DefaultCouchDBConfiguration( getDatabaseUrl(), getMaxConnections() );
+            // carries the db.* cache, read and change-feed settings of the user-manager section along
+            dbConfig = new DefaultCouchDBConfiguration( this );
         }
 
         return dbConfig;
@@ -18,6 +18,7 @@ package org.commonjava.auth.couch.data;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.commonjava.couch.change.ChangeFilter;
 import org.commonjava.couch.db.model.AppDescription;
 
 public class UserAppDescription
@@ -34,6 +35,7 @@ public class UserAppDescription
         USER_ROLES( "user-roles" ),
         ROLE_PERMISSIONS( "role-permissions" ),
         ROLE_USERS( "role-users" ),
+        ROLE_USER_COUNT( "role-user-count" ),
         PERMISSION_ROLES( "permission-roles" );
 
         String name;
@@ -49,8 +51,32 @@ public class UserAppDescription
         }
     }
 
+    public enum Filter
+    {
+        DELETED_SECURITY_DATA( "deleted-security-data" );
+
+        String name;
+
+        private Filter( final String name )
+        {
+            this.name = name;
+        }
+
+        public String filterName()
+        {
+            return name;
+        }
+
+        public ChangeFilter changeFilter()
+        {
+            return ChangeFilter.design( APP_NAME, name );
+        }
+    }
+
     private static Set<String> viewNames;
 
+    private static Set<String> filterNames;
+
     @Override
     public String getAppName()
     {
@@ -80,4 +106,21 @@ public class UserAppDescription
         return viewNames;
     }
 
+    @Override
+    public Set<String> getFilterNames()
+    {
+        if ( filterNames == null )
+        {
+            Set<String> names = new HashSet<String>();
+            for ( Filter filter : Filter.values() )
+            {
+                names.add( filter.filterName() );
+            }
+
+            filterNames = names;
+        }
+
+        return filterNames;
+    }
+
 }
@@ -19,6 +19,8 @@ import static org.commonjava.couch.util.IdUtils.namespaceId;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -39,6 +41,9 @@ import org.commonjava.auth.couch.model.RoleDoc;
 import org.commonjava.auth.couch.model.UserDoc;
 import org.commonjava.couch.db.CouchDBException;
 import org.commonjava.couch.db.CouchManager;
+import org.commonjava.couch.db.DocumentUpdater;
+import org.commonjava.couch.db.model.BulkResult;
+import org.commonjava.couch.db.model.BulkResult.DocumentResult;
 import org.commonjava.couch.db.model.ViewRequest;
 import org.commonjava.couch.model.CouchDocRef;
 import org.commonjava.couch.rbac.Permission;
@@ -203,6 +208,74 @@ public class UserDataManager
         }
     }
 
+    public Map<String, Set<Role>> getRolesByUser( final Collection<User> users )
+        throws UserDataException
+    {
+        final Map<String, Set<Role>> result = new HashMap<String, Set<Role>>();
+        if ( users == null || users.isEmpty() )
+        {
+            return result;
+        }
+
+        for ( final User user : users )
+        {
+            result.put( user.getUsername(), new HashSet<Role>() );
+        }
+
+        final UserViewRequest req = new UserViewRequest( config, View.USER_ROLES );
+        req.setKeys( result.keySet() );
+        try
+        {
+            final Map<String, List<RoleDoc>> docs = couch.getViewListingByKey( req, String.class, RoleDoc.class );
+            for ( final Map.Entry<String, List<RoleDoc>> entry : docs.entrySet() )
+            {
+                result.put( entry.getKey(), RoleDoc.toRoleSet( entry.getValue() ) );
+            }
+        }
+        catch ( final CouchDBException e )
+        {
+            throw new UserDataException( "Failed to get roles for users: %s. Reason: %s", e, result.keySet(),
+                                         e.getMessage() );
+        }
+
+        return result;
+    }
+
+    public Map<String, Set<Permission>> getPermissionsByRole( final Collection<Role> roles )
+        throws UserDataException
+    {
+        final Map<String, Set<Permission>> result = new HashMap<String, Set<Permission>>();
+        if ( roles == null || roles.isEmpty() )
+        {
+            return result;
+        }
+
+        for ( final Role role : roles )
+        {
+            result.put( role.getName(), new HashSet<Permission>() );
+        }
+
+        final UserViewRequest req = new UserViewRequest( config, View.ROLE_PERMISSIONS );
+        req.setKeys( result.keySet() );
+        try
+        {
+            final Map<String, List<PermissionDoc>> docs =
+                couch.getViewListingByKey( req, String.class, PermissionDoc.class );
+
+            for ( final Map.Entry<String, List<PermissionDoc>> entry : docs.entrySet() )
+            {
+                result.put( entry.getKey(), PermissionDoc.toPermissionSet( entry.getValue() ) );
+            }
+        }
+        catch ( final CouchDBException e )
+        {
+            throw new UserDataException( "Failed to get permissions for roles: %s. Reason: %s", e, result.keySet(),
+                                         e.getMessage() );
+        }
+
+        return result;
+    }
+
     public void storePermissions( final Collection<Permission> perms )
         throws UserDataException
     {
@@ -268,6 +341,155 @@ public class UserDataManager
         }
     }
 
+    public Role updateRole( final Role role )
+        throws UserDataException
+    {
+        try
+        {
+            final RoleDoc doc =
+                couch.update( new CouchDocRef( namespaceId( Role.NAMESPACE, role.getName() ) ), RoleDoc.class,
+                              new DocumentUpdater<RoleDoc>()
+                              {
+                                  @Override
+                                  public RoleDoc update( final RoleDoc current )
+                                  {
+                                      if ( current == null )
+                                      {
+                                          return new RoleDoc( role );
+                                      }
+
+                                      current.setPermissionNames( role.getPermissions() );
+                                      return current;
+                                  }
+                              } );
+
+            final Role result = doc.toRole();
+            fireRoleEvent( UpdateType.ADD_OR_UPDATE, result );
+
+            return result;
+        }
+        catch ( final CouchDBException e )
+        {
+            throw new UserDataException( "Failed to update role: %s. Reason: %s", e, role, e.getMessage() );
+        }
+    }
+
+    public User updateUser( final User user )
+        throws UserDataException
+    {
+        return updateUser( user.getUsername(), user );
+    }
+
+    public User updateUser( final String username, final User user )
+        throws UserDataException
+    {
+        try
+        {
+            final UserDoc doc =
+                couch.update( new CouchDocRef( namespaceId( User.NAMESPACE, username ) ), UserDoc.class,
+                              new DocumentUpdater<UserDoc>()
+                              {
+                                  @Override
+                                  public UserDoc update( final UserDoc current )
+                                  {
+                                      if ( current == null )
+                                      {
+                                          // the body may leave out its username; the id comes from the caller.
+                                          final UserDoc created =
+                                              new UserDoc( username, user.getEmail(), user.getFirstName(),
+                                                           user.getLastName(), user.getPasswordDigest() );
+                                          created.setRoleNames( user.getRoles() );
+                                          return created;
+                                      }
+
+                                      current.setFirstName( user.getFirstName() );
+                                      current.setLastName( user.getLastName() );
+                                      current.setEmail( user.getEmail() );
+                                      current.setPasswordDigest( passwordManager.digestPassword( user
+                                                                                                     .getPasswordDigest() ) );
+                                      current.setRoleNames( user.getRoles() );
+                                      return current;
+                                  }
+                              } );
+
+            final User result = doc.toUser();
+            fireUserEvent( UpdateType.ADD_OR_UPDATE, result );
+
+            return result;
+        }
+        catch ( final CouchDBException e )
+        {
+            throw new UserDataException( "Failed to update user: %s. Reason: %s", e, user, e.getMessage() );
+        }
+    }
+
+    public void removeRoleFromUsers( final String role )
+        throws UserDataException
+    {
+        try
+        {
+            final UserViewRequest req = new UserViewRequest( config, View.ROLE_USERS, role );
+            req.setParameter( ViewRequest.KEY, role );
+
+            final List<UserDoc> users = couch.getViewListing( req, UserDoc.class );
+            for ( final UserDoc user : users )
+            {
+                if ( user.getRoles() != null )
+                {
+                    user.getRoles()
+                        .remove( role );
+                }
+            }
+
+            // store the whole set in one round trip, then re-run only the users someone else changed meanwhile.
+            final BulkResult result = couch.store( users, false, false );
+            final DocumentUpdater<UserDoc> remover = new RoleRemover( role );
+            for ( final DocumentResult conflict : result.getConflicts() )
+            {
+                couch.update( new CouchDocRef( conflict.getId() ), UserDoc.class, remover );
+            }
+
+            fireUserEvent( UpdateType.ADD_OR_UPDATE, UserDoc.toUserSet( users ) );
+        }
+        catch ( final CouchDBException e )
+        {
+            throw new UserDataException( "Failed to remove role: %s from users. Reason: %s", e, role, e.getMessage() );
+        }
+    }
+
+    public boolean removePermissionFromRoles( final String permission )
+        throws UserDataException
+    {
+        try
+        {
+            final UserViewRequest req = new UserViewRequest( config, View.PERMISSION_ROLES, permission );
+            req.setParameter( ViewRequest.KEY, permission );
+
+            boolean changed = false;
+            final List<RoleDoc> roles = couch.getViewListing( req, RoleDoc.class );
+            for ( final RoleDoc role : roles )
+            {
+                changed = role.removePermission( permission ) || changed;
+            }
+
+            final BulkResult result = couch.store( roles, false, false );
+            final DocumentUpdater<RoleDoc> remover = new PermissionRemover( permission );
+            for ( final DocumentResult conflict : result.getConflicts() )
+            {
+                couch.update( new CouchDocRef( conflict.getId() ), RoleDoc.class, remover );
+            }
+
+            fireRoleEvent( UpdateType.ADD_OR_UPDATE, RoleDoc.toRoleSet( roles ) );
+
+            return changed;
+        }
+        catch ( final CouchDBException e )
+        {
+            throw new UserDataException( "Failed to remove permission: %s from roles. Reason: %s", e, permission,
+                                         e.getMessage() );
+        }
+    }
+
     public void storeUsers( final Collection<User> users )
         throws UserDataException
     {
@@ -447,6 +669,21 @@ public class UserDataManager
         }
     }
 
+    public Map<String, Long> getUserCountsByRole()
+        throws UserDataException
+    {
+        final UserViewRequest req = new UserViewRequest( config, View.ROLE_USER_COUNT );
+        req.setGroup( true );
+        try
+        {
+            return couch.getReducedView( req, String.class, Long.class );
+        }
+        catch ( final CouchDBException e )
+        {
+            throw new UserDataException( "Failed to count users per role. Reason: %s", e, e.getMessage() );
+        }
+    }
+
     public Set<Role> getRolesForPermission( final String permission )
         throws UserDataException
     {
@@ -520,4 +757,49 @@ public class UserDataManager
         }
     }
 
+    private static final class RoleRemover
+        implements DocumentUpdater<UserDoc>
+    {
+        private final String role;
+
+        RoleRemover( final String role )
+        {
+            this.role = role;
+        }
+
+        @Override
+        public UserDoc update( final UserDoc current )
+        {
+            if ( current == null || current.getRoles() == null || !current.getRoles()
+                                                                          .remove( role ) )
+            {
+                return null;
+            }
+
+            return current;
+        }
+    }
+
+    private static final class PermissionRemover
+        implements DocumentUpdater<RoleDoc>
+    {
+        private final String permission;
+
+        PermissionRemover( final String permission )
+        {
+            this.permission = permission;
+        }
+
+        @Override
+        public RoleDoc update( final RoleDoc current )
+        {
+            if ( current == null || !current.removePermission( permission ) )
+            {
+                return null;
+            }
+
+            return current;
+        }
+    }
+
 }
@@ -20,6 +20,7 @@ import javax.enterprise.inject.Produces;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.commonjava.auth.couch.data.UserAppDescription.Filter;
 import org.commonjava.couch.change.CouchChangeListener;
 import org.commonjava.couch.conf.CouchDBConfiguration;
 import org.commonjava.couch.db.CouchFactory;
@@ -58,7 +59,11 @@ public class UserDataProvider
     @Default
     public CouchChangeListener getChangeListener()
     {
-        return couchFactory.getChangeListener( config );
+        // the J2EE dispatcher can't see its observers, so the deletion listeners' filter is set here.
+        final CouchChangeListener listener = couchFactory.getChangeListener( config );
+        listener.setChangeFilter( Filter.DELETED_SECURITY_DATA.changeFilter() );
+
+        return listener;
     }
 
 }
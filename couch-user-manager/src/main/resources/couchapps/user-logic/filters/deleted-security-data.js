@@ -0,0 +1,6 @@
+function( doc, req ){
+  if ( doc._deleted ){
+	return doc._id.indexOf( 'role' ) == 0 || doc._id.indexOf( 'permission' ) == 0;
+  }
+  return false;
+}
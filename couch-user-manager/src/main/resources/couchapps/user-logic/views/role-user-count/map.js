@@ -0,0 +1,9 @@
+function( doc ){
+  if ( doc.doctype == 'user' ){
+	if ( doc.roles ){
+	  for( var r in doc.roles ){
+		emit( doc.roles[r], null );
+	  }
+	}
+  }
+}
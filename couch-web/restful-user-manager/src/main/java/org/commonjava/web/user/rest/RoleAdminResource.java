@@ -110,17 +110,7 @@ public class RoleAdminResource
         ResponseBuilder builder;
         try
         {
-            Role toUpdate = dataManager.getRole( name );
-            if ( toUpdate == null )
-            {
-                toUpdate = role;
-            }
-            else
-            {
-                toUpdate.setPermissionNames( role.getPermissions() );
-            }
-
-            dataManager.storeRole( toUpdate );
+            dataManager.updateRole( new Role( name, role.getPermissions() ) );
             builder = Response.ok( uriInfo.getAbsolutePathBuilder()
                                           .build() );
         }
@@ -35,7 +35,6 @@ import javax.ws.rs.core.UriInfo;
 
 import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.authz.annotation.RequiresAuthentication;
-import org.commonjava.auth.couch.data.PasswordManager;
 import org.commonjava.auth.couch.data.UserDataException;
 import org.commonjava.auth.couch.data.UserDataManager;
 import org.commonjava.couch.rbac.Permission;
@@ -57,9 +56,6 @@ public class UserAdminResource
     @Inject
     private UserDataManager dataManager;
 
-    @Inject
-    private PasswordManager passwordManager;
-
     @Inject
     private JsonSerializer jsonSerializer;
 
@@ -119,26 +115,20 @@ public class UserAdminResource
 
         logger.info( "\n\nGot user: %s\n\n", user );
 
+        if ( user == null || ( user.getUsername() != null && !name.equals( user.getUsername() ) ) )
+        {
+            logger.warn( "Rejecting update of user: %s with body for user: %s", name,
+                         user == null ? null : user.getUsername() );
+            return Response.status( Status.BAD_REQUEST )
+                           .build();
+        }
+
         ResponseBuilder builder;
         try
         {
-            User toUpdate = dataManager.getUser( name );
-            if ( toUpdate == null )
-            {
-                toUpdate = user;
-            }
-            else
-            {
-                toUpdate.setFirstName( user.getFirstName() );
-                toUpdate.setLastName( user.getLastName() );
-                toUpdate.setEmail( user.getEmail() );
-                toUpdate.setPasswordDigest( passwordManager.digestPassword( user.getPasswordDigest() ) );
-                toUpdate.setRoleNames( user.getRoles() );
-            }
-
-            dataManager.storeUser( toUpdate, false );
+            dataManager.updateUser( name, user );
             builder = Response.ok( uriInfo.getAbsolutePathBuilder()
-                                          .build( user.getUsername() ) );
+                                          .build( name ) );
         }
         catch ( final UserDataException e )
         {
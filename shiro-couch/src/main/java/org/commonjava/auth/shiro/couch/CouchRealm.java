@@ -18,6 +18,7 @@ package org.commonjava.auth.shiro.couch;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.PostConstruct;
@@ -139,24 +140,25 @@ public class CouchRealm
                 throw new AuthenticationException( "Cannot retrieve user roles. System configuration is invalid." );
             }
 
-            for ( final Role role : roles )
+            Map<String, Set<org.commonjava.couch.rbac.Permission>> permissionsByRole;
+            try
             {
-                roleNames.add( role.getName() );
+                permissionsByRole = dataManager.getPermissionsByRole( roles );
+            }
+            catch ( final UserDataException e )
+            {
+                logger.error( "Failed to retrieve permissions for roles of user: %s. Reason: %s", e, principal,
+                              e.getMessage() );
 
-                Set<org.commonjava.couch.rbac.Permission> permissions;
-                try
-                {
-                    permissions = dataManager.getPermissions( role );
-                }
-                catch ( final UserDataException e )
-                {
-                    logger.error( "Failed to retrieve permissions for role: %s. Reason: %s", e, role.getName(),
-                                  e.getMessage() );
+                throw new AuthenticationException(
+                                                   "Cannot retrieve role permissions. System configuration is invalid." );
+            }
 
-                    throw new AuthenticationException(
-                                                       "Cannot retrieve role permissions. System configuration is invalid." );
-                }
+            for ( final Role role : roles )
+            {
+                roleNames.add( role.getName() );
 
+                final Set<org.commonjava.couch.rbac.Permission> permissions = permissionsByRole.get( role.getName() );
                 if ( permissions != null )
                 {
                     for ( final org.commonjava.couch.rbac.Permission perm : permissions )